@@ -0,0 +1,58 @@
+package kr.hs.gshs.blescanner;
+
+import android.bluetooth.le.AdvertiseData;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+
+/**
+ * Builds the advertisement of a packet, the counterpart of {@link PacketView}, without the boxing and
+ * copying of the library's AdvertiseDataBuilder. The payload is written by a {@link PayloadEncoder},
+ * which checks its size and picks the shortest encoding of text structs. Not thread safe.
+ */
+public class CompactAdvertiseDataBuilder {
+
+    private final PayloadEncoder encoder = new PayloadEncoder();
+
+    // The last built advertisement, returned again while the payload doesn't change.
+    private AdvertiseData advertiseData;
+    private final byte[] advertisedPayload = new byte[PacketView.PAYLOAD_LENGTH];
+    private int advertisedLength;
+
+    /**
+     * Encode a packet with a {@link PayloadEncoder} and return its buffer, holding the payload up to its limit.
+     * The buffer is overwritten by the next call. Throws IllegalArgumentException if the packet doesn't fit.
+     */
+    public ByteBuffer encode(PacketTypes packetType, Struct... structs) {
+        encoder.begin(packetType.ordinal());
+        for (Struct struct : structs) {
+            encoder.addStruct(struct.getType().ordinal(), struct.getData());
+        }
+        return encoder.finish();
+    }
+
+    /**
+     * Encode a packet and return its advertisement, the same instance as last time if the payload didn't
+     * change. Throws IllegalArgumentException if the packet doesn't fit.
+     */
+    public AdvertiseData build(PacketTypes packetType, Struct... structs) {
+        ByteBuffer payload = encode(packetType, structs);
+        int length = payload.limit();
+        byte[] out = payload.array();
+        if (advertiseData != null && length == advertisedLength && Arrays.equals(out, advertisedPayload)) {
+            return advertiseData;
+        }
+
+        // The first two payload bytes go out as the little-endian manufacturer ID.
+        int manufacturerId = (out[1] & 0xff) << 8 | out[0] & 0xff;
+        advertiseData = new AdvertiseData.Builder()
+                .addManufacturerData(manufacturerId, Arrays.copyOfRange(out, 2, Math.max(2, length)))
+                .build();
+        System.arraycopy(out, 0, advertisedPayload, 0, out.length);
+        advertisedLength = length;
+        return advertiseData;
+    }
+}
@@ -0,0 +1,116 @@
+package kr.hs.gshs.blescanner;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import java.util.concurrent.TimeUnit;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
+
+/**
+ * Displays the sighting history through a {@link SightingPager}, newest first, used by {@link MainActivity}.
+ * Only payload bytes are paged in, a row's packet and structs are materialized when it is bound,
+ * through a small {@link PacketInterner} so rows scrolled past can be let go.
+ */
+public class HistoryAdapter extends RecyclerView.Adapter<ScanResultAdapter.ViewHolder>
+        implements SightingPager.Listener {
+
+    // About a couple of screens of rows.
+    private static final int INTERNER_CAPACITY = 64;
+
+    private final LayoutInflater mInflater;
+
+    private PacketTypeFilter mPacketTypeFilter;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final byte[] mScanRecord = new byte[PacketView.PAYLOAD_OFFSET + PacketView.PAYLOAD_LENGTH];
+    private final PacketView mPacketView = new PacketView();
+    private final PacketInterner mPacketInterner = new PacketInterner(INTERNER_CAPACITY);
+
+    // Null while no history is shown, read on the loader to tell its callbacks from an earlier pager's.
+    private volatile SightingPager mPager;
+
+    // Rows the adapter announced, only changed on the UI thread.
+    private int mSize;
+
+    HistoryAdapter(LayoutInflater inflater, PacketTypeFilter packetTypeFilter) {
+        super();
+        mInflater = inflater;
+        mPacketTypeFilter = packetTypeFilter;
+    }
+
+    /**
+     * Show the rows of a pager, or nothing if null. Call {@link SightingPager#refresh()} after.
+     */
+    public void setPager(SightingPager pager) {
+        mPager = pager;
+        mSize = 0;
+        mPacketInterner.clear();
+        notifyDataSetChanged();
+    }
+
+    public void setPacketTypeFilter(PacketTypeFilter packetTypeFilter) {
+        mPacketTypeFilter = packetTypeFilter;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void onRowsLoaded(final int position, final int count) {
+        final SightingPager pager = mPager;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (pager == mPager) {
+                    notifyItemRangeChanged(position, count);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onRefreshed(final int size) {
+        final SightingPager pager = mPager;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (pager == mPager) {
+                    mSize = size;
+                    notifyDataSetChanged();
+                }
+            }
+        });
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPager == null ? 0 : mSize;
+    }
+
+    @Override
+    public ScanResultAdapter.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        return new ScanResultAdapter.ViewHolder(mInflater.inflate(R.layout.list_item_scan_result, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(ScanResultAdapter.ViewHolder holder, int position) {
+        long timestamp = mPager.get(position, mScanRecord);
+        if (timestamp == SightingPager.NOT_LOADED) {
+            holder.bindEmpty("Loading...");
+            return;
+        }
+        if (timestamp == SightingLog.MISSING) {
+            holder.bindEmpty("(Unreadable sighting)");
+            return;
+        }
+
+        mPacketView.wrap(mScanRecord);
+        PacketData packet = mPacketInterner.intern(mPacketView, PacketKeys.of(mPacketView));
+        holder.bindPacket(mInflater, packet, mPacketTypeFilter);
+        holder.bindLastSeen(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - timestamp));
+    }
+}
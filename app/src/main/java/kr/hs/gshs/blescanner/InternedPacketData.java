@@ -0,0 +1,32 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+
+/**
+ * Canonical packet handed out by a {@link PacketInterner}, one instance per advertised payload while it
+ * stays in the table, compared by key as every {@link KeyedPacketData}.
+ * Instances are shared, the struct list must not be modified.
+ */
+class InternedPacketData extends KeyedPacketData {
+
+    private final byte[] payload;
+
+    /**
+     * @param payload the payload the packet was advertised with, {@link PacketView#PAYLOAD_LENGTH} bytes
+     */
+    InternedPacketData(PacketTypes packetType, ArrayList<Struct> structs, long key, byte[] payload) {
+        super(packetType, structs, key);
+        this.payload = payload;
+    }
+
+    /**
+     * Return the payload as advertised. Struct data that isn't valid text doesn't survive its String,
+     * so this is what the key was taken from. Must not be modified.
+     */
+    byte[] getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,48 @@
+package kr.hs.gshs.blescanner;
+
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+/**
+ * Canonical {@link Struct} handed out by a {@link PacketInterner}, shared by every packet advertising it.
+ * Carries a content hash taken once, so equals rejects a different interned struct without comparing
+ * Strings, and hashCode is consistent with equals, which Struct's own isn't.
+ * <p>
+ * Consistent among interned structs only. It equals a plain Struct with the same content, as packets
+ * compare their struct lists, but a plain Struct hashes by identity, so a hash set or map holding both
+ * kinds misses equal entries. Never mix them in one, key by interned structs only or by plain ones only.
+ */
+class InternedStruct extends Struct {
+
+    private final int hash;
+
+    InternedStruct(StructTypes type, String data) {
+        super(type, data);
+        hash = hash(type.ordinal(), data);
+    }
+
+    /**
+     * Return the hash an interned struct with this type value and data has.
+     */
+    static int hash(int structType, String data) {
+        long h = (PayloadKeys.FNV_OFFSET_BASIS ^ structType) * PayloadKeys.FNV_PRIME;
+        h = PayloadKeys.hashUtf8(h, data);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (o instanceof InternedStruct && ((InternedStruct) o).hash != hash) {
+            return false;
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
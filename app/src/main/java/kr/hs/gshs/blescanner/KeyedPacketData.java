@@ -0,0 +1,40 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+
+/**
+ * Supported {@link PacketData} holding its {@link PacketKeys} key, which it compares and hashes by, the
+ * way the store tells packets apart. An interned packet and a restored one of the same payload are equal
+ * and hash alike, whether or not the restored one was decoded yet.
+ * <p>
+ * Never equal to a plain PacketData. PacketData's own equals compares its fields and hashes by identity,
+ * so it may still call a plain packet equal to an interned one: keep plain packets out of collections of
+ * keyed ones.
+ */
+abstract class KeyedPacketData extends PacketData {
+
+    private final long key;
+
+    KeyedPacketData(PacketTypes packetType, ArrayList<Struct> structs, long key) {
+        super(true, packetType, structs);
+        this.key = key;
+    }
+
+    long getKey() {
+        return key;
+    }
+
+    @Override
+    public final boolean equals(Object o) {
+        return o == this || o instanceof KeyedPacketData && ((KeyedPacketData) o).key == key;
+    }
+
+    @Override
+    public final int hashCode() {
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -1,18 +1,24 @@
 package kr.hs.gshs.blescanner;
 
+import android.app.AlertDialog;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanFilter;
-import android.bluetooth.le.ScanResult;
-import android.bluetooth.le.ScanSettings;
+import android.content.ComponentName;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.support.constraint.ConstraintLayout;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.os.Bundle;
-import android.util.Log;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.SparseBooleanArray;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -20,17 +26,22 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.CompoundButton;
+import android.widget.EditText;
 import android.widget.ListView;
+import android.widget.ScrollView;
 import android.widget.Switch;
+import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
 import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
 import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
-import kr.hs.gshs.blebeaconprotocollibrary.ScanResultParser;
 
 /**
  * Scans for Bluetooth Low Energy Advertisements matching a filter and displays them to the user.
@@ -41,26 +52,210 @@ public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = MainActivity.class.getSimpleName();
 
+    private static final long LAST_SEEN_REFRESH_MILLIS = 1000;
+    private static final long DIAGNOSTICS_REFRESH_MILLIS = 1000;
+    private static final long BEACON_SEEN_SECONDS = 10;
+
+    // Report delays offered for background scans, 0 reports each result right away.
+    private static final long[] REPORT_DELAYS_MILLIS = {0, 1000, ScanService.DEFAULT_REPORT_DELAY_MILLIS, 5000, 10000};
+
     private int currentView;
 
     // currentView == 0
     private ConstraintLayout viewScanResults;
     private Switch switchScan;
-    private ListView listViewScanResults;
+    private RecyclerView listViewScanResults;
+    private EditText editSearch;
 
     // currentView == 1
     private ConstraintLayout viewFilterSettings;
     private ListView listViewFilterSettings;
+    private EditText editPayloadFilter;
+
+    // currentView == 2
+    private ScrollView viewDiagnostics;
+    private TextView textDiagnostics;
+
+    private RecyclerView viewHistory;
+    private HistoryAdapter historyAdapter;
+
+    // Opens the sighting log and loads history pages, off the UI thread.
+    private final ExecutorService mHistoryLoader = Executors.newSingleThreadExecutor();
+    // Runs searches as the query is typed, off the UI thread.
+    private final ExecutorService mSearcher = Executors.newSingleThreadExecutor();
+    private MetricsReporter mMetricsReporter;
 
     public PacketTypeFilter mPacketTypeFilter;
 
     private BluetoothAdapter mBluetoothAdapter;
 
-    private BluetoothLeScanner mBluetoothLeScanner;
+    private ScanResultAdapter scanResultAdapter;
+
+    // Set while bound to the ScanService.
+    private ScanService mScanService;
 
-    private ScanCallback mScanCallback;
+    // Start scanning on app's 1st load, but not when recreated.
+    private boolean mStartScanningOnConnect;
 
-    private ScanResultAdapter scanResultAdapter;
+    private final ServiceConnection mServiceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            mScanService = ((ScanService.LocalBinder) service).getService();
+            mMetricsReporter = null;
+            mPacketTypeFilter = mScanService.getPacketTypeFilter();
+            scanResultAdapter.setPacketTypeFilter(mPacketTypeFilter);
+            historyAdapter.setPacketTypeFilter(mPacketTypeFilter);
+            for (int i = 0; i < PacketTypes.getValues().length; ++i) {
+                listViewFilterSettings.setItemChecked(i, mPacketTypeFilter.isBlocked(PacketTypes.fromOrdinal(i)));
+            }
+            editPayloadFilter.setText(mScanService.getPayloadFilterText());
+
+            // Shows the warm store right away.
+            mScanClient.setTextIndex(mScanService.getTextIndex());
+            mScanService.attach(mScanClient);
+
+            if (mStartScanningOnConnect) {
+                mStartScanningOnConnect = false;
+                startScanning();
+            }
+            switchScan.setChecked(mScanService.isScanning());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mScanService = null;
+        }
+    };
+
+    /**
+     * Shows published snapshots, narrowed down to the packets matching the search query if there is one.
+     */
+    private class ScanClient implements ScanService.Client {
+
+        // What the adapter shows once every posted update ran.
+        private PacketSnapshot<PacketData> previous;
+
+        // Bumped on each attach or search, so updates diffed against what was shown before are dropped.
+        private int generation;
+
+        // Latest published snapshot, before searching.
+        private PacketSnapshot<PacketData> latest = PacketSnapshot.empty();
+        private TextIndex textIndex;
+        private String query = "";
+
+        @Override
+        public synchronized void onAttached(PacketSnapshot<PacketData> snapshot) {
+            latest = snapshot;
+            previous = search(snapshot);
+            generation++;
+            scanResultAdapter.replace(previous);
+        }
+
+        @Override
+        public void onPacketsChanged(PacketSnapshot<PacketData> snapshot) {
+            // Search and diff on the ingestion thread, the UI thread only dispatches the changes. Posted under
+            // the lock, as searches post too, so updates run in the order they were diffed against previous.
+            synchronized (this) {
+                latest = snapshot;
+                final PacketSnapshot<PacketData> shown = search(snapshot);
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new PacketDiffCallback(previous, shown), false);
+                previous = shown;
+                final int diffGeneration = generation;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (diffGeneration == getGeneration()) {
+                            scanResultAdapter.update(shown, diff);
+                            if (mScanService != null) {
+                                mScanService.getMetrics().onShown(shown, SystemClock.elapsedRealtimeNanos());
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        synchronized void setTextIndex(TextIndex textIndex) {
+            this.textIndex = textIndex;
+        }
+
+        /**
+         * Show only the packets matching a query from now on, all of them if it is empty. Searches on the
+         * searcher, the UI thread only shows the result if no other search or attach came since.
+         */
+        void setQuery(final String query) {
+            mSearcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Posted under the lock, so the replace runs before any update diffed against its result.
+                    synchronized (ScanClient.this) {
+                        ScanClient.this.query = query;
+                        final PacketSnapshot<PacketData> shown = search(latest);
+                        previous = shown;
+                        final int searchGeneration = ++generation;
+                        runOnUiThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (searchGeneration == getGeneration()) {
+                                    scanResultAdapter.replace(shown);
+                                }
+                            }
+                        });
+                    }
+                }
+            });
+        }
+
+        private PacketSnapshot<PacketData> search(PacketSnapshot<PacketData> snapshot) {
+            long[] keys = textIndex == null ? null : textIndex.search(query, TextIndex.ALL_STRUCT_TYPES);
+            return keys == null ? snapshot : snapshot.retain(keys);
+        }
+
+        private synchronized int getGeneration() {
+            return generation;
+        }
+    }
+
+    private final ScanClient mScanClient = new ScanClient();
+
+    private Handler mHandler = new Handler();
+
+    // Beacons out of range get no new results, keep their 'last seen' times ticking.
+    private Runnable mRefreshLastSeen = new Runnable() {
+        @Override
+        public void run() {
+            scanResultAdapter.refreshLastSeen();
+            mHandler.postDelayed(this, LAST_SEEN_REFRESH_MILLIS);
+        }
+    };
+
+    // Rates are over the time since the previous refresh.
+    private Runnable mRefreshDiagnostics = new Runnable() {
+        @Override
+        public void run() {
+            if (mScanService != null) {
+                long now = SystemClock.elapsedRealtimeNanos();
+                if (mMetricsReporter == null) {
+                    mMetricsReporter = new MetricsReporter(mScanService.getMetrics(), now);
+                }
+                BeaconTracker beacons = mScanService.getBeaconTracker();
+                String text = mMetricsReporter.report(now) + String.format(Locale.US,
+                        "Beacons: %d tracked, %d seen in the last %d s%n", beacons.size(),
+                        beacons.countSeenWithin(now, TimeUnit.SECONDS.toNanos(BEACON_SEEN_SECONDS)),
+                        BEACON_SEEN_SECONDS);
+                SightingExporter exporter = mScanService.getSightingExporter();
+                if (exporter != null) {
+                    text += String.format(Locale.US,
+                            "Export: %s, %d sightings in %d batches, %d KB, %d merged, %d dropped, %d failures%n",
+                            exporter.isConnected() ? "connected" : "disconnected", exporter.getSentCount(),
+                            exporter.getBatchCount(), exporter.getByteCount() / 1024, exporter.getMergedCount(),
+                            exporter.getDroppedCount(), exporter.getFailureCount());
+                }
+                textDiagnostics.setText(text);
+            }
+            mHandler.postDelayed(this, DIAGNOSTICS_REFRESH_MILLIS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -71,19 +266,65 @@ public class MainActivity extends AppCompatActivity {
 
         if (savedInstanceState == null) {
             checkBluetooth();
+            mStartScanningOnConnect = true;
         }
 
-        mBluetoothLeScanner = mBluetoothAdapter.getBluetoothLeScanner();
-
         mPacketTypeFilter = new PacketTypeFilter();
 
         setupViewScanResults();
 
         setupViewFilterSettings();
 
-        // Trigger refresh on app's 1st load
-        startScanning();
-        switchScan.setChecked(true);
+        viewDiagnostics = (ScrollView) findViewById(R.id.viewDiagnostics);
+        textDiagnostics = (TextView) findViewById(R.id.textDiagnostics);
+
+        viewHistory = (RecyclerView) findViewById(R.id.viewHistory);
+        viewHistory.setLayoutManager(new LinearLayoutManager(this));
+        historyAdapter = new HistoryAdapter(getLayoutInflater(), mPacketTypeFilter);
+        viewHistory.setAdapter(historyAdapter);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, ScanService.class), mServiceConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (mScanService != null) {
+            mScanService.detach(mScanClient);
+            mScanService = null;
+        }
+        unbindService(mServiceConnection);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mHandler.post(mRefreshLastSeen);
+        if (currentView == 2) {
+            mHandler.post(mRefreshDiagnostics);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mHandler.removeCallbacks(mRefreshLastSeen);
+        mHandler.removeCallbacks(mRefreshDiagnostics);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Leaving the app with scanning stopped, nothing needs the service anymore.
+        mHistoryLoader.shutdownNow();
+        mSearcher.shutdownNow();
+        if (isFinishing() && !switchScan.isChecked()) {
+            stopService(new Intent(this, ScanService.class));
+        }
     }
 
     private void checkBluetooth() {
@@ -122,7 +363,24 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        listViewScanResults = (ListView) findViewById(R.id.listViewScanResults);
+        editSearch = (EditText) findViewById(R.id.editSearch);
+        editSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mScanClient.setQuery(s.toString());
+            }
+        });
+
+        listViewScanResults = (RecyclerView) findViewById(R.id.listViewScanResults);
+        listViewScanResults.setLayoutManager(new LinearLayoutManager(this));
         scanResultAdapter = new ScanResultAdapter(getApplicationContext(), getLayoutInflater(), mPacketTypeFilter);
         listViewScanResults.setAdapter(scanResultAdapter);
     }
@@ -138,6 +396,8 @@ public class MainActivity extends AppCompatActivity {
         listViewFilterSettings = (ListView) findViewById(R.id.listViewFilterSettings);
         ArrayAdapter<String> adapterFilterSettings = new ArrayAdapter<>(this, android.R.layout.simple_list_item_multiple_choice, packetTypeNames);
         listViewFilterSettings.setAdapter(adapterFilterSettings);
+
+        editPayloadFilter = (EditText) findViewById(R.id.editPayloadFilter);
     }
 
     // continued from checkBluetooth()
@@ -152,6 +412,11 @@ public class MainActivity extends AppCompatActivity {
                     // User declined to enable Bluetooth, exit the app.
                     Toast.makeText(this, "User declined to enable Bluetooth, exiting Bluetooth Advertisements.", Toast.LENGTH_SHORT).show();
                     finish();
+                } else if (mScanService != null) {
+
+                    // Bluetooth is on now, retry what the service couldn't start on connect.
+                    startScanning();
+                    switchScan.setChecked(mScanService.isScanning());
                 }
 
             default:
@@ -159,6 +424,177 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Leave the view shown for another, from whichever view it is.
+     * Leaving the filter settings without saving them puts back the filters in use.
+     */
+    private void switchView(int view) {
+        if (view == currentView) {
+            return;
+        }
+
+        switch (currentView) {
+            case 0:
+                viewScanResults.setVisibility(View.INVISIBLE);
+                break;
+            case 1:
+                for (int i = 0; i < PacketTypes.getValues().length; ++i) {
+                    listViewFilterSettings.setItemChecked(i, mPacketTypeFilter.isBlocked(PacketTypes.fromOrdinal(i)));
+                }
+                if (mScanService != null) {
+                    editPayloadFilter.setText(mScanService.getPayloadFilterText());
+                }
+                viewFilterSettings.setVisibility(View.INVISIBLE);
+                break;
+            case 2:
+                mHandler.removeCallbacks(mRefreshDiagnostics);
+                viewDiagnostics.setVisibility(View.INVISIBLE);
+                break;
+            case 3:
+                historyAdapter.setPager(null);
+                viewHistory.setVisibility(View.INVISIBLE);
+                break;
+        }
+
+        currentView = view;
+        switch (view) {
+            case 0:
+                setTitle("Scan Results");
+                viewScanResults.setVisibility(View.VISIBLE);
+                break;
+            case 1:
+                setTitle("Filter Settings");
+                viewFilterSettings.setVisibility(View.VISIBLE);
+                break;
+            case 2:
+                setTitle("Diagnostics");
+                viewDiagnostics.setVisibility(View.VISIBLE);
+                mHandler.post(mRefreshDiagnostics);
+                break;
+            case 3:
+                setTitle("History");
+                viewHistory.setVisibility(View.VISIBLE);
+                showHistory();
+                break;
+        }
+        invalidateOptionsMenu();
+    }
+
+    /**
+     * Page the sighting log into the history view, newest first, opening the log off the UI thread.
+     */
+    private void showHistory() {
+        final ScanService scanService = mScanService;
+        if (scanService == null) {
+            return;
+        }
+
+        mHistoryLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final SightingLog log;
+                try {
+                    log = scanService.getSightingLog();
+                } catch (IOException e) {
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Toast.makeText(MainActivity.this, "Can't open the history", Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                    return;
+                }
+
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (currentView == 3) {
+                            SightingPager pager = new SightingPager(log, mHistoryLoader, historyAdapter);
+                            historyAdapter.setPager(pager);
+                            pager.refresh();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Ask for the collector to export sightings to, as host or host:port, leaving it empty stops exporting.
+     */
+    private void showExportDialog() {
+        if (mScanService == null) {
+            return;
+        }
+
+        final EditText editCollector = new EditText(this);
+        editCollector.setSingleLine();
+        editCollector.setHint("host:" + SightingExporter.DEFAULT_PORT);
+        new AlertDialog.Builder(this)
+                .setTitle("Export sightings to")
+                .setView(editCollector)
+                .setPositiveButton("OK", new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        String collector = editCollector.getText().toString().trim();
+                        if (mScanService == null) {
+                            return;
+                        }
+                        if (collector.isEmpty()) {
+                            mScanService.stopExport();
+                            return;
+                        }
+
+                        int colon = collector.lastIndexOf(':');
+                        int port;
+                        try {
+                            port = colon < 0 ? SightingExporter.DEFAULT_PORT : Integer.parseInt(collector.substring(colon + 1));
+                        } catch (NumberFormatException e) {
+                            port = -1;
+                        }
+                        if (port <= 0 || port > 65535) {
+                            Toast.makeText(MainActivity.this, "Invalid port", Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        mScanService.startExport(colon < 0 ? collector : collector.substring(0, colon), port);
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Let the user pick how long background scan results may be held back and delivered in a batch.
+     */
+    private void showReportDelayDialog() {
+        if (mScanService == null) {
+            return;
+        }
+
+        String[] names = new String[REPORT_DELAYS_MILLIS.length];
+        int checked = -1;
+        for (int i = 0; i < REPORT_DELAYS_MILLIS.length; i++) {
+            names[i] = REPORT_DELAYS_MILLIS[i] == 0 ? "Off"
+                    : String.format(Locale.US, "%d s", TimeUnit.MILLISECONDS.toSeconds(REPORT_DELAYS_MILLIS[i]));
+            if (REPORT_DELAYS_MILLIS[i] == mScanService.getReportDelayMillis()) {
+                checked = i;
+            }
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Report delay in the background")
+                .setSingleChoiceItems(names, checked, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (mScanService != null) {
+                            mScanService.setReportDelayMillis(REPORT_DELAYS_MILLIS[which]);
+                        }
+                        dialog.dismiss();
+                    }
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
@@ -166,24 +602,20 @@ public class MainActivity extends AppCompatActivity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // The item of the view shown leads back to the scan results, the others switch straight over.
+        menu.findItem(R.id.menuItem).setTitle(currentView == 1 ? "Save" : "Filter");
+        menu.findItem(R.id.menuDiagnostics).setTitle(currentView == 2 ? "Scan Results" : "Diagnostics");
+        menu.findItem(R.id.menuHistory).setTitle(currentView == 3 ? "Scan Results" : "History");
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.menuItem:
-                if (currentView == 0) {
-                    setTitle("Filter Settings");
-                    item.setTitle("Save");
-
-                    viewScanResults.setVisibility(View.INVISIBLE);
-                    viewFilterSettings.setVisibility(View.VISIBLE);
-
-                    currentView = 1;
-                } else if (currentView == 1) {
-                    setTitle("Scan Results");
-                    item.setTitle("Filter");
-
-                    scanResultAdapter.clear();
-
+                if (currentView == 1) {
                     SparseBooleanArray filter = listViewFilterSettings.getCheckedItemPositions();
                     for(int i=0; i<filter.size(); ++i) {
                         if (filter.get(i)) {
@@ -192,13 +624,32 @@ public class MainActivity extends AppCompatActivity {
                             mPacketTypeFilter.unblock(PacketTypes.fromOrdinal(i));
                         }
                     }
+                    if (mScanService != null) {
+                        mScanService.setPayloadFilterText(editPayloadFilter.getText().toString().trim());
+                        mScanService.onPacketTypeFilterChanged();
+                        mScanService.clear();
+                    }
+                    switchView(0);
+                } else {
+                    switchView(1);
+                }
 
-                    viewFilterSettings.setVisibility(View.INVISIBLE);
-                    viewScanResults.setVisibility(View.VISIBLE);
+                return true;
 
-                    currentView = 0;
-                }
+            case R.id.menuDiagnostics:
+                switchView(currentView == 2 ? 0 : 2);
+                return true;
 
+            case R.id.menuHistory:
+                switchView(currentView == 3 ? 0 : 3);
+                return true;
+
+            case R.id.menuReportDelay:
+                showReportDelayDialog();
+                return true;
+
+            case R.id.menuExport:
+                showExportDialog();
                 return true;
 
             default:
@@ -210,16 +661,16 @@ public class MainActivity extends AppCompatActivity {
      * Start scanning for BLE Advertisements.
      */
     public void startScanning() {
-        if (mScanCallback == null) {
-            Log.d(TAG, "Starting Scanning");
-
-            // Kick off a new scan.
-            mScanCallback = new SampleScanCallback();
-            mBluetoothLeScanner.startScan(buildScanFilters(), buildScanSettings(), mScanCallback);
-
-            scanResultAdapter.notifyDataSetChanged();
-        } else {
+        if (mScanService == null) {
+            return;
+        }
+        if (mScanService.isScanning()) {
             Toast.makeText(this, "Scanning already started.", Toast.LENGTH_SHORT);
+        } else if (!mScanService.startScanning()) {
+            Toast.makeText(this, "Bluetooth is not available.", Toast.LENGTH_SHORT).show();
+            switchScan.setChecked(false);
+        } else {
+            scanResultAdapter.refreshLastSeen();
         }
     }
 
@@ -227,70 +678,16 @@ public class MainActivity extends AppCompatActivity {
      * Stop scanning for BLE Advertisements.
      */
     public void stopScanning() {
-        if (mScanCallback != null) {
-            Log.d(TAG, "Stopping Scanning");
-
-            // Stop the scan, wipe the callback.
-            mBluetoothLeScanner.stopScan(mScanCallback);
-            mScanCallback = null;
+        if (mScanService == null) {
+            return;
+        }
+        if (mScanService.isScanning()) {
+            mScanService.stopScanning();
 
             // Even if no new results, update 'last seen' times.
-            scanResultAdapter.notifyDataSetChanged();
+            scanResultAdapter.refreshLastSeen();
         } else {
             Toast.makeText(this, "Scanning already stopped.", Toast.LENGTH_LONG);
         }
     }
-
-    /**
-     * Return a List of {@link ScanFilter} objects.
-     */
-    private List<ScanFilter> buildScanFilters() {
-        List<ScanFilter> scanFilters = new ArrayList<>();
-
-        ScanFilter.Builder builder = new ScanFilter.Builder();
-        scanFilters.add(builder.build());
-
-        return scanFilters;
-    }
-
-    /**
-     * Return a {@link ScanSettings} object set to use low power (to preserve battery life).
-     */
-    private ScanSettings buildScanSettings() {
-        ScanSettings.Builder builder = new ScanSettings.Builder();
-        builder.setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY);
-        return builder.build();
-    }
-
-    /**
-     * Custom ScanCallback object - adds to adapter on success, displays error on failure.
-     */
-    private class SampleScanCallback extends ScanCallback {
-
-        @Override
-        public void onBatchScanResults(List<ScanResult> results) {
-            super.onBatchScanResults(results);
-
-            for (ScanResult result : results) {
-                PacketData packet = ScanResultParser.parse(result);
-                scanResultAdapter.add(packet, result.getTimestampNanos());
-            }
-            scanResultAdapter.notifyDataSetChanged();
-        }
-
-        @Override
-        public void onScanResult(int callbackType, ScanResult result) {
-            super.onScanResult(callbackType, result);
-
-            PacketData packet = ScanResultParser.parse(result);
-            scanResultAdapter.add(packet, result.getTimestampNanos());
-            scanResultAdapter.notifyDataSetChanged();
-        }
-
-        @Override
-        public void onScanFailed(int errorCode) {
-            super.onScanFailed(errorCode);
-            Toast.makeText(getApplicationContext(), "Scan failed with error: " + errorCode, Toast.LENGTH_LONG).show();
-        }
-    }
 }
@@ -0,0 +1,55 @@
+package kr.hs.gshs.blescanner;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+
+/**
+ * Turns a {@link PacketTypeFilter} into the manufacturer IDs a scan filter has to match.
+ * Beacons advertise the packet payload as manufacturer specific data, so its first two bytes,
+ * the packet type and the length of the first struct, end up as the little-endian manufacturer ID.
+ * As scan filters match manufacturer IDs exactly, there is one ID for every first struct length
+ * that fits the payload, for each unblocked packet type.
+ */
+public class ManufacturerFilters {
+
+    /**
+     * Longest first struct that fits the payload after the packet type and its own length byte.
+     */
+    public static final int MAX_FIRST_STRUCT_LENGTH = PacketView.PAYLOAD_LENGTH - 2;
+
+    private ManufacturerFilters() {
+    }
+
+    /**
+     * Return the manufacturer IDs of every packet whose type isn't blocked, empty if all are.
+     */
+    public static int[] idsFor(PacketTypeFilter filter) {
+        PacketTypes[] types = PacketTypes.getValues();
+        int unblocked = 0;
+        for (PacketTypes type : types) {
+            if (!filter.isBlocked(type)) {
+                unblocked++;
+            }
+        }
+
+        // A first struct length of 0 stands for a packet without structs.
+        int[] ids = new int[unblocked * (MAX_FIRST_STRUCT_LENGTH + 1)];
+        int i = 0;
+        for (PacketTypes type : types) {
+            if (filter.isBlocked(type)) {
+                continue;
+            }
+            for (int length = 0; length <= MAX_FIRST_STRUCT_LENGTH; length++) {
+                ids[i++] = length << 8 | type.ordinal();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Return the manufacturer ID a scan record was advertised with. The record must hold the payload.
+     */
+    public static int idOf(byte[] scanRecord) {
+        return (scanRecord[PacketView.PAYLOAD_OFFSET + 1] & 0xff) << 8 | (scanRecord[PacketView.PAYLOAD_OFFSET] & 0xff);
+    }
+}
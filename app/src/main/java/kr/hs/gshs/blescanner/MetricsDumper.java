@@ -0,0 +1,90 @@
+package kr.hs.gshs.blescanner;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends a {@link MetricsReporter} report to a text file every minute, on a thread of its own, so
+ * a long scanning session can be looked at afterwards. The file is rolled over to one backup once
+ * it passes {@link #MAX_FILE_SIZE}.
+ */
+class MetricsDumper {
+
+    private static final String TAG = MetricsDumper.class.getSimpleName();
+
+    private static final long DUMP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    private final File mFile;
+    private final MetricsReporter mReporter;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    private final Runnable mDump = new Runnable() {
+        @Override
+        public void run() {
+            dump();
+            mHandler.postDelayed(this, DUMP_INTERVAL_MILLIS);
+        }
+    };
+
+    MetricsDumper(File file, PipelineMetrics metrics) {
+        mFile = file;
+        mReporter = new MetricsReporter(metrics, SystemClock.elapsedRealtimeNanos());
+
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mHandler.postDelayed(mDump, DUMP_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Dump once more, then stop.
+     */
+    void quit() {
+        mHandler.removeCallbacks(mDump);
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                dump();
+            }
+        });
+        mThread.quitSafely();
+    }
+
+    private void dump() {
+        String report = String.format(Locale.US, "%tF %<tT%n", System.currentTimeMillis())
+                + mReporter.report(SystemClock.elapsedRealtimeNanos()) + "\n";
+        if (mFile.length() > MAX_FILE_SIZE && !mFile.renameTo(new File(mFile.getPath() + ".1"))) {
+            Log.w(TAG, "Rolling over " + mFile + " failed");
+        }
+
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(mFile, true), Charset.forName("UTF-8"));
+            writer.write(report);
+        } catch (IOException e) {
+            Log.w(TAG, "Dumping metrics failed", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Closing " + mFile + " failed", e);
+                }
+            }
+        }
+    }
+}
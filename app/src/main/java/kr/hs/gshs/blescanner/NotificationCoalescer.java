@@ -0,0 +1,160 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+
+/**
+ * Groups new packets into one summary per {@link PacketTypes}, instead of one notification each.
+ * The first new packet of a type opens a window, and everything of that type arriving within it
+ * ends up in the same summary. Summaries of a type are also spaced at least the minimum interval
+ * apart, packets coming in sooner wait for the next one.
+ * Not thread-safe, driven by calling {@link #poll(long)} at {@link #nextDeadline()}.
+ */
+public class NotificationCoalescer {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 2000;
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 10000;
+
+    /**
+     * Number of packets listed in a summary, only the most recent ones are kept.
+     */
+    public static final int MAX_LINES = 5;
+
+    /**
+     * New packets of one type, as they should be shown in a single notification.
+     */
+    public static class Summary {
+
+        private final PacketTypes packetType;
+        private final List<PacketData> packets;
+        private final int count;
+
+        Summary(PacketTypes packetType, List<PacketData> packets, int count) {
+            this.packetType = packetType;
+            this.packets = packets;
+            this.count = count;
+        }
+
+        public PacketTypes getPacketType() {
+            return packetType;
+        }
+
+        /**
+         * Return the most recent packets, at most {@link #MAX_LINES}, oldest first.
+         */
+        public List<PacketData> getPackets() {
+            return packets;
+        }
+
+        /**
+         * Return the number of new packets, including the ones not listed.
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    private final long windowNanos;
+    private final long minIntervalNanos;
+
+    // Indexed by packet type ordinal.
+    private final ArrayDeque<PacketData>[] pending;
+    private final int[] pendingCounts;
+    private final long[] deadlines;
+    private final long[] lastPosted;
+    private final boolean[] posted;
+
+    public NotificationCoalescer() {
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_MIN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param windowMillis how long new packets are collected before their summary is due
+     * @param minIntervalMillis minimum time between two summaries of the same type
+     */
+    @SuppressWarnings("unchecked")
+    public NotificationCoalescer(long windowMillis, long minIntervalMillis) {
+        if (windowMillis < 0 || minIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid notification intervals");
+        }
+        windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+
+        int types = PacketTypes.getValues().length;
+        pending = new ArrayDeque[types];
+        for (int i = 0; i < types; i++) {
+            pending[i] = new ArrayDeque<>(MAX_LINES);
+        }
+        pendingCounts = new int[types];
+        deadlines = new long[types];
+        lastPosted = new long[types];
+        posted = new boolean[types];
+    }
+
+    /**
+     * Add a new supported packet, seen at the given time.
+     */
+    public void add(PacketData packet, long now) {
+        int type = packet.getPacketType().ordinal();
+        if (pendingCounts[type] == 0) {
+            deadlines[type] = now + windowNanos;
+            if (posted[type] && lastPosted[type] + minIntervalNanos - deadlines[type] > 0) {
+                deadlines[type] = lastPosted[type] + minIntervalNanos;
+            }
+        }
+
+        if (pending[type].size() == MAX_LINES) {
+            pending[type].removeFirst();
+        }
+        pending[type].addLast(packet);
+        pendingCounts[type]++;
+    }
+
+    /**
+     * Return the summaries due as of now, in packet type order, and forget their packets.
+     */
+    public List<Summary> poll(long now) {
+        List<Summary> summaries = new ArrayList<>();
+        for (int type = 0; type < pending.length; type++) {
+            if (pendingCounts[type] == 0 || now - deadlines[type] < 0) {
+                continue;
+            }
+
+            summaries.add(new Summary(PacketTypes.fromOrdinal(type),
+                    new ArrayList<>(pending[type]), pendingCounts[type]));
+            pending[type].clear();
+            pendingCounts[type] = 0;
+            lastPosted[type] = now;
+            posted[type] = true;
+        }
+        return summaries;
+    }
+
+    /**
+     * Return the time at which the next summary is due, or Long.MAX_VALUE if nothing is pending.
+     */
+    public long nextDeadline() {
+        long next = Long.MAX_VALUE;
+        for (int type = 0; type < pending.length; type++) {
+            if (pendingCounts[type] > 0 && deadlines[type] < next) {
+                next = deadlines[type];
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Drop every pending packet, the minimum intervals still apply.
+     */
+    public void clear() {
+        for (int type = 0; type < pending.length; type++) {
+            pending[type].clear();
+            pendingCounts[type] = 0;
+        }
+    }
+}
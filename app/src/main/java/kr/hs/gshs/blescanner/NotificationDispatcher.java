@@ -0,0 +1,202 @@
+package kr.hs.gshs.blescanner;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+
+/**
+ * Notifies the user of new unblocked packets, on a thread of its own so the ingestion thread never
+ * waits on NotificationManager. New packets are coalesced into one inbox style notification per
+ * packet type by a {@link NotificationCoalescer}, each replacing the previous one of its type.
+ */
+class NotificationDispatcher {
+
+    private static final String TAG = NotificationDispatcher.class.getSimpleName();
+
+    private static final String CHANNEL_ID = "new_packets";
+    private static final String GROUP_KEY = "new_packets";
+
+    // Packet types are notified with their ordinal added, clear of the scanning notification.
+    private static final int NOTIFICATION_ID_BASE = 100;
+
+    private final Context mContext;
+    private final Clock mClock;
+    private final NotificationCoalescer mCoalescer;
+    private final PipelineMetrics mMetrics;
+    private final NotificationManager mNotificationManager;
+
+    // Built once, every notification opens the app the same way.
+    private final PendingIntent mContentIntent;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+
+    // Read on the dispatcher thread, replaced rather than changed when the filter changes.
+    private volatile boolean[] mBlockedTypes;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            for (NotificationCoalescer.Summary summary : mCoalescer.poll(mClock.elapsedRealtimeNanos())) {
+                post(summary);
+            }
+            schedule();
+        }
+    };
+
+    NotificationDispatcher(Context context, Clock clock, NotificationCoalescer coalescer, PipelineMetrics metrics) {
+        mContext = context;
+        mClock = clock;
+        mCoalescer = coalescer;
+        mMetrics = metrics;
+
+        mNotificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mNotificationManager.createNotificationChannel(new NotificationChannel(
+                    CHANNEL_ID, "New packets", NotificationManager.IMPORTANCE_HIGH));
+        }
+
+        // The back stack leads out of the app to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addParentStack(MainActivity.class);
+        stackBuilder.addNextIntent(new Intent(context, MainActivity.class));
+        mContentIntent = stackBuilder.getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Only notify packets of types the filter doesn't block. Takes a copy of the filter, call again
+     * after changing it, or pass null to notify every type.
+     */
+    void setPacketTypeFilter(PacketTypeFilter filter) {
+        if (filter == null) {
+            mBlockedTypes = null;
+            return;
+        }
+
+        PacketTypes[] types = PacketTypes.getValues();
+        boolean[] blocked = new boolean[types.length];
+        for (PacketTypes type : types) {
+            blocked[type.ordinal()] = filter.isBlocked(type);
+        }
+        mBlockedTypes = blocked;
+    }
+
+    /**
+     * Queue new packets for notification, can be called from any thread. Takes over the list.
+     */
+    void dispatch(final List<PacketData> newPackets) {
+        if (newPackets.isEmpty()) {
+            return;
+        }
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                long now = mClock.elapsedRealtimeNanos();
+                boolean[] blocked = mBlockedTypes;
+                for (int i = 0; i < newPackets.size(); i++) {
+                    PacketData packet = newPackets.get(i);
+                    if (packet.isSupportedPacket()
+                            && (blocked == null || !blocked[packet.getPacketType().ordinal()])) {
+                        mCoalescer.add(packet, now);
+                    }
+                }
+                schedule();
+            }
+        });
+    }
+
+    /**
+     * Drop packets not notified yet, used when the filter changes.
+     */
+    void clear() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mCoalescer.clear();
+                mHandler.removeCallbacks(mFlush);
+            }
+        });
+    }
+
+    void quit() {
+        mThread.quitSafely();
+    }
+
+    private void schedule() {
+        mHandler.removeCallbacks(mFlush);
+        long deadline = mCoalescer.nextDeadline();
+        if (deadline == Long.MAX_VALUE) {
+            return;
+        }
+
+        // Round up, so the summary is due by the time the flush runs.
+        long delayNanos = Math.max(0, deadline - mClock.elapsedRealtimeNanos());
+        mHandler.postDelayed(mFlush, TimeUnit.NANOSECONDS.toMillis(delayNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+    }
+
+    private void post(NotificationCoalescer.Summary summary) {
+        List<PacketData> packets = summary.getPackets();
+        int count = summary.getCount();
+        String displayName = summary.getPacketType().displayName();
+
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        for (int i = packets.size() - 1; i >= 0; i--) {
+            style.addLine(contentText(packets.get(i)));
+        }
+        if (count > packets.size()) {
+            style.setSummaryText("+" + (count - packets.size()) + " more");
+        }
+
+        Notification notification = new NotificationCompat.Builder(mContext, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(count == 1 ? displayName : displayName + " (" + count + " new)")
+                .setContentText(contentText(packets.get(packets.size() - 1)))
+                .setStyle(style)
+                .setNumber(count)
+                .setGroup(GROUP_KEY)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setDefaults(Notification.DEFAULT_ALL)
+                .setContentIntent(mContentIntent)
+                .setAutoCancel(true)
+                .build();
+        mNotificationManager.notify(NOTIFICATION_ID_BASE + summary.getPacketType().ordinal(), notification);
+        mMetrics.onNotification();
+    }
+
+    /**
+     * Return the data of every struct of a packet, separated by commas.
+     */
+    static String contentText(PacketData packet) {
+        ArrayList<Struct> structs = packet.getStructs();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < structs.size(); i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(structs.get(i).getData());
+        }
+        return text.toString();
+    }
+}
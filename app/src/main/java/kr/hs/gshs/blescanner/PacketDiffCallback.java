@@ -0,0 +1,49 @@
+package kr.hs.gshs.blescanner;
+
+import android.support.v7.util.DiffUtil;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+
+/**
+ * Compares two {@link PacketSnapshot}s for {@link DiffUtil}. Packets are matched by content key,
+ * so a packet whose 'last seen' time changed is reported with {@link #PAYLOAD_LAST_SEEN} only.
+ * Cheap enough to run on the ingestion thread, nothing here touches views.
+ */
+public class PacketDiffCallback extends DiffUtil.Callback {
+
+    public static final Object PAYLOAD_LAST_SEEN = new Object();
+
+    private final PacketSnapshot<PacketData> oldPackets;
+    private final PacketSnapshot<PacketData> newPackets;
+
+    public PacketDiffCallback(PacketSnapshot<PacketData> oldPackets, PacketSnapshot<PacketData> newPackets) {
+        this.oldPackets = oldPackets;
+        this.newPackets = newPackets;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldPackets.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newPackets.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return oldPackets.getKey(oldItemPosition) == newPackets.getKey(newItemPosition);
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return oldPackets.getTimestamp(oldItemPosition) == newPackets.getTimestamp(newItemPosition);
+    }
+
+    @Override
+    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+        // Items with the same key hold equal packets, so only the timestamp can differ.
+        return PAYLOAD_LAST_SEEN;
+    }
+}
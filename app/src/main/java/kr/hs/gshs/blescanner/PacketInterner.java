@@ -0,0 +1,115 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+/**
+ * Bounded canonicalization table for parsed packets, so a payload advertised again, after its packet
+ * left the store, maps to the instance it had, and a struct shared by several packets, such as a
+ * device name, is held once. Direct mapped like {@link DecodeCache}: a packet's key picks its one slot
+ * and a new packet replaces whatever was there, so the table never grows and lookups take constant time.
+ */
+public class PacketInterner {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // Every unsupported packet compares equal, so they share one.
+    private static final PacketData UNSUPPORTED = new PacketData(false, null, null);
+
+    private final InternedPacketData[] packets;
+    private final InternedStruct[] structs;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param capacity number of packet slots, rounded up to a power of two, with as many struct slots
+     */
+    public PacketInterner(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        packets = new InternedPacketData[slots];
+        structs = new InternedStruct[slots];
+    }
+
+    /**
+     * Return the canonical packet a view currently points at, materializing it on a miss.
+     *
+     * @param key {@link PacketKeys} key of the viewed packet
+     */
+    public synchronized PacketData intern(PacketView view, long key) {
+        if (!view.isSupportedPacket()) {
+            return UNSUPPORTED;
+        }
+
+        int slot = (int) (key ^ (key >>> 32)) & (packets.length - 1);
+        InternedPacketData packet = packets[slot];
+        if (packet != null && packet.getKey() == key && matches(packet, view)) {
+            hitCount++;
+            return packet;
+        }
+        missCount++;
+
+        ArrayList<Struct> interned = new ArrayList<>(view.getStructCount());
+        for (int i = 0; i < view.getStructCount(); i++) {
+            interned.add(internStruct(view.getStructTypeValue(i), view.getStructData(i)));
+        }
+        byte[] payload = new byte[PacketView.PAYLOAD_LENGTH];
+        System.arraycopy(view.getBytes(), PacketView.PAYLOAD_OFFSET, payload, 0, PacketView.PAYLOAD_LENGTH);
+        packet = new InternedPacketData(view.getPacketType(), interned, key, payload);
+        packets[slot] = packet;
+        return packet;
+    }
+
+    public synchronized void clear() {
+        for (int slot = 0; slot < packets.length; slot++) {
+            packets[slot] = null;
+            structs[slot] = null;
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private InternedStruct internStruct(int structType, String data) {
+        int hash = InternedStruct.hash(structType, data);
+        int slot = (hash ^ (hash >>> 16)) & (structs.length - 1);
+        InternedStruct struct = structs[slot];
+        if (struct == null || struct.hashCode() != hash || struct.getType().ordinal() != structType
+                || !struct.getData().equals(data)) {
+            struct = new InternedStruct(StructTypes.fromOrdinal(structType), data);
+            structs[slot] = struct;
+        }
+        return struct;
+    }
+
+    // Keys can collide, so a hit is checked against the view's contents.
+    private static boolean matches(InternedPacketData packet, PacketView view) {
+        ArrayList<Struct> packetStructs = packet.getStructs();
+        if (packet.getPacketType().ordinal() != view.getPacketTypeValue()
+                || packetStructs.size() != view.getStructCount()) {
+            return false;
+        }
+        for (int i = 0; i < packetStructs.size(); i++) {
+            Struct struct = packetStructs.get(i);
+            if (struct.getType().ordinal() != view.getStructTypeValue(i)
+                    || !struct.getData().equals(view.getStructData(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+
+/**
+ * Computes the {@link PayloadKeys} key of a parsed {@link PacketData}, so a packet keys the same
+ * whether it is read from a {@link PacketView} or parsed.
+ */
+public class PacketKeys {
+
+    /**
+     * Key shared by every unsupported packet, as they all compare equal.
+     */
+    public static final long UNSUPPORTED = PayloadKeys.UNSUPPORTED;
+
+    private PacketKeys() {
+    }
+
+    /**
+     * Return the key of a parsed packet.
+     */
+    public static long of(PacketData packet) {
+        if (!packet.isSupportedPacket()) {
+            return UNSUPPORTED;
+        }
+
+        long h = PayloadKeys.FNV_OFFSET_BASIS;
+        h = (h ^ packet.getPacketType().ordinal()) * PayloadKeys.FNV_PRIME;
+
+        ArrayList<Struct> structs = packet.getStructs();
+        for (int i = 0; i < structs.size(); i++) {
+            Struct s = structs.get(i);
+            h = (h ^ s.getType().ordinal()) * PayloadKeys.FNV_PRIME;
+            h = PayloadKeys.hashUtf8(h, s.getData());
+        }
+
+        return h == UNSUPPORTED ? 1L : h;
+    }
+
+    /**
+     * Return the key of the packet a view currently points at, same as {@link PayloadKeys#of(PayloadView)}.
+     */
+    public static long of(PacketView view) {
+        return PayloadKeys.of(view);
+    }
+}
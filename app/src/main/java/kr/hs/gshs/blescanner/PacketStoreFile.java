@@ -0,0 +1,257 @@
+package kr.hs.gshs.blescanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+
+/**
+ * Memory-mapped snapshot of a {@link PacketStore} and the packet type filter, to warm start from.
+ * Each store entry has a fixed size slot holding its key, its wall clock last-seen time and its raw
+ * payload, so writing only touches the slots of entries changed since the last write. A packet seen
+ * again only has its timestamp rewritten. Slots are checked when restoring, a torn one is skipped.
+ * Call {@link #restore(PacketStore)} once before writing.
+ */
+public class PacketStoreFile {
+
+    private static final int MAGIC = 0x424c4553;
+    private static final int VERSION = 1;
+
+    // Magic, version, blocked packet types and a spare int.
+    private static final int HEADER_SIZE = 16;
+
+    // Key, sequence number, wall clock timestamp, payload and check word.
+    static final int SLOT_SIZE = 8 + 8 + 8 + PacketView.PAYLOAD_LENGTH + 4;
+    private static final int PAYLOAD = 24;
+    private static final int CHECK = SLOT_SIZE - 4;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int maxEntries;
+    private final long bootTimeNanos;
+
+    // What each slot holds, so an unchanged packet only gets its timestamp rewritten.
+    private final long[] slotKeys;
+    private final boolean[] slotUsed;
+
+    // Orders slots by when their packet was added, as entry indices don't.
+    private long nextSequence;
+
+    private int[] dirtyEntries = new int[16];
+    private final byte[] payload = new byte[PacketView.PAYLOAD_LENGTH];
+    private boolean closed;
+
+    /**
+     * @param maxEntries number of slots, at least the maximum size of the store
+     * @param bootTimeNanos wall clock time at boot, as store timestamps count from boot
+     */
+    public PacketStoreFile(File file, int maxEntries, long bootTimeNanos) throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) maxEntries * SLOT_SIZE);
+        this.maxEntries = maxEntries;
+        this.bootTimeNanos = bootTimeNanos;
+        slotKeys = new long[maxEntries];
+        slotUsed = new boolean[maxEntries];
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            // New, or written by another version, start empty.
+            buffer.put(new byte[buffer.capacity()]);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+        }
+    }
+
+    /**
+     * Apply the saved blocked packet types to a filter.
+     */
+    public synchronized void readFilter(PacketTypeFilter filter) {
+        int blocked = buffer.getInt(8);
+        for (PacketTypes type : PacketTypes.getValues()) {
+            if ((blocked & 1 << type.ordinal()) != 0) {
+                filter.block(type);
+            } else {
+                filter.unblock(type);
+            }
+        }
+    }
+
+    public synchronized void writeFilter(PacketTypeFilter filter) {
+        int blocked = 0;
+        for (PacketTypes type : PacketTypes.getValues()) {
+            if (filter.isBlocked(type)) {
+                blocked |= 1 << type.ordinal();
+            }
+        }
+        buffer.putInt(8, blocked);
+    }
+
+    /**
+     * Add the saved packets to an empty store, in the order they were first added, and return how many.
+     * Their structs are decoded on first access. The file is then rewritten to match the store's entries.
+     */
+    public synchronized int restore(PacketStore<PacketData> store) {
+        final long[] sequences = new long[maxEntries];
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < maxEntries; slot++) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long key = buffer.getLong(offset);
+            long sequence = buffer.getLong(offset + 8);
+            long timestamp = buffer.getLong(offset + 16);
+            if (buffer.getInt(offset + CHECK) == check(key, sequence, timestamp)) {
+                sequences[slot] = sequence;
+                slots.add(slot);
+            }
+        }
+        Collections.sort(slots, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(sequences[a], sequences[b]);
+            }
+        });
+
+        PacketView view = new PacketView();
+        int restored = 0;
+        for (int slot : slots) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            long key = buffer.getLong(offset);
+            byte[] scanRecord = new byte[PacketView.PAYLOAD_OFFSET + PacketView.PAYLOAD_LENGTH];
+            buffer.position(offset + PAYLOAD);
+            buffer.get(scanRecord, PacketView.PAYLOAD_OFFSET, PacketView.PAYLOAD_LENGTH);
+
+            // The key doubles as a check of the payload.
+            view.wrap(scanRecord);
+            if (PacketKeys.of(view) != key || store.indexOf(key) >= 0) {
+                continue;
+            }
+            PacketData packet = view.isSupportedPacket()
+                    ? new RestoredPacketData(view.getPacketType(), scanRecord, key) : view.toPacketData();
+            store.add(key, packet, buffer.getLong(offset + 16) - bootTimeNanos);
+            restored++;
+        }
+
+        // Entries have new indices now, drop every slot and write them where they belong.
+        for (int slot = 0; slot < maxEntries; slot++) {
+            buffer.putInt(HEADER_SIZE + slot * SLOT_SIZE + CHECK, 0);
+        }
+        Arrays.fill(slotUsed, false);
+        nextSequence = 0;
+        write(store);
+        return restored;
+    }
+
+    /**
+     * Write the entries changed since the last write, does nothing once the file is closed.
+     */
+    public synchronized void write(PacketStore<PacketData> store) {
+        if (closed) {
+            return;
+        }
+
+        if (dirtyEntries.length < store.getDirtyCount()) {
+            dirtyEntries = new int[Math.max(store.getDirtyCount(), dirtyEntries.length * 2)];
+        }
+        int count = store.drainDirty(dirtyEntries);
+
+        for (int i = 0; i < count; i++) {
+            int entry = dirtyEntries[i];
+            if (entry >= maxEntries) {
+                continue;
+            }
+            int offset = HEADER_SIZE + entry * SLOT_SIZE;
+
+            if (!store.isUsed(entry)) {
+                if (slotUsed[entry]) {
+                    buffer.putInt(offset + CHECK, 0);
+                    slotUsed[entry] = false;
+                }
+                continue;
+            }
+
+            long key = store.getKey(entry);
+            long sequence;
+            if (slotUsed[entry] && slotKeys[entry] == key) {
+                sequence = buffer.getLong(offset + 8);
+            } else {
+                if (!encode(store.get(entry), payload)) {
+                    buffer.putInt(offset + CHECK, 0);
+                    slotUsed[entry] = false;
+                    continue;
+                }
+                sequence = nextSequence++;
+                buffer.putLong(offset, key);
+                buffer.putLong(offset + 8, sequence);
+                buffer.position(offset + PAYLOAD);
+                buffer.put(payload);
+                slotKeys[entry] = key;
+                slotUsed[entry] = true;
+            }
+
+            long timestamp = store.getTimestamp(entry) + bootTimeNanos;
+            buffer.putLong(offset + 16, timestamp);
+            buffer.putInt(offset + CHECK, check(key, sequence, timestamp));
+        }
+    }
+
+    /**
+     * Close the file without waiting for storage, the kernel still writes the mapping back.
+     */
+    public synchronized void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    /**
+     * Write the payload a packet was advertised with. Interned and restored packets still hold it, others
+     * are encoded again from their structs. Returns false if those don't fit.
+     */
+    private static boolean encode(PacketData packet, byte[] out) {
+        if (packet instanceof InternedPacketData) {
+            System.arraycopy(((InternedPacketData) packet).getPayload(), 0, out, 0, PacketView.PAYLOAD_LENGTH);
+            return true;
+        }
+        if (packet instanceof RestoredPacketData) {
+            System.arraycopy(((RestoredPacketData) packet).getScanRecord(), PacketView.PAYLOAD_OFFSET,
+                    out, 0, PacketView.PAYLOAD_LENGTH);
+            return true;
+        }
+        Arrays.fill(out, (byte) 0);
+        if (!packet.isSupportedPacket()) {
+            // Not a packet type, restores as unsupported.
+            out[0] = -1;
+            return true;
+        }
+
+        out[0] = (byte) packet.getPacketType().ordinal();
+        int pos = 1;
+        for (Struct struct : packet.getStructs()) {
+            int length = pos + 2 > out.length
+                    ? -1 : StructCodecs.encode(struct.getType().ordinal(), struct.getData(), out, pos + 2, out.length - pos - 2);
+            if (length < 0) {
+                return false;
+            }
+            out[pos] = (byte) (length + 1);
+            out[pos + 1] = (byte) struct.getType().ordinal();
+            pos += 2 + length;
+        }
+        return true;
+    }
+
+    // Never 0, so a zeroed slot doesn't pass.
+    private static int check(long key, long sequence, long timestamp) {
+        long h = key * 0x9e3779b97f4a7c15L ^ Long.rotateLeft(sequence, 21) ^ Long.rotateLeft(timestamp, 42);
+        h = (h ^ 0x5bd1e9955bd1e995L) * 0xff51afd7ed558ccdL;
+        int check = (int) (h ^ (h >>> 32));
+        return check == 0 ? 1 : check;
+    }
+}
@@ -0,0 +1,37 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+/**
+ * {@link PayloadView} reading types as the protocol library's enums, and materializing its {@link PacketData}.
+ */
+public class PacketView extends PayloadView {
+
+    public PacketTypes getPacketType() {
+        return isSupportedPacket() ? PacketTypes.fromOrdinal(getPacketTypeValue()) : null;
+    }
+
+    public StructTypes getStructType(int index) {
+        return StructTypes.fromOrdinal(getStructTypeValue(index));
+    }
+
+    /**
+     * Materialize the viewed packet, equal to what ScanResultParser would return for uncompressed structs.
+     */
+    public PacketData toPacketData() {
+        if (!isSupportedPacket()) {
+            return new PacketData(false, null, null);
+        }
+
+        ArrayList<Struct> structs = new ArrayList<>(getStructCount());
+        for (int i = 0; i < getStructCount(); i++) {
+            structs.add(new Struct(getStructType(i), getStructData(i)));
+        }
+        return new PacketData(true, getPacketType(), structs);
+    }
+}
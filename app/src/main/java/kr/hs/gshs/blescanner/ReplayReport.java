@@ -0,0 +1,121 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measurements of one {@link ScanReplayer} replay: how many records were filtered out or dropped by the
+ * full ingestion queue, how long the others took to be published, and how many of those were late.
+ */
+public class ReplayReport {
+
+    private final int queuedCount;
+    private final int droppedCount;
+    private final int filteredCount;
+    private final long[] latencies;
+    private final int lateCount;
+    private final long replayNanos;
+    private final long maxLagNanos;
+
+    ReplayReport(int queuedCount, int droppedCount, int filteredCount, long[] latencies, long lateAfterNanos,
+                 long replayNanos, long maxLagNanos) {
+        this.queuedCount = queuedCount;
+        this.droppedCount = droppedCount;
+        this.filteredCount = filteredCount;
+        this.latencies = latencies;
+        this.replayNanos = replayNanos;
+        this.maxLagNanos = maxLagNanos;
+
+        Arrays.sort(latencies);
+        int late = 0;
+        for (int i = latencies.length - 1; i >= 0 && latencies[i] > lateAfterNanos; i--) {
+            late++;
+        }
+        lateCount = late;
+    }
+
+    /**
+     * Number of results offered to the ingestor, those in the trace the payload filter let through.
+     */
+    public int getOfferedCount() {
+        return queuedCount + droppedCount;
+    }
+
+    /**
+     * Number of results in the trace the payload filter didn't match, never offered.
+     */
+    public int getFilteredCount() {
+        return filteredCount;
+    }
+
+    /**
+     * Number of results dropped because the ingestion queue was full.
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Number of queued results that were published before the replay gave up waiting.
+     */
+    public int getPublishedCount() {
+        return latencies.length;
+    }
+
+    /**
+     * Number of queued results never published, because the ingestor fell too far behind.
+     */
+    public int getUnpublishedCount() {
+        return queuedCount - latencies.length;
+    }
+
+    /**
+     * Number of published results that took longer than the replayer's late threshold.
+     */
+    public int getLateCount() {
+        return lateCount;
+    }
+
+    /**
+     * Return the latency from offer to publish that a fraction of the published results stayed within.
+     *
+     * @param percentile between 0 and 100
+     */
+    public long getLatencyNanos(double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+    }
+
+    /**
+     * Time taken to offer every result.
+     */
+    public long getReplayNanos() {
+        return replayNanos;
+    }
+
+    /**
+     * Furthest a result was offered behind its recorded time, as the replayer couldn't keep up.
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%d results in %.2f s (%.0f/s), %d filtered, %d dropped, %d unpublished, %d late, max lag %.1f ms%n"
+                        + "latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms",
+                getOfferedCount(), replayNanos / 1e9, getOfferedCount() / Math.max(replayNanos / 1e9, 1e-9),
+                filteredCount, droppedCount, getUnpublishedCount(), lateCount, millis(maxLagNanos),
+                millis(getLatencyNanos(50)), millis(getLatencyNanos(90)), millis(getLatencyNanos(99)),
+                millis(getLatencyNanos(99.9)), millis(getLatencyNanos(100)));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
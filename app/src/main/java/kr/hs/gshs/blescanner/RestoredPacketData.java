@@ -0,0 +1,46 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+
+/**
+ * Packet restored from a {@link PacketStoreFile}, which keeps its raw payload and only decodes the
+ * structs when they are first asked for, so a restored list costs no Strings until it is shown.
+ * Compared by key as every {@link KeyedPacketData}, so it equals the interned packet of its payload.
+ */
+class RestoredPacketData extends KeyedPacketData {
+
+    // A scan record holding just the payload, at the offset PacketView expects.
+    private final byte[] scanRecord;
+    private volatile ArrayList<Struct> structs;
+
+    RestoredPacketData(PacketTypes packetType, byte[] scanRecord, long key) {
+        super(packetType, null, key);
+        this.scanRecord = scanRecord;
+    }
+
+    byte[] getScanRecord() {
+        return scanRecord;
+    }
+
+    /**
+     * Whether the structs were asked for yet, and so decoded.
+     */
+    boolean isDecoded() {
+        return structs != null;
+    }
+
+    @Override
+    public ArrayList<Struct> getStructs() {
+        ArrayList<Struct> decoded = structs;
+        if (decoded == null) {
+            PacketView view = new PacketView();
+            view.wrap(scanRecord);
+            decoded = view.toPacketData().getStructs();
+            structs = decoded;
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,627 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+
+/**
+ * Parses and deduplicates scan records on a background worker, off the thread delivering scan callbacks.
+ * Records go into a bounded queue, are applied to a {@link PacketStore} in batches, and the store is
+ * published to a {@link Listener} at most once per refresh interval. A batch of records is published
+ * once it is fully applied, unless applying it takes longer than another refresh interval.
+ * The worker also wakes up when the least recently seen packet is due to expire, so stale packets
+ * leave the published store even when no new records come in.
+ * With a {@link PacketStoreFile} set, the worker first restores the store from it and publishes it
+ * right away, then writes the changed entries back every snapshot interval and once more when stopped.
+ * The structs of the packets in the store are kept indexed in a {@link TextIndex} for searching.
+ * Work that needs every scan result, like recording a trace, is done on the worker by a {@link ResultListener}.
+ */
+public class ScanIngestor {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 250;
+    public static final int DEFAULT_MAX_PACKETS = 2000;
+    // Outlasts the longest background off window, overrun by a tick, and a window on each side of it,
+    // so packets in range don't all expire while the radio is off and come back as new on the next window.
+    public static final long DEFAULT_IDLE_TTL_MILLIS = ScanScheduler.MAX_OFF_WINDOW_MILLIS
+            + ScanScheduler.TICK_MILLIS + 2 * ScanScheduler.ON_WINDOW_MILLIS;
+    public static final long SNAPSHOT_INTERVAL_MILLIS = 5000;
+
+    // How long stop() waits for the last snapshot, it's called on the main thread.
+    public static final long STOP_TIMEOUT_MILLIS = 500;
+
+    private static final String TAG = ScanIngestor.class.getSimpleName();
+
+    /**
+     * Receives the published store contents, called on the worker thread.
+     */
+    public interface Listener {
+        void onPacketsChanged(PacketSnapshot<PacketData> snapshot, List<PacketData> newPackets);
+    }
+
+    /**
+     * Receives every queued scan result as the worker takes it, before it is filtered or deduplicated,
+     * repeats collapsed by {@link #offerBatch} included. Called on the worker thread.
+     */
+    public interface ResultListener {
+
+        /**
+         * @param address device address as given by the scan result, or null if it wasn't given
+         */
+        void onResult(byte[] scanRecord, long timestampNanos, String address, int rssi);
+    }
+
+    /**
+     * Receives every record with a payload of an unblocked type, called on the worker thread.
+     */
+    public interface SightingListener {
+        void onSighting(byte[] scanRecord, long fingerprint, long timestamp);
+    }
+
+    private final int batchSize;
+    private final long refreshIntervalNanos;
+    private final Clock clock;
+    private final Listener listener;
+
+    // Ring buffer of pending records, guarded by lock.
+    private final Object lock = new Object();
+    private final byte[][] queuedRecords;
+    private final long[] queuedTimestamps;
+    // The result's own timestamp for the result listener, offerBatch queues the latest of its payload to ingest.
+    private final long[] queuedResultTimestamps;
+    private final String[] queuedAddresses;
+    private final int[] queuedRssis;
+    // Repeats collapsed by offerBatch, only queued for the result listener.
+    private final boolean[] queuedRepeats;
+    private int queueHead;
+    private int queueSize;
+    private boolean clearRequested;
+    private boolean running;
+    private long droppedCount;
+
+    private Thread worker;
+
+    // Indexed by packet type ordinal, null keeps every record.
+    private volatile boolean[] blockedTypes;
+
+    private volatile ResultListener resultListener;
+    private volatile SightingListener sightingListener;
+    private volatile PacketStoreFile storeFile;
+    private volatile PipelineMetrics metrics;
+
+    private volatile long evictedCount;
+    private volatile long expiredCount;
+    private volatile long appliedCount;
+
+    // Only touched by the worker thread.
+    private final PacketStore<PacketData> packetStore;
+    private final PayloadFingerprints fingerprints = new PayloadFingerprints();
+    private final PacketView packetView = new PacketView();
+    private final PacketInterner packetInterner = new PacketInterner(PacketInterner.DEFAULT_CAPACITY);
+    private final TextIndex textIndex = new TextIndex();
+    // Reads the structs of restored packets for the index, apart from packetView as the store calls back mid-ingest.
+    private final PayloadView indexView = new PayloadView();
+    private ArrayList<PacketData> newPackets = new ArrayList<>();
+
+    public ScanIngestor(Clock clock, Listener listener) {
+        this(DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_REFRESH_INTERVAL_MILLIS,
+                new PacketStore<PacketData>(DEFAULT_MAX_PACKETS, TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_TTL_MILLIS)),
+                clock, listener);
+    }
+
+    /**
+     * @param packetStore store the worker applies records to, it must not be used by anyone else
+     */
+    public ScanIngestor(int queueCapacity, int batchSize, long refreshIntervalMillis,
+                        PacketStore<PacketData> packetStore, Clock clock, Listener listener) {
+        if (queueCapacity <= 0 || batchSize <= 0 || refreshIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid ingestion settings");
+        }
+        this.batchSize = batchSize;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMillis);
+        this.packetStore = packetStore;
+        this.clock = clock;
+        this.listener = listener;
+        queuedRecords = new byte[queueCapacity][];
+        queuedTimestamps = new long[queueCapacity];
+        queuedResultTimestamps = new long[queueCapacity];
+        queuedAddresses = new String[queueCapacity];
+        queuedRssis = new int[queueCapacity];
+        queuedRepeats = new boolean[queueCapacity];
+
+        // However packets come and go, restored, evicted or cleared, the index follows.
+        packetStore.setListener(new PacketStore.Listener<PacketData>() {
+            @Override
+            public void onAdded(long key, PacketData packet) {
+                index(key, packet, true);
+            }
+
+            @Override
+            public void onRemoved(long key, PacketData packet) {
+                index(key, packet, false);
+            }
+        });
+    }
+
+    /**
+     * Add the structs of a packet to the text index or remove them. A restored packet is read from its raw
+     * payload, so warming up from the store file doesn't decode the struct list of every packet restored.
+     */
+    private void index(long key, PacketData packet, boolean add) {
+        if (!packet.isSupportedPacket()) {
+            return;
+        }
+        if (packet instanceof RestoredPacketData) {
+            if (indexView.wrap(((RestoredPacketData) packet).getScanRecord())) {
+                for (int i = 0; i < indexView.getStructCount(); i++) {
+                    index(key, indexView.getStructTypeValue(i), indexView.getStructData(i), add);
+                }
+            }
+            return;
+        }
+        for (Struct struct : packet.getStructs()) {
+            index(key, struct.getType().ordinal(), struct.getData(), add);
+        }
+    }
+
+    private void index(long key, int structType, String data, boolean add) {
+        if (add) {
+            textIndex.add(key, structType, data);
+        } else {
+            textIndex.remove(key, structType, data);
+        }
+    }
+
+    /**
+     * Index of the structs of the packets in the store, safe to search from any thread.
+     */
+    public TextIndex getTextIndex() {
+        return textIndex;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getRefreshIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(refreshIntervalNanos);
+    }
+
+    /**
+     * Number of records dropped so far because the queue was full.
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    /**
+     * Number of packets evicted so far because the store was full.
+     */
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Number of packets expired so far because they weren't seen for longer than the idle TTL.
+     */
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Number of queued records applied to the store so far, the ones published next or already.
+     * Records are applied in the order they were queued.
+     */
+    public long getAppliedCount() {
+        return appliedCount;
+    }
+
+    /**
+     * Drop records of blocked packet types before they are parsed, for when the scan filters
+     * couldn't be offloaded. Takes a copy of the filter, pass null to keep every record.
+     */
+    public void setPacketTypeFilter(PacketTypeFilter filter) {
+        if (filter == null) {
+            blockedTypes = null;
+            return;
+        }
+
+        PacketTypes[] types = PacketTypes.getValues();
+        boolean[] blocked = new boolean[types.length];
+        for (PacketTypes type : types) {
+            blocked[type.ordinal()] = filter.isBlocked(type);
+        }
+        blockedTypes = blocked;
+    }
+
+    /**
+     * Receive every scan result on the worker from now on, or stop if null. Set it before {@link #start()}
+     * to be sure to see every result, results queued while none is set are never passed to it.
+     */
+    public void setResultListener(ResultListener resultListener) {
+        this.resultListener = resultListener;
+    }
+
+    public void setSightingListener(SightingListener sightingListener) {
+        this.sightingListener = sightingListener;
+    }
+
+    /**
+     * Report dedup hits, parse times and publishing to metrics, or to nothing if null.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Persist the store to a file, restoring it when the worker starts. Set before {@link #start()}.
+     */
+    public void setStoreFile(PacketStoreFile storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, TAG);
+        worker.start();
+    }
+
+    /**
+     * Stop the worker, waiting up to {@link #STOP_TIMEOUT_MILLIS} for it to write the last snapshot.
+     * Returns false if it is still writing, it then finishes on its own and the store file must be left open.
+     */
+    public boolean stop() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+
+        if (worker != null && worker != Thread.currentThread()) {
+            try {
+                worker.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return !worker.isAlive();
+        }
+        return true;
+    }
+
+    /**
+     * Queue a scan record, never blocks. Returns false if the queue is full and the record was dropped.
+     */
+    public boolean offer(byte[] scanRecord, long timestampNanos) {
+        return offer(scanRecord, timestampNanos, null, 0);
+    }
+
+    /**
+     * Queue a scan result, never blocks. Returns false if the queue is full and the result was dropped.
+     *
+     * @param address device address as given by the scan result, parsed on the worker if needed, or null
+     */
+    public boolean offer(byte[] scanRecord, long timestampNanos, String address, int rssi) {
+        synchronized (lock) {
+            if (queueSize == queuedRecords.length) {
+                droppedCount++;
+                return false;
+            }
+
+            int tail = (queueHead + queueSize) % queuedRecords.length;
+            queuedRecords[tail] = scanRecord;
+            queuedTimestamps[tail] = timestampNanos;
+            queuedResultTimestamps[tail] = timestampNanos;
+            queuedAddresses[tail] = address;
+            queuedRssis[tail] = rssi;
+            queuedRepeats[tail] = false;
+            if (queueSize++ == 0) {
+                lock.notifyAll();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Queue a batch of scan records, as delivered with a report delay, never blocks.
+     * Repeated payloads are collapsed to their latest sighting first, so the store sees each once.
+     * Returns how many records were queued, the others were dropped because the queue was full.
+     */
+    public int offerBatch(byte[][] scanRecords, long[] timestampsNanos, int count) {
+        return offerBatch(scanRecords, timestampsNanos, null, null, count);
+    }
+
+    /**
+     * Queue a batch of scan results like {@link #offerBatch(byte[][], long[], int)}. With a result listener
+     * set, the collapsed repeats are queued as well, in order, for the listener only.
+     *
+     * @param addresses device addresses as given by the scan results, or null
+     * @param rssis RSSI of each result, or null
+     */
+    public int offerBatch(byte[][] scanRecords, long[] timestampsNanos, String[] addresses, int[] rssis, int count) {
+        boolean queueRepeats = resultListener != null;
+        byte[][] records = new byte[count][];
+        long[] timestamps = new long[count];
+        long[] recordFingerprints = new long[count];
+        int[] indices = new int[count];
+        boolean[] repeats = new boolean[count];
+        int entries = 0;
+        int unique = 0;
+
+        // Open addressing table of (record + 1), at most half full.
+        int[] table = new int[Integer.highestOneBit(Math.max(count, 1)) * 4];
+        int mask = table.length - 1;
+
+        for (int i = 0; i < count; i++) {
+            byte[] scanRecord = scanRecords[i];
+            int seen = -1;
+            long fingerprint = 0;
+            int slot = 0;
+            if (hasPayload(scanRecord)) {
+                fingerprint = PayloadFingerprints.of(scanRecord);
+                slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+                while (table[slot] != 0 && recordFingerprints[table[slot] - 1] != fingerprint) {
+                    slot = (slot + 1) & mask;
+                }
+                seen = table[slot] - 1;
+            }
+
+            if (seen >= 0) {
+                timestamps[seen] = Math.max(timestamps[seen], timestampsNanos[i]);
+                if (!queueRepeats) {
+                    continue;
+                }
+                repeats[entries] = true;
+            } else {
+                if (hasPayload(scanRecord)) {
+                    table[slot] = entries + 1;
+                    recordFingerprints[entries] = fingerprint;
+                }
+                timestamps[entries] = timestampsNanos[i];
+                unique++;
+            }
+            records[entries] = scanRecord;
+            indices[entries++] = i;
+        }
+
+        synchronized (lock) {
+            int free = queuedRecords.length - queueSize;
+            int queued = 0;
+            int queuedEntries = 0;
+            for (int i = 0; i < entries && queuedEntries < free; i++) {
+                int tail = (queueHead + queueSize) % queuedRecords.length;
+                queuedRecords[tail] = records[i];
+                queuedTimestamps[tail] = timestamps[i];
+                queuedResultTimestamps[tail] = timestampsNanos[indices[i]];
+                queuedAddresses[tail] = addresses == null ? null : addresses[indices[i]];
+                queuedRssis[tail] = rssis == null ? 0 : rssis[indices[i]];
+                queuedRepeats[tail] = repeats[i];
+                queueSize++;
+                queuedEntries++;
+                if (!repeats[i]) {
+                    queued++;
+                }
+            }
+            droppedCount += unique - queued;
+            if (queuedEntries > 0 && queueSize == queuedEntries) {
+                lock.notifyAll();
+            }
+            return queued;
+        }
+    }
+
+    /**
+     * Drop every pending record and packet, the empty store is published on the next refresh.
+     */
+    public void clear() {
+        synchronized (lock) {
+            for (int i = 0; i < queueSize; i++) {
+                queuedRecords[(queueHead + i) % queuedRecords.length] = null;
+                queuedAddresses[(queueHead + i) % queuedRecords.length] = null;
+            }
+            queueHead = 0;
+            queueSize = 0;
+            clearRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void work() {
+        byte[][] records = new byte[batchSize][];
+        long[] timestamps = new long[batchSize];
+        long[] resultTimestamps = new long[batchSize];
+        String[] addresses = new String[batchSize];
+        int[] rssis = new int[batchSize];
+        boolean[] repeats = new boolean[batchSize];
+        boolean dirty = false;
+        long nextRefresh = System.nanoTime();
+
+        // Warm start, the restored packets are published before any record comes in.
+        PacketStoreFile file = storeFile;
+        if (file != null && file.restore(packetStore) > 0) {
+            dirty = true;
+        }
+        long snapshotIntervalNanos = TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_INTERVAL_MILLIS);
+        long nextSnapshot = System.nanoTime() + snapshotIntervalNanos;
+
+        while (true) {
+            int count = 0;
+            boolean clear;
+            boolean drained;
+
+            synchronized (lock) {
+                try {
+                    while (running && queueSize == 0 && !clearRequested) {
+                        long delay = packetStore.nextExpiry() == Long.MAX_VALUE
+                                ? Long.MAX_VALUE : packetStore.nextExpiry() - clock.elapsedRealtimeNanos();
+                        if (dirty) {
+                            delay = Math.min(delay, nextRefresh - System.nanoTime());
+                        }
+                        if (file != null && packetStore.getDirtyCount() > 0) {
+                            delay = Math.min(delay, nextSnapshot - System.nanoTime());
+                        }
+                        if (delay <= 0) {
+                            break;
+                        }
+                        if (delay == Long.MAX_VALUE) {
+                            lock.wait();
+                        } else {
+                            TimeUnit.NANOSECONDS.timedWait(lock, delay);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!running) {
+                    if (file != null) {
+                        file.write(packetStore);
+                    }
+                    return;
+                }
+
+                clear = clearRequested;
+                clearRequested = false;
+                while (count < batchSize && queueSize > 0) {
+                    records[count] = queuedRecords[queueHead];
+                    timestamps[count] = queuedTimestamps[queueHead];
+                    resultTimestamps[count] = queuedResultTimestamps[queueHead];
+                    addresses[count] = queuedAddresses[queueHead];
+                    rssis[count] = queuedRssis[queueHead];
+                    repeats[count] = queuedRepeats[queueHead];
+                    queuedRecords[queueHead] = null;
+                    queuedAddresses[queueHead] = null;
+                    queueHead = (queueHead + 1) % queuedRecords.length;
+                    queueSize--;
+                    count++;
+                }
+                drained = queueSize == 0;
+            }
+
+            if (clear) {
+                packetStore.clear();
+                fingerprints.clear();
+                newPackets.clear();
+                dirty = true;
+            }
+
+            ResultListener results = resultListener;
+            int applied = 0;
+            for (int i = 0; i < count; i++) {
+                if (results != null) {
+                    results.onResult(records[i], resultTimestamps[i], addresses[i], rssis[i]);
+                }
+                if (!repeats[i]) {
+                    ingest(records[i], timestamps[i]);
+                    applied++;
+                }
+                records[i] = null;
+                addresses[i] = null;
+            }
+            dirty |= applied > 0;
+            appliedCount += applied;
+
+            if (packetStore.expire(clock.elapsedRealtimeNanos()) > 0) {
+                dirty = true;
+            }
+            evictedCount = packetStore.getEvictedCount();
+            expiredCount = packetStore.getExpiredCount();
+
+            // Hold off until the rest of a batch is applied, but not past another interval.
+            long now = System.nanoTime();
+            boolean due = drained ? now - nextRefresh >= 0 : now - nextRefresh >= refreshIntervalNanos;
+            if (dirty && due) {
+                List<PacketData> published = newPackets;
+                newPackets = new ArrayList<>();
+                PipelineMetrics pipelineMetrics = metrics;
+                if (pipelineMetrics != null) {
+                    pipelineMetrics.onPublished(packetStore.size(), evictedCount, getDroppedCount());
+                }
+                listener.onPacketsChanged(packetStore.snapshot(), published);
+
+                dirty = false;
+                nextRefresh = now + refreshIntervalNanos;
+            }
+
+            if (file != null && now - nextSnapshot >= 0) {
+                file.write(packetStore);
+                nextSnapshot = now + snapshotIntervalNanos;
+            }
+        }
+    }
+
+    private void ingest(byte[] scanRecord, long timestamp) {
+        PipelineMetrics pipelineMetrics = metrics;
+
+        // Fast path, a payload seen before only needs its timestamp updated.
+        boolean hasPayload = hasPayload(scanRecord);
+        long fingerprint = 0;
+        if (hasPayload) {
+            boolean[] blocked = blockedTypes;
+            int packetType = scanRecord[PacketView.PAYLOAD_OFFSET];
+            if (blocked != null && packetType >= 0 && packetType < blocked.length && blocked[packetType]) {
+                return;
+            }
+
+            fingerprint = PayloadFingerprints.of(scanRecord);
+            SightingListener sightings = sightingListener;
+            if (sightings != null) {
+                sightings.onSighting(scanRecord, fingerprint, timestamp);
+            }
+
+            int slot = fingerprints.indexOf(fingerprint);
+            if (slot >= 0) {
+                int entry = packetStore.indexOf(fingerprints.getKey(slot));
+                if (entry >= 0) {
+                    packetStore.setTimestamp(entry, timestamp);
+                    if (pipelineMetrics != null) {
+                        pipelineMetrics.onDuplicate();
+                    }
+                    return;
+                }
+            }
+        }
+
+        long start = pipelineMetrics != null ? System.nanoTime() : 0;
+        packetView.wrap(scanRecord);
+        long key = PacketKeys.of(packetView);
+        int existingEntry = packetStore.indexOf(key);
+
+        if (existingEntry >= 0) {
+            // packet is already in store, update its timestamp.
+            packetStore.setTimestamp(existingEntry, timestamp);
+        } else {
+            // Add new packet to store, only now materializing its structs, or reusing them if interned.
+            PacketData packet = packetInterner.intern(packetView, key);
+            packetStore.add(key, packet, timestamp);
+            newPackets.add(packet);
+        }
+        if (pipelineMetrics != null) {
+            pipelineMetrics.onParsed(System.nanoTime() - start, existingEntry < 0);
+        }
+
+        if (hasPayload) {
+            fingerprints.put(fingerprint, key);
+        }
+    }
+
+    private static boolean hasPayload(byte[] scanRecord) {
+        return scanRecord != null && scanRecord.length >= PacketView.PAYLOAD_OFFSET + PacketView.PAYLOAD_LENGTH;
+    }
+}
@@ -0,0 +1,166 @@
+package kr.hs.gshs.blescanner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+
+/**
+ * Replays a scan trace into a {@link ScanIngestor}, through the same {@link ScanIngestor#offer} the scan
+ * callback uses, so field problems can be reproduced and dense scenarios load tested without a radio.
+ * Each result keeps its recorded address and RSSI, and goes through a {@link PayloadFilter} first as
+ * the callback's do. Results are offered at the pace they were recorded, sped up by a factor, or as
+ * fast as possible.
+ * The replayer has to be the ingestor's listener, passing published contents on to its own listener,
+ * and measures the latency from offering each record to the contents holding it being published.
+ */
+public class ScanReplayer implements ScanIngestor.Listener {
+
+    /**
+     * Speed at which results are offered back to back, without waiting for their recorded time.
+     */
+    public static final double UNPACED = Double.POSITIVE_INFINITY;
+
+    // Longest wait for the queued records to be published, in refresh intervals and at least a second.
+    private static final int DRAIN_TIMEOUT_INTERVALS = 4;
+    private static final long MIN_DRAIN_TIMEOUT_MILLIS = 1000;
+
+    private final Clock clock;
+    private final ScanIngestor.Listener listener;
+    private final long lateAfterNanos;
+
+    private volatile ScanIngestor ingestor;
+    private volatile PayloadFilter payloadFilter = PayloadFilter.ACCEPT_ALL;
+
+    // When each queued record was offered, by queue order.
+    private volatile long[] offerTimes = new long[1024];
+
+    // Guarded by this, filled in by the worker as records are published.
+    private long[] latencies = new long[1024];
+    private long appliedBase;
+    private int publishedCount;
+
+    /**
+     * @param listener receives the published contents after the replayer, or null
+     * @param lateAfterMillis latency past which a published record counts as late
+     */
+    public ScanReplayer(Clock clock, ScanIngestor.Listener listener, long lateAfterMillis) {
+        if (lateAfterMillis < 0) {
+            throw new IllegalArgumentException("Invalid late threshold");
+        }
+        this.clock = clock;
+        this.listener = listener;
+        lateAfterNanos = TimeUnit.MILLISECONDS.toNanos(lateAfterMillis);
+    }
+
+    /**
+     * Only offer results the filter matches from the next replay on, such as the service's
+     * {@link ScanService#getPayloadFilter()}. Accepts every result by default.
+     */
+    public void setPayloadFilter(PayloadFilter payloadFilter) {
+        this.payloadFilter = payloadFilter;
+    }
+
+    /**
+     * Offer every result of a trace to a started ingestor that has this replayer as listener and no
+     * other source of records, then wait for them to be published and return the measurements.
+     * Records are timestamped with the clock as they are offered, as scan results are.
+     *
+     * @param speed how many times faster than recorded to replay, or {@link #UNPACED}
+     */
+    public ReplayReport replay(ScanIngestor ingestor, ScanTraceReader trace, double speed)
+            throws IOException, InterruptedException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Invalid replay speed");
+        }
+        synchronized (this) {
+            this.ingestor = ingestor;
+            appliedBase = ingestor.getAppliedCount();
+            publishedCount = 0;
+        }
+
+        PayloadFilter filter = payloadFilter;
+        int queued = 0;
+        int dropped = 0;
+        int filtered = 0;
+        long maxLagNanos = 0;
+        long firstTimestamp = 0;
+        long start = System.nanoTime();
+
+        while (trace.next()) {
+            if (queued + dropped + filtered == 0) {
+                firstTimestamp = trace.getTimestampNanos();
+            }
+            if (speed != UNPACED) {
+                long due = start + (long) ((trace.getTimestampNanos() - firstTimestamp) / speed);
+                long wait = due - System.nanoTime();
+                maxLagNanos = Math.max(maxLagNanos, -wait);
+                while (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    wait = due - System.nanoTime();
+                }
+            }
+
+            byte[] scanRecord = trace.getScanRecord();
+            if (!filter.acceptsAll() && !filter.matches(scanRecord, trace.getAddress(), trace.getRssi())) {
+                filtered++;
+                continue;
+            }
+
+            long[] times = offerTimes;
+            if (queued == times.length) {
+                times = Arrays.copyOf(times, times.length * 2);
+                offerTimes = times;
+            }
+            times[queued] = System.nanoTime();
+            if (ingestor.offer(scanRecord, clock.elapsedRealtimeNanos(),
+                    ScanTraceWriter.formatAddress(trace.getAddress()), trace.getRssi())) {
+                queued++;
+            } else {
+                dropped++;
+            }
+        }
+        long replayNanos = System.nanoTime() - start;
+
+        long[] published;
+        synchronized (this) {
+            long timeoutMillis = Math.max(MIN_DRAIN_TIMEOUT_MILLIS,
+                    DRAIN_TIMEOUT_INTERVALS * ingestor.getRefreshIntervalMillis());
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            long remaining;
+            while (publishedCount < queued && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            published = Arrays.copyOf(latencies, publishedCount);
+            this.ingestor = null;
+        }
+        return new ReplayReport(queued, dropped, filtered, published, lateAfterNanos, replayNanos, maxLagNanos);
+    }
+
+    @Override
+    public void onPacketsChanged(PacketSnapshot<PacketData> snapshot, List<PacketData> newPackets) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            ScanIngestor replayed = ingestor;
+            if (replayed != null) {
+                int applied = (int) (replayed.getAppliedCount() - appliedBase);
+                long[] times = offerTimes;
+                if (applied > latencies.length) {
+                    latencies = Arrays.copyOf(latencies, Math.max(applied, latencies.length * 2));
+                }
+                for (int i = publishedCount; i < applied; i++) {
+                    latencies[i] = now - times[i];
+                }
+                publishedCount = Math.max(publishedCount, applied);
+                notifyAll();
+            }
+        }
+
+        if (listener != null) {
+            listener.onPacketsChanged(snapshot, newPackets);
+        }
+    }
+}
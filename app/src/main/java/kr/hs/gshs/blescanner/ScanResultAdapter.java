@@ -1,23 +1,18 @@
 package kr.hs.gshs.blescanner;
 
-import android.app.Notification;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.bluetooth.le.ScanResult;
 import android.content.Context;
-import android.content.Intent;
 import android.os.SystemClock;
-import android.support.v4.app.NotificationCompat;
-import android.support.v4.app.TaskStackBuilder;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
-import android.widget.ListView;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import java.util.ArrayList;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
 import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
 import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
@@ -27,10 +22,10 @@ import kr.hs.gshs.blebeaconprotocollibrary.Struct;
 /**
  * Holds and displays {@link ScanResult}s, used by {@link MainActivity}.
  */
-public class ScanResultAdapter extends BaseAdapter {
+public class ScanResultAdapter extends RecyclerView.Adapter<ScanResultAdapter.ViewHolder> {
 
-    private ArrayList<PacketData> mArrayList;
-    private ArrayList<Long> timestamps;
+    // Latest contents published by the ScanIngestor.
+    private PacketSnapshot<PacketData> mPackets;
 
     private Context mContext;
 
@@ -40,185 +35,154 @@ public class ScanResultAdapter extends BaseAdapter {
 
     ScanResultAdapter(Context context, LayoutInflater inflater, PacketTypeFilter packetTypeFilter) {
         super();
-        mArrayList = new ArrayList<>();
-        timestamps = new ArrayList<>();
+        mPackets = PacketSnapshot.empty();
         mContext = context;
         mInflater = inflater;
         mPacketTypeFilter = packetTypeFilter;
+        setHasStableIds(true);
     }
 
-    @Override
-    public int getCount() {
-        return mArrayList.size();
-    }
+    /**
+     * Caches the views of a scan result row, and of the struct rows inside it.
+     */
+    static class ViewHolder extends RecyclerView.ViewHolder {
 
-    @Override
-    public Object getItem(int position) {
-        return mArrayList.get(position);
-    }
+        private TextView textViewPacketType;
+        private TextView textViewLastSeen;
+        private LinearLayout layoutStructs;
 
-    @Override
-    public long getItemId(int position) {
-        return mArrayList.get(position).hashCode();
-    }
+        private ArrayList<StructViewHolder> structViewHolders;
 
-    @Override
-    public View getView(int position, View view, ViewGroup parent) {
+        ViewHolder(View view) {
+            super(view);
+            textViewPacketType = (TextView) view.findViewById(R.id.textViewPacketType);
+            textViewLastSeen = (TextView) view.findViewById(R.id.textViewLastSeen);
+            layoutStructs = (LinearLayout) view.findViewById(R.id.layoutStructs);
+            structViewHolders = new ArrayList<>();
+        }
 
-        // Reuse an old view if we can, otherwise create a new one.
-        if (view == null) {
-            view = mInflater.inflate(R.layout.list_item_scan_result, null);
+        /**
+         * Show a packet's type and structs.
+         */
+        void bindPacket(LayoutInflater inflater, PacketData packet, PacketTypeFilter packetTypeFilter) {
+            if (!packet.isSupportedPacket()) {
+                textViewPacketType.setText("(Unsupported packet)");
+                bindStructs(inflater, null);
+            } else {
+                PacketTypes packetType = packet.getPacketType();
+                String blocked;
+                if (packetTypeFilter.isBlocked(packetType)) {
+                    blocked = " (Blocked)";
+                } else {
+                    blocked = "";
+                }
+                textViewPacketType.setText(packetType.displayName() + blocked);
+                bindStructs(inflater, packet.getStructs());
+            }
         }
 
-        PacketData packet = mArrayList.get(position);
+        /**
+         * Show a placeholder for a row without a packet.
+         */
+        void bindEmpty(String text) {
+            textViewPacketType.setText(text);
+            textViewLastSeen.setText("");
+            bindStructs(null, null);
+        }
 
-        TextView textViewPacketType = (TextView) view.findViewById(R.id.textViewPacketType);
+        void bindLastSeen(long timeSinceNanos) {
+            textViewLastSeen.setText(TimeSinceFormat.format(timeSinceNanos));
+        }
 
-        ListView listViewStructs = (ListView) view.findViewById(R.id.listViewStructs);
-        StructAdapter structAdapter = new StructAdapter(view.getContext(), LayoutInflater.from(view.getContext()));
-        listViewStructs.setAdapter(structAdapter);
+        /**
+         * Show the given structs, reusing struct rows inflated for earlier binds.
+         */
+        void bindStructs(LayoutInflater inflater, ArrayList<Struct> structs) {
+            int count = structs == null ? 0 : structs.size();
 
-        if (!packet.isSupportedPacket()) {
-            textViewPacketType.setText("(Unsupported packet)");
-        } else {
-            PacketTypes packetType = packet.getPacketType();
-            String blocked;
-            if (mPacketTypeFilter.isBlocked(packetType)) {
-                blocked = " (Blocked)";
-            } else {
-                blocked = "";
+            while (structViewHolders.size() < count) {
+                View view = inflater.inflate(R.layout.list_item_struct, layoutStructs, false);
+                layoutStructs.addView(view);
+                structViewHolders.add(new StructViewHolder(view));
             }
-            textViewPacketType.setText(packetType.displayName() + blocked);
 
-            ArrayList<Struct> structs = packet.getStructs();
-            for (Struct s : structs) {
-                structAdapter.addItem(s);
+            for (int i = 0; i < structViewHolders.size(); i++) {
+                StructViewHolder holder = structViewHolders.get(i);
+                if (i < count) {
+                    holder.bind(structs.get(i));
+                    holder.itemView.setVisibility(View.VISIBLE);
+                } else {
+                    holder.itemView.setVisibility(View.GONE);
+                }
             }
-            structAdapter.notifyDataSetChanged();
         }
+    }
 
-        TextView textViewLastSeen = (TextView) view.findViewById(R.id.textViewLastSeen);
-        textViewLastSeen.setText(getTimeSinceString(mContext, timestamps.get(position)));
-
-        return view;
+    @Override
+    public int getItemCount() {
+        return mPackets.size();
     }
 
-    /**
-     * Search the adapter for an existing packet and return it, otherwise return -1.
-     */
-    private int getPosition(PacketData packet) {
-        int position = -1;
-        for (int i = 0; i < mArrayList.size(); i++) {
-            if (mArrayList.get(i).equals(packet)) {
-                position = i;
-                break;
-            }
-        }
-        return position;
+    public PacketData getItem(int position) {
+        return mPackets.get(position);
     }
 
-    /**
-     * Add a packet item to the adapter if a packet isn't already present.
-     * Otherwise updates the existing position with the new packet.
-     */
-    public void add(PacketData packet, long timestamp) {
+    @Override
+    public long getItemId(int position) {
+        return mPackets.getKey(position);
+    }
 
-        int existingPosition = getPosition(packet);
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        return new ViewHolder(mInflater.inflate(R.layout.list_item_scan_result, parent, false));
+    }
 
-        if (existingPosition >= 0) {
-            // packet is already in list, update its timestamp.
-            timestamps.set(existingPosition, timestamp);
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+        if (payloads.contains(PacketDiffCallback.PAYLOAD_LAST_SEEN)) {
+            // Only the 'last seen' time changed, leave the rest of the row alone.
+            bindLastSeen(holder, position);
         } else {
-            // Add new packet to list.
-            mArrayList.add(packet);
-            timestamps.add(timestamp);
-            notification(packet);
+            onBindViewHolder(holder, position);
         }
     }
 
-    private void notification(PacketData packet) {
-        if(!packet.isSupportedPacket() || mPacketTypeFilter.isBlocked(packet.getPacketType()))
-            return;
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        holder.bindPacket(mInflater, mPackets.get(position), mPacketTypeFilter);
+        bindLastSeen(holder, position);
+    }
 
-        ArrayList<Struct> structs = packet.getStructs();
-        String notificationText = "";
-        for (Struct s : structs) {
-            notificationText += ", " + s.getData();
-        }
-        if (notificationText.length() >= 2)
-            notificationText = notificationText.substring(2);
-
-        NotificationCompat.Builder mBuilder =
-                new NotificationCompat.Builder(mContext)
-                        .setSmallIcon(R.mipmap.ic_launcher)
-                        .setContentTitle(packet.getPacketType().displayName())
-                        .setContentText(notificationText)
-                        .setPriority(NotificationCompat.PRIORITY_HIGH)
-                        .setDefaults(Notification.DEFAULT_ALL);
-        // Creates an explicit intent for an Activity in your app
-        Intent resultIntent = new Intent(mContext, MainActivity.class);
-
-        // The stack builder object will contain an artificial back stack for the
-        // started Activity.
-        // This ensures that navigating backward from the Activity leads out of
-        // your application to the Home screen.
-        TaskStackBuilder stackBuilder = TaskStackBuilder.create(mContext);
-        // Adds the back stack for the Intent (but not the Intent itself)
-        stackBuilder.addParentStack(MainActivity.class);
-        // Adds the Intent that starts the Activity to the top of the stack
-        stackBuilder.addNextIntent(resultIntent);
-        PendingIntent resultPendingIntent =
-                stackBuilder.getPendingIntent(
-                        0,
-                        PendingIntent.FLAG_UPDATE_CURRENT
-                );
-        mBuilder.setContentIntent(resultPendingIntent);
-        NotificationManager mNotificationManager =
-                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
-        // id allows you to update the notification later on.
-        mNotificationManager.notify(0, mBuilder.build());
+    private void bindLastSeen(ViewHolder holder, int position) {
+        holder.bindLastSeen(SystemClock.elapsedRealtimeNanos() - mPackets.getTimestamp(position));
     }
 
     /**
-     * Clear out the adapter.
+     * Show a snapshot in place of the current contents, without computing what changed.
      */
-    public void clear() {
-        mArrayList.clear();
-        timestamps.clear();
+    public void replace(PacketSnapshot<PacketData> snapshot) {
+        mPackets = snapshot;
+        notifyDataSetChanged();
     }
 
     /**
-     * Takes in a number of nanoseconds and returns a human-readable string giving a vague
-     * description of how long ago that was.
+     * Replace the adapter's contents with a snapshot published by the {@link ScanIngestor},
+     * dispatching the changes computed from the previous snapshot.
      */
-    private static String getTimeSinceString(Context context, long timeNanoseconds) {
-        String lastSeenText;
-
-        long timeSince = SystemClock.elapsedRealtimeNanos() - timeNanoseconds;
-        long secondsSince = TimeUnit.SECONDS.convert(timeSince, TimeUnit.NANOSECONDS);
+    public void update(PacketSnapshot<PacketData> snapshot, DiffUtil.DiffResult diff) {
+        mPackets = snapshot;
+        diff.dispatchUpdatesTo(this);
+    }
 
-        if (secondsSince == 1) {
-            lastSeenText = secondsSince + " second ago";
-        } else if (secondsSince < 60) {
-            lastSeenText = secondsSince + " seconds ago";
-        } else {
-            long minutesSince = TimeUnit.MINUTES.convert(secondsSince, TimeUnit.SECONDS);
-            if (minutesSince < 60) {
-                if (minutesSince == 1) {
-                    lastSeenText = minutesSince + " minute ago";
-                } else {
-                    lastSeenText = minutesSince + " minutes ago";
-                }
-            } else {
-                long hoursSince = TimeUnit.HOURS.convert(minutesSince, TimeUnit.MINUTES);
-                if (hoursSince == 1) {
-                    lastSeenText = hoursSince + " hour ago";
-                } else {
-                    lastSeenText = hoursSince + " hours ago";
-                }
-            }
-        }
+    public void setPacketTypeFilter(PacketTypeFilter packetTypeFilter) {
+        mPacketTypeFilter = packetTypeFilter;
+        notifyDataSetChanged();
+    }
 
-        return lastSeenText;
+    /**
+     * Rebind the 'last seen' times of all rows, even if no new results came in.
+     */
+    public void refreshLastSeen() {
+        notifyItemRangeChanged(0, getItemCount(), PacketDiffCallback.PAYLOAD_LAST_SEEN);
     }
 }
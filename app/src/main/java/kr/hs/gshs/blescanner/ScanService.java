@@ -0,0 +1,758 @@
+package kr.hs.gshs.blescanner;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+
+/**
+ * Scans for Bluetooth Low Energy Advertisements and keeps the packet store, independently of
+ * {@link MainActivity}. Runs in the foreground while scanning, so ingestion survives the activity
+ * being destroyed or recreated, and a newly bound activity attaches to the warm store.
+ * How hard the radio actually scans is left to a {@link ScanScheduler}, which is told whether a client
+ * is attached, whether the screen is on and whether any packet type is unblocked.
+ */
+public class ScanService extends Service {
+
+    private static final String TAG = ScanService.class.getSimpleName();
+
+    private static final int SCANNING_NOTIFICATION_ID = 1;
+    private static final String SCANNING_CHANNEL_ID = "scanning";
+
+    public static final long DEFAULT_REPORT_DELAY_MILLIS = 2000;
+
+    private static final String SIGHTINGS_DIRECTORY = "sightings";
+    private static final String STORE_FILE_NAME = "packets.snapshot";
+    private static final String TRACE_FILE_NAME = "scan-trace.bin";
+    private static final String PREVIOUS_TRACE_FILE_NAME = "scan-trace.1.bin";
+    private static final String METRICS_FILE_NAME = "metrics.txt";
+
+    // The trace is rotated here, about a million results.
+    private static final long MAX_TRACE_BYTES = 64L << 20;
+
+    /**
+     * Receives the store contents from the service.
+     */
+    public interface Client {
+
+        /**
+         * Called once with the current contents when the client attaches, on the attaching thread.
+         */
+        void onAttached(PacketSnapshot<PacketData> snapshot);
+
+        /**
+         * Called on the ingestion thread each time new contents are published.
+         */
+        void onPacketsChanged(PacketSnapshot<PacketData> snapshot);
+    }
+
+    /**
+     * Binder for clients in the same process.
+     */
+    public class LocalBinder extends Binder {
+        ScanService getService() {
+            return ScanService.this;
+        }
+    }
+
+    private final IBinder mBinder = new LocalBinder();
+
+    private BluetoothLeScanner mBluetoothLeScanner;
+
+    private ScanCallback mScanCallback;
+
+    // Whether the controller filters by packet type, otherwise the ingestor drops blocked types.
+    private boolean mUseScanFilters;
+
+    // Whether the controller can hold results back and deliver them in batches.
+    private boolean mUseBatching;
+
+    private long mReportDelayMillis = DEFAULT_REPORT_DELAY_MILLIS;
+
+    private ScanIngestor mScanIngestor;
+
+    private NotificationDispatcher mNotificationDispatcher;
+
+    private PipelineMetrics mMetrics;
+
+    // Checked on the callback thread, replaced whole.
+    private volatile PayloadFilter mPayloadFilter = PayloadFilter.ACCEPT_ALL;
+    // Text the payload filter was made from by setPayloadFilterText, empty for any other filter.
+    private volatile String mPayloadFilterText = "";
+
+    private final BeaconTracker mBeaconTracker = new BeaconTracker(BeaconTracker.DEFAULT_MAX_BEACONS);
+
+    private MetricsDumper mMetricsDumper;
+
+    private SightingRecorder mSightingRecorder;
+
+    // Null unless exporting, read on the ingestion thread.
+    private volatile SightingExporter mSightingExporter;
+
+    // Null unless this is a debug build.
+    private TraceRecorder mTraceRecorder;
+
+    // Snapshot of the packet list and filter to warm start from, null if it couldn't be opened.
+    private PacketStoreFile mStoreFile;
+
+    // Wall clock time at boot, scan result timestamps count from boot.
+    private final long mBootTimeNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis())
+            - SystemClock.elapsedRealtimeNanos();
+
+    private ScanScheduler mScanScheduler;
+
+    private final Handler mHandler = new Handler();
+
+    private final Runnable mSchedulerTick = new Runnable() {
+        @Override
+        public void run() {
+            mHandler.postDelayed(this, mScanScheduler.tick());
+        }
+    };
+
+    private final BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mScanScheduler.setScreenOn(Intent.ACTION_SCREEN_ON.equals(intent.getAction()));
+        }
+    };
+
+    private PacketTypeFilter mPacketTypeFilter;
+
+    // Guards mLatestSnapshot, so attaching clients never miss or repeat a published snapshot.
+    private final Object mPublishLock = new Object();
+    private PacketSnapshot<PacketData> mLatestSnapshot = PacketSnapshot.empty();
+    private final CopyOnWriteArrayList<Client> mClients = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        mPacketTypeFilter = new PacketTypeFilter();
+        try {
+            mStoreFile = new PacketStoreFile(new File(getFilesDir(), STORE_FILE_NAME),
+                    ScanIngestor.DEFAULT_MAX_PACKETS, mBootTimeNanos);
+            mStoreFile.readFilter(mPacketTypeFilter);
+        } catch (IOException e) {
+            Log.w(TAG, "Opening the packet store file failed, starting cold", e);
+        }
+
+        Clock clock = new Clock() {
+            @Override
+            public long elapsedRealtimeNanos() {
+                return SystemClock.elapsedRealtimeNanos();
+            }
+        };
+        mMetrics = new PipelineMetrics(clock.elapsedRealtimeNanos());
+        mMetricsDumper = new MetricsDumper(new File(getDiagnosticsDir(), METRICS_FILE_NAME), mMetrics);
+        mScanIngestor = new ScanIngestor(clock, new ScanIngestor.Listener() {
+            @Override
+            public void onPacketsChanged(PacketSnapshot<PacketData> snapshot, List<PacketData> newPackets) {
+                mScanScheduler.recordNewPackets(newPackets.size());
+                publish(snapshot);
+                mNotificationDispatcher.dispatch(newPackets);
+            }
+        });
+        mNotificationDispatcher = new NotificationDispatcher(this, clock, new NotificationCoalescer(), mMetrics);
+        mNotificationDispatcher.setPacketTypeFilter(mPacketTypeFilter);
+        mScanIngestor.setPacketTypeFilter(mPacketTypeFilter);
+        mSightingRecorder = new SightingRecorder();
+        mScanIngestor.setSightingListener(mSightingRecorder);
+        mScanIngestor.setStoreFile(mStoreFile);
+        mScanIngestor.setMetrics(mMetrics);
+        if (BuildConfig.DEBUG) {
+            mTraceRecorder = new TraceRecorder();
+        }
+        mScanIngestor.setResultListener(new ScanIngestor.ResultListener() {
+            @Override
+            public void onResult(byte[] scanRecord, long timestampNanos, String address, int rssi) {
+                // Every result queued passed the payload filter.
+                if (address != null) {
+                    mBeaconTracker.record(ScanTraceWriter.parseAddress(address), timestampNanos, rssi);
+                }
+                if (mTraceRecorder != null) {
+                    mTraceRecorder.onResult(scanRecord, timestampNanos, address, rssi);
+                }
+            }
+        });
+        mScanIngestor.start();
+
+        mScanScheduler = new ScanScheduler(new ScanScheduler.Scanner() {
+            @Override
+            public void startScan(ScanScheduler.Mode mode) {
+                Log.d(TAG, "Starting Scanning in " + mode);
+                mScanCallback = new SampleScanCallback();
+                mBluetoothLeScanner.startScan(buildScanFilters(), buildScanSettings(mode), mScanCallback);
+            }
+
+            @Override
+            public void stopScan() {
+                Log.d(TAG, "Stopping Scanning");
+                if (mUseBatching) {
+                    // Deliver results still held back by the controller.
+                    mBluetoothLeScanner.flushPendingScanResults(mScanCallback);
+                }
+                mBluetoothLeScanner.stopScan(mScanCallback);
+                mScanCallback = null;
+            }
+        }, clock);
+        mScanScheduler.setHasUnblockedTypes(hasUnblockedTypes());
+        mScanScheduler.setScreenOn(((PowerManager) getSystemService(Context.POWER_SERVICE)).isInteractive());
+
+        IntentFilter screenFilter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        registerReceiver(mScreenReceiver, screenFilter);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        stopScanning();
+        unregisterReceiver(mScreenReceiver);
+        boolean stopped = mScanIngestor.stop();
+        mNotificationDispatcher.quit();
+        mMetricsDumper.quit();
+        mSightingRecorder.close();
+        stopExport();
+        if (mTraceRecorder != null) {
+            mTraceRecorder.close();
+        }
+        if (!stopped) {
+            Log.w(TAG, "Ingestion still writing the packet store file, leaving it open");
+        } else if (mStoreFile != null) {
+            try {
+                mStoreFile.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Closing the packet store file failed", e);
+            }
+        }
+    }
+
+    /**
+     * Start receiving the store contents, returns the current ones through {@link Client#onAttached}.
+     */
+    public void attach(Client client) {
+        synchronized (mPublishLock) {
+            mClients.add(client);
+            client.onAttached(mLatestSnapshot);
+        }
+        mScanScheduler.setForeground(true);
+    }
+
+    public void detach(Client client) {
+        mClients.remove(client);
+        mScanScheduler.setForeground(!mClients.isEmpty());
+    }
+
+    private void publish(PacketSnapshot<PacketData> snapshot) {
+        Object[] clients;
+        synchronized (mPublishLock) {
+            mLatestSnapshot = snapshot;
+            clients = mClients.toArray();
+        }
+        for (Object client : clients) {
+            ((Client) client).onPacketsChanged(snapshot);
+        }
+    }
+
+    public PacketTypeFilter getPacketTypeFilter() {
+        return mPacketTypeFilter;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Apply the packet type filter to the scan, the ingestor and notifications, call after changing it.
+     */
+    public void onPacketTypeFilterChanged() {
+        mScanIngestor.setPacketTypeFilter(mPacketTypeFilter);
+        mNotificationDispatcher.setPacketTypeFilter(mPacketTypeFilter);
+        mScanScheduler.setHasUnblockedTypes(hasUnblockedTypes());
+        if (mStoreFile != null) {
+            mStoreFile.writeFilter(mPacketTypeFilter);
+        }
+
+        if (mUseScanFilters) {
+            mScanScheduler.restartScan();
+        }
+    }
+
+    /**
+     * Only queue scan results matching a filter from now on, without restarting the scan.
+     * Packets already in the store stay.
+     */
+    public void setPayloadFilter(PayloadFilter filter) {
+        mPayloadFilter = filter;
+        mPayloadFilterText = "";
+    }
+
+    public PayloadFilter getPayloadFilter() {
+        return mPayloadFilter;
+    }
+
+    /**
+     * Only queue scan results with text in any struct from now on, like {@link #setPayloadFilter},
+     * or every result if the text is empty.
+     */
+    public void setPayloadFilterText(String text) {
+        setPayloadFilter(text.isEmpty() ? PayloadFilter.ACCEPT_ALL
+                : PayloadFilter.compile(new PayloadFilter.Rule().contains(text)));
+        mPayloadFilterText = text;
+    }
+
+    public String getPayloadFilterText() {
+        return mPayloadFilterText;
+    }
+
+    public TextIndex getTextIndex() {
+        return mScanIngestor.getTextIndex();
+    }
+
+    /**
+     * RSSI history of every beacon whose results passed the payload filter.
+     */
+    public BeaconTracker getBeaconTracker() {
+        return mBeaconTracker;
+    }
+
+    /**
+     * Stream sightings to a {@link SightingCollector} from now on, in place of any earlier one.
+     */
+    public void startExport(String host, int port) {
+        stopExport();
+        String androidId = Settings.Secure.getString(getContentResolver(), Settings.Secure.ANDROID_ID);
+        long scannerId = PayloadKeys.hashUtf8(PayloadKeys.FNV_OFFSET_BASIS, androidId == null ? "" : androidId);
+        mSightingExporter = new SightingExporter(SightingExporter.socketConnector(host, port), scannerId);
+    }
+
+    /**
+     * Stop streaming sightings. Returns right away, what is pending is sent on a thread of its own,
+     * as closing the exporter waits for the link a while.
+     */
+    public void stopExport() {
+        final SightingExporter exporter = mSightingExporter;
+        mSightingExporter = null;
+        if (exporter != null) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    exporter.close();
+                }
+            }, "SightingExporter close").start();
+        }
+    }
+
+    /**
+     * Return the log of every sighting, opening it if needed, which reads from storage.
+     * Don't call on the UI thread.
+     */
+    public SightingLog getSightingLog() throws IOException {
+        return mSightingRecorder.open();
+    }
+
+    /**
+     * Return the exporter sightings are streamed through, or null if they aren't.
+     */
+    public SightingExporter getSightingExporter() {
+        return mSightingExporter;
+    }
+
+    private boolean hasUnblockedTypes() {
+        for (PacketTypes type : PacketTypes.getValues()) {
+            if (!mPacketTypeFilter.isBlocked(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop every packet, used when the filter changes.
+     */
+    public void clear() {
+        mScanIngestor.clear();
+        mNotificationDispatcher.clear();
+    }
+
+    public long getReportDelayMillis() {
+        return mReportDelayMillis;
+    }
+
+    /**
+     * Set how long the controller may hold results back while scanning at low power, 0 reports
+     * each result right away. Ignored where batching isn't supported.
+     */
+    public void setReportDelayMillis(long reportDelayMillis) {
+        mReportDelayMillis = reportDelayMillis;
+        if (mUseBatching && mScanScheduler.getMode() == ScanScheduler.Mode.LOW_POWER) {
+            mScanScheduler.restartScan();
+        }
+    }
+
+    /**
+     * Whether the user turned scanning on, the radio may still be idle between scan windows.
+     */
+    public boolean isScanning() {
+        return mScanScheduler.isEnabled();
+    }
+
+    /**
+     * Start scanning for BLE Advertisements, in the foreground. Returns false if Bluetooth is off.
+     */
+    public boolean startScanning() {
+        if (mScanScheduler.isEnabled()) {
+            return true;
+        }
+
+        BluetoothAdapter bluetoothAdapter = ((BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE)).getAdapter();
+        mBluetoothLeScanner = bluetoothAdapter == null ? null : bluetoothAdapter.getBluetoothLeScanner();
+        if (mBluetoothLeScanner == null) {
+            return false;
+        }
+        mUseScanFilters = bluetoothAdapter.isOffloadedFilteringSupported();
+        mUseBatching = bluetoothAdapter.isOffloadedScanBatchingSupported();
+
+        // Stay alive while scanning, even without a bound activity.
+        startService(new Intent(this, ScanService.class));
+        startForeground(SCANNING_NOTIFICATION_ID, buildScanningNotification());
+
+        // Kick off the scheduler, it starts the first scan right away.
+        mScanScheduler.setEnabled(true);
+        mHandler.postDelayed(mSchedulerTick, ScanScheduler.TICK_MILLIS);
+        return true;
+    }
+
+    /**
+     * Stop scanning for BLE Advertisements, the store is kept.
+     */
+    public void stopScanning() {
+        if (!mScanScheduler.isEnabled()) {
+            return;
+        }
+
+        mHandler.removeCallbacks(mSchedulerTick);
+        mScanScheduler.setEnabled(false);
+
+        stopForeground(true);
+    }
+
+    /**
+     * Return a List of {@link ScanFilter} objects matching the unblocked packet types, or a single
+     * empty one matching everything if the controller can't filter.
+     */
+    private List<ScanFilter> buildScanFilters() {
+        List<ScanFilter> scanFilters = new ArrayList<>();
+
+        if (!mUseScanFilters) {
+            ScanFilter.Builder builder = new ScanFilter.Builder();
+            scanFilters.add(builder.build());
+            return scanFilters;
+        }
+
+        // Any manufacturer data goes, the packet type is part of the ID.
+        byte[] anyData = new byte[0];
+        for (int id : ManufacturerFilters.idsFor(mPacketTypeFilter)) {
+            scanFilters.add(new ScanFilter.Builder().setManufacturerData(id, anyData).build());
+        }
+        return scanFilters;
+    }
+
+    /**
+     * Return a {@link ScanSettings} object for the mode picked by the scheduler.
+     * Low power scans run in the background, where results are batched if the controller can.
+     */
+    private ScanSettings buildScanSettings(ScanScheduler.Mode mode) {
+        ScanSettings.Builder builder = new ScanSettings.Builder();
+        switch (mode) {
+            case LOW_LATENCY:
+                builder.setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY);
+                break;
+            case BALANCED:
+                builder.setScanMode(ScanSettings.SCAN_MODE_BALANCED);
+                break;
+            default:
+                builder.setScanMode(ScanSettings.SCAN_MODE_LOW_POWER);
+                if (mUseBatching) {
+                    builder.setReportDelay(mReportDelayMillis);
+                }
+                break;
+        }
+        return builder.build();
+    }
+
+    private Notification buildScanningNotification() {
+        NotificationManager notificationManager =
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            notificationManager.createNotificationChannel(new NotificationChannel(
+                    SCANNING_CHANNEL_ID, "Scanning", NotificationManager.IMPORTANCE_LOW));
+        }
+
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new NotificationCompat.Builder(this, SCANNING_CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText("Scanning for beacons")
+                .setContentIntent(contentIntent)
+                .setOngoing(true)
+                .build();
+    }
+
+    /**
+     * Writes sightings to the {@link SightingLog}, which is opened on the ingestion thread on first use,
+     * as recovering it reads from storage, and queues them for the exporter if there is one.
+     * Timestamps are logged and exported as wall clock milliseconds.
+     */
+    private class SightingRecorder implements ScanIngestor.SightingListener {
+
+        private SightingLog mSightingLog;
+        private boolean mClosed;
+
+        @Override
+        public synchronized void onSighting(byte[] scanRecord, long fingerprint, long timestamp) {
+            long timestampMillis = TimeUnit.NANOSECONDS.toMillis(mBootTimeNanos + timestamp);
+            SightingExporter exporter = mSightingExporter;
+            if (exporter != null) {
+                exporter.offer(scanRecord, fingerprint, timestampMillis);
+            }
+            if (mClosed) {
+                return;
+            }
+            try {
+                open().append(scanRecord, fingerprint, timestampMillis);
+            } catch (IOException e) {
+                Log.w(TAG, "Sighting log failed, no longer logging", e);
+                close();
+            }
+        }
+
+        /**
+         * Return the log, opening it if no sighting did yet. Throws IOException once closed.
+         */
+        synchronized SightingLog open() throws IOException {
+            if (mClosed) {
+                throw new IOException("Sighting log closed");
+            }
+            if (mSightingLog == null) {
+                mSightingLog = new SightingLog(new File(getFilesDir(), SIGHTINGS_DIRECTORY));
+            }
+            return mSightingLog;
+        }
+
+        synchronized void close() {
+            mClosed = true;
+            if (mSightingLog == null) {
+                return;
+            }
+            try {
+                mSightingLog.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Closing the sighting log failed", e);
+            }
+            mSightingLog = null;
+        }
+    }
+
+    /**
+     * Return where traces and metrics go, external files where adb can pull them from if there are any.
+     */
+    private File getDiagnosticsDir() {
+        File directory = getExternalFilesDir(null);
+        return directory != null ? directory : getFilesDir();
+    }
+
+    /**
+     * Records the scan results passing the payload filter to a trace in the app's external files, to replay
+     * with a {@link ScanReplayer}. Writes on the ingestion thread, through a buffer. A new trace is started
+     * each time the service starts and whenever the trace is full, the one before kept as the previous trace.
+     */
+    private class TraceRecorder implements ScanIngestor.ResultListener {
+
+        private ScanTraceWriter mWriter;
+        private boolean mClosed;
+
+        @Override
+        public synchronized void onResult(byte[] scanRecord, long timestampNanos, String address, int rssi) {
+            if (mClosed) {
+                return;
+            }
+            try {
+                if (mWriter == null) {
+                    mWriter = new ScanTraceWriter(new FileOutputStream(rotate()));
+                }
+                mWriter.write(timestampNanos, rssi, address == null ? 0 : ScanTraceWriter.parseAddress(address),
+                        scanRecord);
+                if (mWriter.size() >= MAX_TRACE_BYTES) {
+                    Log.i(TAG, "Scan trace is full, starting a new one");
+                    ScanTraceWriter writer = mWriter;
+                    mWriter = null;
+                    writer.close();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Scan trace failed, no longer recording", e);
+                close();
+            }
+        }
+
+        /**
+         * Keep the current trace as the previous one, and return the file for the next.
+         */
+        private File rotate() throws IOException {
+            File trace = new File(getDiagnosticsDir(), TRACE_FILE_NAME);
+            File previous = new File(getDiagnosticsDir(), PREVIOUS_TRACE_FILE_NAME);
+            if (trace.exists() && !trace.renameTo(previous)) {
+                throw new IOException("Could not keep " + trace + " as " + previous);
+            }
+            return trace;
+        }
+
+        synchronized void close() {
+            mClosed = true;
+            if (mWriter == null) {
+                return;
+            }
+            try {
+                mWriter.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Closing the scan trace failed", e);
+            }
+            mWriter = null;
+        }
+    }
+
+    /**
+     * Custom ScanCallback object - queues results for the ingestor on success, displays error on failure.
+     */
+    private class SampleScanCallback extends ScanCallback {
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            super.onBatchScanResults(results);
+
+            // Handed over in one go, so the batch is deduplicated and published once.
+            PayloadFilter filter = mPayloadFilter;
+            int count = results.size();
+            mMetrics.onCallbacks(count);
+            byte[][] scanRecords = new byte[count][];
+            long[] timestamps = new long[count];
+            String[] addresses = new String[count];
+            int[] rssis = new int[count];
+            int accepted = 0;
+            for (int i = 0; i < count; i++) {
+                ScanResult result = results.get(i);
+                ScanRecord scanRecord = result.getScanRecord();
+                byte[] bytes = scanRecord == null ? null : scanRecord.getBytes();
+                if (accept(filter, result, bytes)) {
+                    addresses[accepted] = result.getDevice().getAddress();
+                    rssis[accepted] = result.getRssi();
+                    scanRecords[accepted] = bytes;
+                    timestamps[accepted++] = result.getTimestampNanos();
+                }
+            }
+            if (accepted < count) {
+                mMetrics.onFiltered(count - accepted);
+            }
+            mScanIngestor.offerBatch(scanRecords, timestamps, addresses, rssis, accepted);
+        }
+
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            super.onScanResult(callbackType, result);
+
+            add(result);
+        }
+
+        private void add(ScanResult result) {
+            mMetrics.onCallbacks(1);
+            ScanRecord scanRecord = result.getScanRecord();
+            byte[] bytes = scanRecord == null ? null : scanRecord.getBytes();
+            if (!accept(mPayloadFilter, result, bytes)) {
+                mMetrics.onFiltered(1);
+                return;
+            }
+            mScanIngestor.offer(bytes, result.getTimestampNanos(), result.getDevice().getAddress(), result.getRssi());
+        }
+
+        /**
+         * Check a result against the filter, parsing its address only if the filter reads it.
+         * The RSSI of its beacon is tracked on the ingestion thread.
+         */
+        private boolean accept(PayloadFilter filter, ScanResult result, byte[] scanRecord) {
+            if (filter.acceptsAll()) {
+                return true;
+            }
+            long address = filter.usesAddress() ? ScanTraceWriter.parseAddress(result.getDevice().getAddress()) : 0;
+            return filter.matches(scanRecord, address, result.getRssi());
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            super.onScanFailed(errorCode);
+
+            if (mUseBatching && errorCode == SCAN_FAILED_FEATURE_UNSUPPORTED) {
+                // Claimed batching support the controller doesn't have, report each result instead.
+                Log.w(TAG, "Batched scan is unsupported");
+                mUseBatching = false;
+                mScanScheduler.restartScan();
+                return;
+            }
+            if (mUseScanFilters && errorCode != SCAN_FAILED_ALREADY_STARTED) {
+                // Probably out of filter slots, filter in software instead.
+                Log.w(TAG, "Scan with filters failed with error: " + errorCode);
+                mUseScanFilters = false;
+                mScanScheduler.restartScan();
+                return;
+            }
+            Toast.makeText(getApplicationContext(), "Scan failed with error: " + errorCode, Toast.LENGTH_LONG).show();
+        }
+    }
+}
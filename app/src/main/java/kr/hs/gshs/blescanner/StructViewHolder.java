@@ -0,0 +1,31 @@
+package kr.hs.gshs.blescanner;
+
+import android.view.View;
+import android.widget.TextView;
+
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+
+/**
+ * Caches the views of a struct row inside a scan result row.
+ */
+class StructViewHolder {
+
+    final View itemView;
+
+    private TextView textViewLen;
+    private TextView textViewType;
+    private TextView textViewData;
+
+    StructViewHolder(View view) {
+        itemView = view;
+        textViewLen = (TextView) view.findViewById(R.id.textViewLen);
+        textViewType = (TextView) view.findViewById(R.id.textViewType);
+        textViewData = (TextView) view.findViewById(R.id.textViewData);
+    }
+
+    void bind(Struct item) {
+        textViewLen.setText(String.valueOf(item.getLength()));
+        textViewType.setText(item.getType().displayName());
+        textViewData.setText(item.getData());
+    }
+}
@@ -0,0 +1,52 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+import static org.junit.Assert.*;
+
+public class CompactAdvertiseDataBuilderTest {
+
+    private final CompactAdvertiseDataBuilder builder = new CompactAdvertiseDataBuilder();
+
+    // What a scanner receives for the payload, behind the flags and manufacturer data headers.
+    private static byte[] scanRecord(ByteBuffer payload) {
+        byte[] record = ScanRecords.record(PacketTypes.INFORMATION);
+        payload.get(record, PacketView.PAYLOAD_OFFSET, payload.remaining());
+        return record;
+    }
+
+    @Test
+    public void encode_roundTripsThroughPacketView() throws Exception {
+        PacketView view = new PacketView();
+        assertTrue(view.wrap(scanRecord(builder.encode(PacketTypes.COUPON,
+                new Struct(StructTypes.TEXT_UNCOMPRESSED, "zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz"),
+                new Struct(StructTypes.REGULAR_URL, "gshs.kr")))));
+
+        assertEquals(PacketTypes.COUPON, view.getPacketType());
+        assertEquals(StructTypes.TEXT_RLE, view.getStructType(0));
+        assertEquals("zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz", view.getStructData(0));
+        assertEquals(StructTypes.REGULAR_URL, view.getStructType(1));
+        assertEquals("gshs.kr", view.getStructData(1));
+    }
+
+    @Test
+    public void encode_matchesLegacyParseForPlainText() throws Exception {
+        byte[] record = scanRecord(builder.encode(PacketTypes.CAUTION,
+                new Struct(StructTypes.TEXT_UNCOMPRESSED, "ROOM 3F"),
+                new Struct(StructTypes.DEVICE_NAME, "B1")));
+        PacketView view = new PacketView();
+        view.wrap(record);
+
+        // Upper case text doesn't compress, so it stays plain.
+        PacketData packet = ScanRecords.legacyParse(record);
+        assertEquals(packet, view.toPacketData());
+        assertEquals(2, packet.getStructs().size());
+    }
+}
@@ -0,0 +1,44 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+import static org.junit.Assert.*;
+
+public class ManufacturerFiltersTest {
+    @Test
+    public void idsFor_matchOnlyUnblockedTypes() throws Exception {
+        PacketTypeFilter filter = new PacketTypeFilter();
+        filter.block(PacketTypes.COUPON);
+        int[] ids = ManufacturerFilters.idsFor(filter);
+        Arrays.sort(ids);
+
+        // Fills the payload, the first struct is as long as it can be.
+        String longest = "01234567890123456789012";
+        for (PacketTypes type : PacketTypes.getValues()) {
+            byte[][] records = {
+                    ScanRecords.record(type),
+                    ScanRecords.record(type, StructTypes.TEXT_UNCOMPRESSED, "a", StructTypes.REGULAR_URL, "b"),
+                    ScanRecords.record(type, StructTypes.DEVICE_NAME, longest),
+            };
+            for (byte[] record : records) {
+                boolean matched = Arrays.binarySearch(ids, ManufacturerFilters.idOf(record)) >= 0;
+                assertEquals(type != PacketTypes.COUPON, matched);
+            }
+        }
+    }
+
+    @Test
+    public void idsFor_emptyWhenEveryTypeIsBlocked() throws Exception {
+        PacketTypeFilter filter = new PacketTypeFilter();
+        for (PacketTypes type : PacketTypes.getValues()) {
+            filter.block(type);
+        }
+        assertEquals(0, ManufacturerFilters.idsFor(filter).length);
+    }
+}
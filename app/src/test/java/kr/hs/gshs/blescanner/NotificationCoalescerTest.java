@@ -0,0 +1,88 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+import static org.junit.Assert.*;
+
+public class NotificationCoalescerTest {
+
+    private static PacketData packet(PacketTypes type, String text) {
+        return ScanRecords.legacyParse(ScanRecords.record(type, StructTypes.TEXT_UNCOMPRESSED, text));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void poll_coalescesBurstPerType() throws Exception {
+        NotificationCoalescer coalescer = new NotificationCoalescer(2000, 10000);
+        for (int i = 0; i < 50; i++) {
+            coalescer.add(packet(i % 2 == 0 ? PacketTypes.COUPON : PacketTypes.CAUTION, "#" + i), millis(i));
+        }
+
+        assertEquals(millis(2000), coalescer.nextDeadline());
+        assertTrue(coalescer.poll(millis(1999)).isEmpty());
+
+        List<NotificationCoalescer.Summary> summaries = coalescer.poll(millis(2001));
+        assertEquals(2, summaries.size());
+
+        NotificationCoalescer.Summary coupons = summaries.get(0);
+        assertEquals(PacketTypes.COUPON, coupons.getPacketType());
+        assertEquals(25, coupons.getCount());
+        assertEquals(NotificationCoalescer.MAX_LINES, coupons.getPackets().size());
+        assertEquals("#48", coupons.getPackets().get(NotificationCoalescer.MAX_LINES - 1).getStructs().get(0).getData());
+        assertEquals(PacketTypes.CAUTION, summaries.get(1).getPacketType());
+
+        assertEquals(Long.MAX_VALUE, coalescer.nextDeadline());
+    }
+
+    @Test
+    public void poll_spacesSummariesOfATypeByMinInterval() throws Exception {
+        NotificationCoalescer coalescer = new NotificationCoalescer(2000, 10000);
+        coalescer.add(packet(PacketTypes.COUPON, "first"), 0);
+        assertEquals(1, coalescer.poll(millis(2000)).size());
+
+        // Within the interval, held back until it's over.
+        coalescer.add(packet(PacketTypes.COUPON, "second"), millis(3000));
+        coalescer.add(packet(PacketTypes.COUPON, "third"), millis(9000));
+        assertEquals(millis(12000), coalescer.nextDeadline());
+        assertTrue(coalescer.poll(millis(11000)).isEmpty());
+        assertEquals(2, coalescer.poll(millis(12000)).get(0).getCount());
+
+        // Other types have their own interval.
+        coalescer.add(packet(PacketTypes.INFORMATION, "info"), millis(13000));
+        assertEquals(millis(15000), coalescer.nextDeadline());
+
+        // Long after the last one, only the window applies.
+        coalescer.add(packet(PacketTypes.COUPON, "fourth"), millis(60000));
+        coalescer.poll(millis(15000));
+        assertEquals(millis(62000), coalescer.nextDeadline());
+    }
+
+    @Test
+    public void clear_dropsPendingPackets() throws Exception {
+        NotificationCoalescer coalescer = new NotificationCoalescer();
+        coalescer.add(packet(PacketTypes.ADVERTISEMENT, "sale"), 0);
+        coalescer.clear();
+
+        assertEquals(Long.MAX_VALUE, coalescer.nextDeadline());
+        assertTrue(coalescer.poll(Long.MAX_VALUE / 2).isEmpty());
+    }
+
+    @Test
+    public void contentText_joinsStructData() throws Exception {
+        PacketData packet = ScanRecords.legacyParse(ScanRecords.record(PacketTypes.INFORMATION,
+                StructTypes.TEXT_UNCOMPRESSED, "a", StructTypes.REGULAR_URL, "b", StructTypes.DEVICE_NAME, "c"));
+
+        assertEquals("a, b, c", NotificationDispatcher.contentText(packet));
+        assertEquals("", NotificationDispatcher.contentText(ScanRecords.legacyParse(ScanRecords.record(PacketTypes.INFORMATION))));
+    }
+}
@@ -0,0 +1,98 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+import static org.junit.Assert.*;
+
+public class PacketInternerTest {
+
+    private static PacketData intern(PacketInterner interner, byte[] record) {
+        PacketView view = new PacketView();
+        view.wrap(record);
+        return interner.intern(view, PacketKeys.of(view));
+    }
+
+    @Test
+    public void intern_returnsOneInstancePerPayload() throws Exception {
+        PacketInterner interner = new PacketInterner(16);
+        byte[] record = ScanRecords.record(PacketTypes.COUPON,
+                StructTypes.TEXT_UNCOMPRESSED, "50% off",
+                StructTypes.REGULAR_URL, "gshs.hs.kr");
+
+        PacketData first = intern(interner, record);
+        PacketData second = intern(interner, record.clone());
+
+        assertSame(first, second);
+        PacketData parsed = ScanRecords.legacyParse(record);
+        assertEquals(parsed.getPacketType(), first.getPacketType());
+        assertEquals(parsed.getStructs(), first.getStructs());
+        // Compared by key, so never equal to a plain packet, which hashes by identity.
+        assertNotEquals(first, parsed);
+        assertEquals(1, interner.getHitCount());
+        assertEquals(1, interner.getMissCount());
+    }
+
+    @Test
+    public void intern_sharesStructsBetweenPackets() throws Exception {
+        PacketInterner interner = new PacketInterner(16);
+        PacketData coupon = intern(interner, ScanRecords.record(PacketTypes.COUPON,
+                StructTypes.TEXT_UNCOMPRESSED, "50% off",
+                StructTypes.DEVICE_NAME, "cafeteria"));
+        PacketData caution = intern(interner, ScanRecords.record(PacketTypes.CAUTION,
+                StructTypes.TEXT_UNCOMPRESSED, "wet floor",
+                StructTypes.DEVICE_NAME, "cafeteria"));
+
+        assertNotEquals(coupon, caution);
+        assertSame(coupon.getStructs().get(1), caution.getStructs().get(1));
+    }
+
+    @Test
+    public void equals_isConsistentWithHashCode() throws Exception {
+        byte[] record = ScanRecords.record(PacketTypes.ADVERTISEMENT, StructTypes.TEXT_UNCOMPRESSED, "hello");
+        PacketData a = intern(new PacketInterner(16), record);
+        PacketData b = intern(new PacketInterner(16), record);
+
+        assertNotSame(a, b);
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.getStructs().get(0).hashCode(), b.getStructs().get(0).hashCode());
+
+        Set<PacketData> set = new HashSet<>();
+        set.add(a);
+        assertTrue(set.contains(b));
+        assertFalse(set.contains(intern(new PacketInterner(16),
+                ScanRecords.record(PacketTypes.ADVERTISEMENT, StructTypes.TEXT_UNCOMPRESSED, "hellp"))));
+    }
+
+    @Test
+    public void intern_replacesPacketsSharingASlot() throws Exception {
+        PacketInterner interner = new PacketInterner(1);
+        byte[] one = ScanRecords.record(PacketTypes.ADVERTISEMENT, StructTypes.TEXT_UNCOMPRESSED, "one");
+        byte[] two = ScanRecords.record(PacketTypes.ADVERTISEMENT, StructTypes.TEXT_UNCOMPRESSED, "two");
+
+        PacketData first = intern(interner, one);
+        assertEquals("two", intern(interner, two).getStructs().get(0).getData());
+        PacketData again = intern(interner, one);
+
+        assertNotSame(first, again);
+        assertEquals(first, again);
+    }
+
+    @Test
+    public void intern_sharesUnsupportedPackets() throws Exception {
+        PacketInterner interner = new PacketInterner(16);
+        byte[] record = ScanRecords.record(PacketTypes.INFORMATION);
+        record[PacketView.PAYLOAD_OFFSET] = 100;
+
+        PacketData packet = intern(interner, record);
+        assertFalse(packet.isSupportedPacket());
+        assertSame(packet, intern(interner, new byte[10]));
+    }
+}
@@ -0,0 +1,201 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+import static org.junit.Assert.*;
+
+public class PacketStoreFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long BOOT_TIME = 1000000L;
+
+    private final PacketData coupon = packet(ScanRecords.record(PacketTypes.COUPON, StructTypes.TEXT_UNCOMPRESSED, "half price"));
+    private final PacketData caution = packet(ScanRecords.record(PacketTypes.CAUTION, StructTypes.REGULAR_URL, "wet floor"));
+    private final PacketData unsupported = new PacketData(false, null, null);
+
+    private static PacketData packet(byte[] scanRecord) {
+        PacketView view = new PacketView();
+        view.wrap(scanRecord);
+        return view.toPacketData();
+    }
+
+    private static void add(PacketStore<PacketData> store, PacketData packet, long timestamp) {
+        store.add(PacketKeys.of(packet), packet, timestamp);
+    }
+
+    // Restored packets equal the interned packet of their payload, either way round, but no plain one.
+    private static void assertRestored(PacketData expected, PacketData actual) {
+        assertTrue(actual instanceof RestoredPacketData);
+        assertFalse(actual.equals(expected));
+        PacketView view = new PacketView();
+        view.wrap(((RestoredPacketData) actual).getScanRecord());
+        PacketData interned = new PacketInterner(16).intern(view, PacketKeys.of(view));
+        assertEquals(interned, actual);
+        assertEquals(actual, interned);
+        assertEquals(interned.hashCode(), actual.hashCode());
+        assertEquals(expected.getPacketType(), actual.getPacketType());
+        assertEquals(expected.getStructs(), actual.getStructs());
+        assertEquals(PacketKeys.of(expected), PacketKeys.of(actual));
+    }
+
+    private PacketStoreFile open() throws Exception {
+        return new PacketStoreFile(new File(folder.getRoot(), "packets"), 4, BOOT_TIME);
+    }
+
+    @Test
+    public void restore_bringsBackPacketsInOrder() throws Exception {
+        PacketStoreFile file = open();
+        PacketStore<PacketData> store = new PacketStore<>();
+        assertEquals(0, file.restore(store));
+        add(store, caution, 3L);
+        add(store, unsupported, 1L);
+        add(store, coupon, 2L);
+        file.write(store);
+        file.close();
+
+        file = open();
+        PacketStore<PacketData> restored = new PacketStore<>();
+        assertEquals(3, file.restore(restored));
+        file.close();
+
+        PacketSnapshot<PacketData> snapshot = restored.snapshot();
+        assertEquals(3, snapshot.size());
+        assertRestored(caution, snapshot.get(0));
+        assertFalse(snapshot.get(1).isSupportedPacket());
+        assertRestored(coupon, snapshot.get(2));
+        assertEquals(3L, snapshot.getTimestamp(0));
+        assertEquals(PacketKeys.of(coupon), restored.getKey(restored.indexOf(PacketKeys.of(coupon))));
+    }
+
+    @Test
+    public void restore_decodesStructsOnFirstAccess() throws Exception {
+        PacketStoreFile file = open();
+        PacketStore<PacketData> store = new PacketStore<>();
+        file.restore(store);
+        add(store, coupon, 1L);
+        file.write(store);
+        file.close();
+
+        file = open();
+        PacketStore<PacketData> restored = new PacketStore<>();
+        file.restore(restored);
+        file.close();
+
+        PacketData packet = restored.get(0);
+        assertTrue(packet instanceof RestoredPacketData);
+        assertEquals(PacketTypes.COUPON, packet.getPacketType());
+        assertEquals("half price", packet.getStructs().get(0).getData());
+        assertSame(packet.getStructs(), packet.getStructs());
+    }
+
+    @Test
+    public void restore_keepsPayloadThatIsNotValidText() throws Exception {
+        byte[] scanRecord = ScanRecords.record(PacketTypes.CAUTION, StructTypes.REGULAR_URL, "wet floor");
+        scanRecord[PacketView.PAYLOAD_OFFSET + 3] = (byte) 0xff;
+        PacketView view = new PacketView();
+        view.wrap(scanRecord);
+        long key = PacketKeys.of(view);
+
+        PacketStoreFile file = open();
+        PacketStore<PacketData> store = new PacketStore<>();
+        file.restore(store);
+        store.add(key, new PacketInterner(16).intern(view, key), 1L);
+        file.write(store);
+        file.close();
+
+        // Written as received rather than from the String the 0xff byte turned into.
+        file = open();
+        PacketStore<PacketData> restored = new PacketStore<>();
+        assertEquals(1, file.restore(restored));
+        file.close();
+        assertEquals(0, restored.indexOf(key));
+    }
+
+    @Test
+    public void write_followsUpdatesAndRemovals() throws Exception {
+        PacketStoreFile file = open();
+        PacketStore<PacketData> store = new PacketStore<>(2, PacketStore.NO_TTL);
+        file.restore(store);
+        add(store, coupon, 1L);
+        add(store, caution, 2L);
+        file.write(store);
+
+        store.setTimestamp(store.indexOf(PacketKeys.of(coupon)), 3L);
+        add(store, unsupported, 4L);
+        file.write(store);
+        file.close();
+
+        file = open();
+        PacketStore<PacketData> restored = new PacketStore<>();
+        assertEquals(2, file.restore(restored));
+
+        // Restoring again gives the same store, the file was rewritten to match.
+        PacketStore<PacketData> again = new PacketStore<>();
+        file.close();
+        file = open();
+        assertEquals(2, file.restore(again));
+        file.close();
+
+        for (PacketStore<PacketData> s : new PacketStore[]{restored, again}) {
+            PacketSnapshot<PacketData> snapshot = s.snapshot();
+            assertRestored(coupon, snapshot.get(0));
+            assertEquals(3L, snapshot.getTimestamp(0));
+            assertFalse(snapshot.get(1).isSupportedPacket());
+            assertEquals(4L, snapshot.getTimestamp(1));
+        }
+    }
+
+    @Test
+    public void restore_skipsTornSlot() throws Exception {
+        File path = new File(folder.getRoot(), "packets");
+        PacketStoreFile file = open();
+        PacketStore<PacketData> store = new PacketStore<>();
+        file.restore(store);
+        add(store, coupon, 1L);
+        add(store, caution, 2L);
+        file.write(store);
+        file.close();
+
+        // The process died halfway through rewriting the second packet.
+        RandomAccessFile raf = new RandomAccessFile(path, "rw");
+        raf.seek(16 + PacketStoreFile.SLOT_SIZE + 30);
+        raf.write(new byte[]{'x', 'x'});
+        raf.close();
+
+        file = open();
+        PacketStore<PacketData> restored = new PacketStore<>();
+        assertEquals(1, file.restore(restored));
+        file.close();
+        assertRestored(coupon, restored.get(0));
+    }
+
+    @Test
+    public void readFilter_restoresBlockedTypes() throws Exception {
+        PacketStoreFile file = open();
+        PacketTypeFilter filter = new PacketTypeFilter();
+        filter.block(PacketTypes.CAUTION);
+        file.writeFilter(filter);
+        file.close();
+
+        file = open();
+        PacketTypeFilter restored = new PacketTypeFilter();
+        restored.block(PacketTypes.COUPON);
+        file.readFilter(restored);
+        file.close();
+
+        assertTrue(restored.isBlocked(PacketTypes.CAUTION));
+        assertFalse(restored.isBlocked(PacketTypes.COUPON));
+    }
+}
@@ -0,0 +1,86 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+import static org.junit.Assert.*;
+
+public class PacketViewTest {
+    @Test
+    public void wrap_matchesLegacyParse() throws Exception {
+        byte[] record = ScanRecords.record(PacketTypes.COUPON,
+                StructTypes.TEXT_UNCOMPRESSED, "50% off",
+                StructTypes.REGULAR_URL, "gshs.hs.kr");
+        PacketView view = new PacketView();
+
+        assertTrue(view.wrap(record));
+        assertEquals(PacketTypes.COUPON, view.getPacketType());
+        assertEquals(2, view.getStructCount());
+        assertEquals(StructTypes.REGULAR_URL, view.getStructType(1));
+        assertEquals("gshs.hs.kr", view.getStructData(1));
+
+        PacketData packet = view.toPacketData();
+        assertEquals(ScanRecords.legacyParse(record), packet);
+        assertEquals(PacketKeys.of(packet), PacketKeys.of(view));
+    }
+
+    @Test
+    public void wrap_rejectsMalformedRecords() throws Exception {
+        PacketView view = new PacketView();
+
+        assertFalse(view.wrap(null));
+        assertFalse(view.wrap(new byte[10]));
+
+        byte[] record = ScanRecords.record(PacketTypes.INFORMATION);
+        record[PacketView.PAYLOAD_OFFSET] = 100;
+        assertFalse(view.wrap(record));
+        assertFalse(ScanRecords.legacyParse(record).isSupportedPacket());
+
+        // Struct running past the end of the payload.
+        record = ScanRecords.record(PacketTypes.INFORMATION);
+        record[PacketView.PAYLOAD_OFFSET + 1] = 30;
+        assertFalse(view.wrap(record));
+        assertFalse(ScanRecords.legacyParse(record).isSupportedPacket());
+        assertEquals(PacketKeys.UNSUPPORTED, PacketKeys.of(view));
+    }
+
+    @Test
+    public void wrap_resetsLazyData() throws Exception {
+        PacketView view = new PacketView();
+        view.wrap(ScanRecords.record(PacketTypes.CAUTION, StructTypes.DEVICE_NAME, "first"));
+        assertEquals("first", view.getStructData(0));
+
+        view.wrap(ScanRecords.record(PacketTypes.CAUTION, StructTypes.DEVICE_NAME, "second"));
+        assertEquals("second", view.getStructData(0));
+    }
+
+    @Test
+    public void getStructData_decodesCompressedStructs() throws Exception {
+        byte[] record = ScanRecords.record(PacketTypes.ADVERTISEMENT,
+                StructTypes.TEXT_RLE, "!!!!!!!!",
+                StructTypes.TEXT_HUFFMAN_CODING, "free snacks",
+                StructTypes.TEXT_UNCOMPRESSED, "ok");
+        PacketView view = new PacketView();
+
+        assertTrue(view.wrap(record));
+        assertEquals(3, view.getStructCount());
+        assertEquals("!!!!!!!!", view.getStructData(0));
+        assertEquals("free snacks", view.getStructData(1));
+
+        PacketData packet = view.toPacketData();
+        assertEquals("ok", packet.getStructs().get(2).getData());
+        assertEquals(PacketKeys.of(packet), PacketKeys.of(view));
+    }
+
+    @Test
+    public void coreTypeValues_matchLibraryEnums() throws Exception {
+        assertEquals(PacketTypes.getValues().length, PayloadView.PACKET_TYPE_COUNT);
+        assertEquals(StructTypes.getValues().length, PayloadView.STRUCT_TYPE_COUNT);
+        assertEquals(StructTypes.TEXT_UNCOMPRESSED.ordinal(), StructCodecs.TEXT_UNCOMPRESSED);
+        assertEquals(StructTypes.TEXT_RLE.ordinal(), StructCodecs.TEXT_RLE);
+        assertEquals(StructTypes.TEXT_HUFFMAN_CODING.ordinal(), StructCodecs.TEXT_HUFFMAN_CODING);
+    }
+}
@@ -0,0 +1,237 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypeFilter;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+import static org.junit.Assert.*;
+
+public class ScanIngestorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long elapsedRealtimeNanos() {
+            return now;
+        }
+    };
+    private volatile long now;
+
+    private final LinkedBlockingQueue<PacketSnapshot<PacketData>> snapshots = new LinkedBlockingQueue<>();
+    private int newPacketCount;
+
+    private final ScanIngestor.Listener listener = new ScanIngestor.Listener() {
+        @Override
+        public void onPacketsChanged(PacketSnapshot<PacketData> snapshot, List<PacketData> newPackets) {
+            synchronized (ScanIngestorTest.this) {
+                newPacketCount += newPackets.size();
+            }
+            snapshots.add(snapshot);
+        }
+    };
+
+    @Test
+    public void offer_mergesDuplicatesAndCoalescesRefreshes() throws Exception {
+        ScanIngestor ingestor = new ScanIngestor(4096, 16, 200, new PacketStore<PacketData>(), clock, listener);
+        byte[] first = ScanRecords.record(PacketTypes.COUPON, StructTypes.TEXT_UNCOMPRESSED, "one");
+        byte[] second = ScanRecords.record(PacketTypes.COUPON, StructTypes.TEXT_UNCOMPRESSED, "two");
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(ingestor.offer(i % 2 == 0 ? first : second.clone(), i));
+        }
+        ingestor.start();
+
+        PacketSnapshot<PacketData> snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+        while (snapshot.size() < 2 || snapshot.getTimestamp(1) != 999) {
+            snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+        }
+        ingestor.stop();
+
+        assertEquals(2, snapshot.size());
+        assertEquals("two", snapshot.get(1).getStructs().get(0).getData());
+        assertEquals(998, snapshot.getTimestamp(0));
+        synchronized (this) {
+            assertEquals(2, newPacketCount);
+        }
+        // 1000 records in batches of 16, but refreshes are capped by the interval.
+        assertTrue(snapshots.size() < 5);
+    }
+
+    @Test
+    public void offer_dropsWhenQueueIsFull() throws Exception {
+        ScanIngestor ingestor = new ScanIngestor(4, 4, 0, new PacketStore<PacketData>(), clock, listener);
+        byte[] record = ScanRecords.record(PacketTypes.CAUTION);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ingestor.offer(record, i));
+        }
+        assertFalse(ingestor.offer(record, 4));
+        assertEquals(1, ingestor.getDroppedCount());
+    }
+
+    @Test
+    public void offerBatch_collapsesDuplicatesAndPublishesOnce() throws Exception {
+        ScanIngestor ingestor = new ScanIngestor(64, 4, 1000, new PacketStore<PacketData>(), clock, listener);
+        byte[][] records = new byte[50][];
+        long[] timestamps = new long[50];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = ScanRecords.record(PacketTypes.INFORMATION, StructTypes.TEXT_UNCOMPRESSED, "#" + i % 10);
+            timestamps[i] = i;
+        }
+
+        assertEquals(10, ingestor.offerBatch(records, timestamps, records.length));
+        ingestor.start();
+        PacketSnapshot<PacketData> snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+        PacketSnapshot<PacketData> extra = snapshots.poll(200, TimeUnit.MILLISECONDS);
+        ingestor.stop();
+
+        // Applied over several passes of 4, still published once with every packet.
+        assertNull(extra);
+        assertEquals(10, snapshot.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("#" + i, snapshot.get(i).getStructs().get(0).getData());
+            assertEquals(40 + i, snapshot.getTimestamp(i));
+        }
+    }
+
+    @Test
+    public void offerBatch_dropsWhatDoesNotFit() throws Exception {
+        ScanIngestor ingestor = new ScanIngestor(4, 4, 0, new PacketStore<PacketData>(), clock, listener);
+        byte[][] records = new byte[6][];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = ScanRecords.record(PacketTypes.CAUTION, StructTypes.TEXT_UNCOMPRESSED, "#" + i);
+        }
+
+        assertEquals(4, ingestor.offerBatch(records, new long[6], 6));
+        assertEquals(2, ingestor.getDroppedCount());
+    }
+
+    @Test
+    public void offerBatch_passesRepeatsToResultListenerOnly() throws Exception {
+        ScanIngestor ingestor = new ScanIngestor(64, 4, 0, new PacketStore<PacketData>(), clock, listener);
+        final LinkedBlockingQueue<String> results = new LinkedBlockingQueue<>();
+        ingestor.setResultListener(new ScanIngestor.ResultListener() {
+            @Override
+            public void onResult(byte[] scanRecord, long timestampNanos, String address, int rssi) {
+                results.add(timestampNanos + " " + address + " " + rssi);
+            }
+        });
+        byte[][] records = new byte[6][];
+        long[] timestamps = new long[6];
+        String[] addresses = new String[6];
+        int[] rssis = new int[6];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = ScanRecords.record(PacketTypes.INFORMATION, StructTypes.TEXT_UNCOMPRESSED, "#" + i % 2);
+            timestamps[i] = i;
+            addresses[i] = "00:00:00:00:00:0" + i;
+            rssis[i] = -60 - i;
+        }
+
+        assertEquals(2, ingestor.offerBatch(records, timestamps, addresses, rssis, records.length));
+        ingestor.start();
+        for (int i = 0; i < records.length; i++) {
+            assertEquals(i + " 00:00:00:00:00:0" + i + " " + (-60 - i), results.poll(5, TimeUnit.SECONDS));
+        }
+        PacketSnapshot<PacketData> snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+        while (snapshot.size() < 2) {
+            snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+        }
+        ingestor.stop();
+
+        // The first of each payload carries the latest sighting, the repeats aren't ingested again.
+        assertEquals(2, snapshot.size());
+        assertEquals(4, snapshot.getTimestamp(0));
+        assertEquals(5, snapshot.getTimestamp(1));
+        assertEquals(0, ingestor.getDroppedCount());
+        synchronized (this) {
+            assertEquals(2, newPacketCount);
+        }
+    }
+
+    @Test
+    public void clear_publishesEmptyStore() throws Exception {
+        ScanIngestor ingestor = new ScanIngestor(16, 16, 0, new PacketStore<PacketData>(), clock, listener);
+        ingestor.start();
+        ingestor.offer(ScanRecords.record(PacketTypes.INFORMATION), 1);
+        assertEquals(1, snapshots.poll(5, TimeUnit.SECONDS).size());
+
+        ingestor.clear();
+        assertEquals(0, snapshots.poll(5, TimeUnit.SECONDS).size());
+        ingestor.stop();
+    }
+
+    @Test
+    public void setPacketTypeFilter_dropsBlockedTypes() throws Exception {
+        ScanIngestor ingestor = new ScanIngestor(16, 16, 0, new PacketStore<PacketData>(), clock, listener);
+        PacketTypeFilter filter = new PacketTypeFilter();
+        filter.block(PacketTypes.COUPON);
+        ingestor.setPacketTypeFilter(filter);
+
+        // Later changes to the filter need another call.
+        filter.block(PacketTypes.CAUTION);
+
+        ingestor.offer(ScanRecords.record(PacketTypes.COUPON, StructTypes.TEXT_UNCOMPRESSED, "blocked"), 1);
+        ingestor.offer(ScanRecords.record(PacketTypes.CAUTION, StructTypes.TEXT_UNCOMPRESSED, "kept"), 2);
+        ingestor.start();
+        PacketSnapshot<PacketData> snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+        ingestor.stop();
+
+        assertEquals(1, snapshot.size());
+        assertEquals(PacketTypes.CAUTION, snapshot.get(0).getPacketType());
+    }
+
+    @Test
+    public void start_expiresIdlePackets() throws Exception {
+        long ttl = TimeUnit.MILLISECONDS.toNanos(50);
+        ScanIngestor ingestor = new ScanIngestor(16, 16, 0, new PacketStore<PacketData>(100, ttl), clock, listener);
+        ingestor.start();
+        ingestor.offer(ScanRecords.record(PacketTypes.INFORMATION), 0);
+        assertEquals(1, snapshots.poll(5, TimeUnit.SECONDS).size());
+
+        // Nothing new comes in, the worker still wakes up at the deadline to drop the stale packet.
+        now = 2 * ttl;
+        PacketSnapshot<PacketData> snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+        ingestor.stop();
+
+        assertNotNull(snapshot);
+        assertEquals(0, snapshot.size());
+        assertEquals(1, ingestor.getExpiredCount());
+    }
+
+    @Test
+    public void start_restoresStoreFileAndWritesOnStop() throws Exception {
+        File path = new File(folder.getRoot(), "packets");
+        ScanIngestor ingestor = new ScanIngestor(16, 16, 0, new PacketStore<PacketData>(), clock, listener);
+        ingestor.setStoreFile(new PacketStoreFile(path, 16, 0));
+        ingestor.start();
+        ingestor.offer(ScanRecords.record(PacketTypes.COUPON, StructTypes.TEXT_UNCOMPRESSED, "half price"), 7);
+        assertEquals(1, snapshots.poll(5, TimeUnit.SECONDS).size());
+        assertTrue(ingestor.stop());
+
+        // Published before any record comes in.
+        ingestor = new ScanIngestor(16, 16, 0, new PacketStore<PacketData>(), clock, listener);
+        ingestor.setStoreFile(new PacketStoreFile(path, 16, 0));
+        ingestor.start();
+        PacketSnapshot<PacketData> snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+        ingestor.stop();
+
+        // Indexed from the raw payload, the structs are only decoded when asked for.
+        assertEquals(1, snapshot.size());
+        assertFalse(((RestoredPacketData) snapshot.get(0)).isDecoded());
+        assertEquals(1, ingestor.getTextIndex().search("price", TextIndex.ALL_STRUCT_TYPES).length);
+        assertEquals("half price", snapshot.get(0).getStructs().get(0).getData());
+        assertEquals(7, snapshot.getTimestamp(0));
+    }
+}
@@ -0,0 +1,67 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+import kr.hs.gshs.blebeaconprotocollibrary.PacketTypes;
+import kr.hs.gshs.blebeaconprotocollibrary.Struct;
+import kr.hs.gshs.blebeaconprotocollibrary.StructTypes;
+
+/**
+ * Builds raw scan records for tests, and mirrors ScanResultParser.parse for comparison.
+ */
+class ScanRecords {
+
+    private ScanRecords() {
+    }
+
+    /**
+     * Return a scan record holding a packet of the given type with (type, data) struct pairs,
+     * the data encoded with the codec of its struct type.
+     */
+    static byte[] record(PacketTypes packetType, Object... structs) {
+        Object[] values = structs.clone();
+        for (int i = 0; i < values.length; i += 2) {
+            values[i] = ((StructTypes) values[i]).ordinal();
+        }
+        return Payloads.record(packetType.ordinal(), values);
+    }
+
+    /**
+     * Same algorithm as ScanResultParser.parse, which only accepts a ScanResult, on a raw record.
+     */
+    static PacketData legacyParse(byte[] scanRecord) {
+        PacketData packet;
+        byte[] rawBytes = new byte[26];
+        System.arraycopy(scanRecord, 5, rawBytes, 0, 26);
+
+        try {
+            ArrayList<Struct> structs = new ArrayList<>();
+            PacketTypes packetType = PacketTypes.fromOrdinal(rawBytes[0]);
+
+            for (int i = 1; i < rawBytes.length; i++) {
+                int structLength = rawBytes[i];
+                if (structLength <= 0)
+                    break;
+                // Log.d is a no-op here, but its message is still built.
+                String message = "Parsing...: Current pos in rawBytes: " + i + ", Current structLength: " + structLength;
+                if (message.isEmpty())
+                    throw new AssertionError();
+
+                i++;
+                StructTypes structType = StructTypes.fromOrdinal(rawBytes[i]);
+                i++;
+                byte[] data = new byte[structLength - 1];
+                int j;
+                for (j = 0; j < structLength - 1; j++)
+                    data[j] = rawBytes[i + j];
+                i += j - 1;
+                structs.add(new Struct(structType, new String(data)));
+            }
+            packet = new PacketData(true, packetType, structs);
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            packet = new PacketData(false, null, null);
+        }
+        return packet;
+    }
+}
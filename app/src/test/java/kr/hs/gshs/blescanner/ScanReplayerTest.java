@@ -0,0 +1,116 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import kr.hs.gshs.blebeaconprotocollibrary.PacketData;
+
+import static org.junit.Assert.*;
+
+public class ScanReplayerTest {
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long elapsedRealtimeNanos() {
+            return System.nanoTime();
+        }
+    };
+
+    private volatile PacketSnapshot<PacketData> latest;
+
+    private final ScanIngestor.Listener listener = new ScanIngestor.Listener() {
+        @Override
+        public void onPacketsChanged(PacketSnapshot<PacketData> snapshot, List<PacketData> newPackets) {
+            latest = snapshot;
+        }
+    };
+
+    private static ScanTraceReader trace(int beacons, int resultsPerSecond, long durationMillis) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ScanTraceWriter writer = new ScanTraceWriter(bytes);
+        new ScanTraceGenerator(beacons, 1, 618).generate(writer, resultsPerSecond, durationMillis, 0);
+        writer.close();
+        return new ScanTraceReader(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void replay_publishesEveryQueuedResult() throws Exception {
+        ScanReplayer replayer = new ScanReplayer(clock, listener, 1000);
+        ScanIngestor ingestor = new ScanIngestor(4096, 64, 10, new PacketStore<PacketData>(), clock, replayer);
+        ingestor.start();
+
+        ReplayReport report = replayer.replay(ingestor, trace(50, 1000, 2000), ScanReplayer.UNPACED);
+        ingestor.stop();
+
+        assertEquals(2000, report.getOfferedCount());
+        assertEquals(report.getOfferedCount(), report.getPublishedCount() + report.getDroppedCount());
+        assertEquals(0, report.getUnpublishedCount());
+        assertEquals(50, latest.size());
+        assertTrue(report.getLatencyNanos(50) <= report.getLatencyNanos(100));
+    }
+
+    @Test
+    public void replay_keepsRecordedPaceScaledBySpeed() throws Exception {
+        ScanReplayer replayer = new ScanReplayer(clock, null, 1000);
+        ScanIngestor ingestor = new ScanIngestor(4096, 64, 10, new PacketStore<PacketData>(), clock, replayer);
+        ingestor.start();
+
+        // A second of results replayed at four times the speed.
+        ReplayReport report = replayer.replay(ingestor, trace(10, 200, 1000), 4);
+        ingestor.stop();
+
+        assertEquals(200, report.getPublishedCount());
+        assertTrue(report.getReplayNanos() >= TimeUnit.MILLISECONDS.toNanos(240));
+        assertTrue(report.getReplayNanos() < TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    public void replay_passesAddressAndRssiThroughFilter() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ScanTraceWriter writer = new ScanTraceWriter(bytes);
+        for (int i = 0; i < 4; i++) {
+            writer.write(i, -50 - 10 * i, 0xa0L + i,
+                    Payloads.record(Payloads.COUPON, Payloads.DEVICE_NAME, "#" + i));
+        }
+        writer.close();
+
+        ScanReplayer replayer = new ScanReplayer(clock, null, 1000);
+        ScanIngestor ingestor = new ScanIngestor(16, 16, 10, new PacketStore<PacketData>(), clock, replayer);
+        final LinkedBlockingQueue<String> results = new LinkedBlockingQueue<>();
+        ingestor.setResultListener(new ScanIngestor.ResultListener() {
+            @Override
+            public void onResult(byte[] scanRecord, long timestampNanos, String address, int rssi) {
+                results.add(address + " " + rssi);
+            }
+        });
+        replayer.setPayloadFilter(PayloadFilter.compile(new PayloadFilter.Rule().minRssi(-65)));
+        ingestor.start();
+
+        ReplayReport report = replayer.replay(ingestor,
+                new ScanTraceReader(new ByteArrayInputStream(bytes.toByteArray())), ScanReplayer.UNPACED);
+        ingestor.stop();
+
+        assertEquals(2, report.getOfferedCount());
+        assertEquals(2, report.getFilteredCount());
+        assertEquals("00:00:00:00:00:A0 -50", results.poll(5, TimeUnit.SECONDS));
+        assertEquals("00:00:00:00:00:A1 -60", results.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void replay_countsDroppedResults() throws Exception {
+        ScanReplayer replayer = new ScanReplayer(clock, null, 1000);
+        ScanIngestor ingestor = new ScanIngestor(16, 16, 10, new PacketStore<PacketData>(), clock, replayer);
+
+        // Not started, so the queue fills up.
+        ReplayReport report = replayer.replay(ingestor, trace(10, 1000, 100), ScanReplayer.UNPACED);
+
+        assertEquals(100, report.getOfferedCount());
+        assertEquals(84, report.getDroppedCount());
+        assertEquals(16, report.getUnpublishedCount());
+    }
+}
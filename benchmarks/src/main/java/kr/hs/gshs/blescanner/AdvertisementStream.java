@@ -0,0 +1,88 @@
+package kr.hs.gshs.blescanner;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic scan records as a scan of a number of beacons delivers them. Each record comes from
+ * a random beacon, repeating the packet it last advertised with the duplicate ratio as probability,
+ * otherwise advertising a changed one. The packets every beacon starts with are the initial records,
+ * which stateful benchmarks see first, so the ratio holds from the first record of the stream.
+ */
+@State(Scope.Thread)
+public abstract class AdvertisementStream {
+
+    static final int STREAM_LENGTH = 1 << 14;
+
+    // StructTypes.DEVICE_NAME, not a text type so it is never compressed.
+    static final int DEVICE_NAME = 5;
+
+    // Bluetooth scans deliver a few hundred results a second.
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(3);
+
+    @Param({"10", "500", "5000"})
+    public int beacons;
+
+    @Param({"0.5", "0.9", "0.99"})
+    public double duplicateRatio;
+
+    byte[][] initialRecords;
+    byte[][] records;
+
+    private int next;
+    private long now;
+
+    void generate() {
+        Random random = new Random(618);
+        PayloadEncoder encoder = new PayloadEncoder();
+        int[] revisions = new int[beacons];
+
+        initialRecords = new byte[beacons][];
+        for (int beacon = 0; beacon < beacons; beacon++) {
+            initialRecords[beacon] = record(encoder, beacon, 0);
+        }
+
+        records = new byte[STREAM_LENGTH][];
+        for (int i = 0; i < STREAM_LENGTH; i++) {
+            int beacon = random.nextInt(beacons);
+            if (random.nextDouble() >= duplicateRatio) {
+                revisions[beacon]++;
+            }
+            records[i] = record(encoder, beacon, revisions[beacon]);
+        }
+        next = 0;
+        now = 0;
+    }
+
+    /**
+     * Return the index of the next record, cycling through the stream.
+     */
+    int nextIndex() {
+        int index = next;
+        next = (next + 1) & (STREAM_LENGTH - 1);
+        return index;
+    }
+
+    byte[] next() {
+        return records[nextIndex()];
+    }
+
+    /**
+     * Return the time the next record is received at.
+     */
+    long now() {
+        now += INTERVAL_NANOS;
+        return now;
+    }
+
+    private static byte[] record(PayloadEncoder encoder, int beacon, int revision) {
+        encoder.begin(beacon % PayloadView.PACKET_TYPE_COUNT);
+        encoder.addStruct(StructCodecs.TEXT_UNCOMPRESSED, "sale " + revision);
+        encoder.addStruct(DEVICE_NAME, "B" + beacon);
+        return encoder.finishScanRecord();
+    }
+}
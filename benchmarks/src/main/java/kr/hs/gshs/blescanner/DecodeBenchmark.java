@@ -0,0 +1,57 @@
+package kr.hs.gshs.blescanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a scan record into its packet: ScanResultParser.parse against {@link PayloadView}.
+ * The bytes allocated per packet are the gc.alloc.rate.norm figures of the GC profiler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark extends AdvertisementStream {
+
+    private final PayloadView view = new PayloadView();
+
+    @Setup
+    public void setUp() {
+        generate();
+    }
+
+    @Benchmark
+    public LegacyPacket legacyParse() {
+        return LegacyPacket.parse(next());
+    }
+
+    @Benchmark
+    public void payloadView(Blackhole blackhole) {
+        view.wrap(next());
+        for (int i = 0; i < view.getStructCount(); i++) {
+            blackhole.consume(view.getStructData(i));
+        }
+    }
+
+    /**
+     * What the ingestion thread does for a packet it hasn't fingerprinted, the structs aren't turned into Strings.
+     */
+    @Benchmark
+    public long payloadKey() {
+        view.wrap(next());
+        return PayloadKeys.of(view);
+    }
+}
@@ -0,0 +1,71 @@
+package kr.hs.gshs.blescanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding a received packet among the known ones: the old adapter's PacketData.equals scan of its list,
+ * against a {@link PacketStore} lookup by {@link PayloadKeys} key or by {@link PayloadFingerprints}.
+ * The known packets are the initial ones, lookups don't change them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DedupBenchmark extends AdvertisementStream {
+
+    private final List<LegacyPacket> legacyPackets = new ArrayList<>();
+    private LegacyPacket[] parsed;
+
+    private final PacketStore<byte[]> store = new PacketStore<>();
+    private final PayloadFingerprints fingerprints = new PayloadFingerprints(PayloadFingerprints.UNBOUNDED);
+    private final PayloadView view = new PayloadView();
+
+    @Setup
+    public void setUp() {
+        generate();
+        for (byte[] record : initialRecords) {
+            legacyPackets.add(LegacyPacket.parse(record));
+            view.wrap(record);
+            long key = PayloadKeys.of(view);
+            store.add(key, record, 0);
+            fingerprints.put(PayloadFingerprints.of(record), key);
+        }
+
+        // Parsed up front, so only the comparisons are measured.
+        parsed = new LegacyPacket[records.length];
+        for (int i = 0; i < records.length; i++) {
+            parsed[i] = LegacyPacket.parse(records[i]);
+        }
+    }
+
+    @Benchmark
+    public int legacyEquals() {
+        return legacyPackets.indexOf(parsed[nextIndex()]);
+    }
+
+    @Benchmark
+    public int payloadKey() {
+        view.wrap(next());
+        return store.indexOf(PayloadKeys.of(view));
+    }
+
+    @Benchmark
+    public int fingerprint() {
+        return fingerprints.indexOf(PayloadFingerprints.of(next()));
+    }
+}
@@ -0,0 +1,72 @@
+package kr.hs.gshs.blescanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a packet for advertising: AdvertiseDataBuilder.build against {@link PayloadEncoder},
+ * which also tries compressing the text. Neither builds the AdvertiseData itself.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodeBenchmark {
+
+    private static final int PACKETS = 256;
+
+    private static final String[] TEXTS = {
+            "library opens at 8", "free snacks in the hall", "ROOM 3F", "wet floor", "sale until noon"};
+
+    private final int[] packetTypes = new int[PACKETS];
+    private final LegacyPacket.Struct[][] structs = new LegacyPacket.Struct[PACKETS][];
+    private final PayloadEncoder encoder = new PayloadEncoder();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(618);
+        for (int i = 0; i < PACKETS; i++) {
+            packetTypes[i] = random.nextInt(PayloadView.PACKET_TYPE_COUNT);
+            structs[i] = new LegacyPacket.Struct[]{
+                    new LegacyPacket.Struct(StructCodecs.TEXT_UNCOMPRESSED, TEXTS[random.nextInt(TEXTS.length)]),
+                    new LegacyPacket.Struct(AdvertisementStream.DEVICE_NAME, "B" + random.nextInt(100))};
+        }
+    }
+
+    @Benchmark
+    public LegacyPacket.Advertisement legacyBuild() {
+        int i = nextIndex();
+        return LegacyPacket.build(packetTypes[i], structs[i]);
+    }
+
+    @Benchmark
+    public ByteBuffer payloadEncoder() {
+        int i = nextIndex();
+        encoder.begin(packetTypes[i]);
+        for (LegacyPacket.Struct struct : structs[i]) {
+            encoder.addStruct(struct.type, struct.data);
+        }
+        return encoder.finish();
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) % PACKETS;
+        return index;
+    }
+}
@@ -0,0 +1,60 @@
+package kr.hs.gshs.blescanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking scan records against a {@link PayloadFilter} before they are queued. A packet type rule for
+ * coupons rejects the three quarters of the stream that aren't on the first payload byte, a text rule
+ * that never matches has to search every struct. Parsing is there for comparison, it is what filtering saves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterBenchmark extends AdvertisementStream {
+
+    private static final int COUPON = 2;
+
+    private final PayloadFilter packetType = PayloadFilter.compile(new PayloadFilter.Rule().packetTypes(COUPON));
+    private final PayloadFilter rssiAndPacketType = PayloadFilter.compile(
+            new PayloadFilter.Rule().minRssi(-90).packetTypes(COUPON));
+    private final PayloadFilter text = PayloadFilter.compile(new PayloadFilter.Rule().contains("pizza"));
+
+    @Setup
+    public void setUp() {
+        generate();
+    }
+
+    @Benchmark
+    public boolean rejectByPacketType() {
+        return packetType.matches(next(), 0, -60);
+    }
+
+    @Benchmark
+    public boolean rejectByRssiAndPacketType() {
+        return rssiAndPacketType.matches(next(), 0, -60);
+    }
+
+    @Benchmark
+    public boolean rejectByText() {
+        return text.matches(next(), 0, -60);
+    }
+
+    @Benchmark
+    public LegacyPacket legacyParse() {
+        return LegacyPacket.parse(next());
+    }
+}
@@ -0,0 +1,150 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+
+/**
+ * Plain Java copy of the protocol library's PacketData and Struct, with the same equals, and of
+ * ScanResultParser.parse and AdvertiseDataBuilder.build on top of it. The library's model is a
+ * Parcelable that only loads on Android, this is the baseline the benchmarks measure against.
+ */
+final class LegacyPacket {
+
+    static final class Struct {
+
+        final int type;
+        final String data;
+
+        Struct(int type, String data) {
+            this.type = type;
+            this.data = data;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Struct)) {
+                return false;
+            }
+            Struct other = (Struct) o;
+            return type == other.type && data.equals(other.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type + data.hashCode();
+        }
+    }
+
+    /**
+     * Stands in for AdvertiseData, which can't be built outside Android.
+     */
+    static final class Advertisement {
+
+        final int manufacturerId;
+        final byte[] manufacturerData;
+
+        Advertisement(int manufacturerId, byte[] manufacturerData) {
+            this.manufacturerId = manufacturerId;
+            this.manufacturerData = manufacturerData;
+        }
+    }
+
+    final boolean isSupportedPacket;
+    final int packetType;
+    final ArrayList<Struct> structs;
+
+    LegacyPacket(boolean isSupportedPacket, int packetType, ArrayList<Struct> structs) {
+        this.isSupportedPacket = isSupportedPacket;
+        this.packetType = packetType;
+        this.structs = structs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LegacyPacket)) {
+            return false;
+        }
+        LegacyPacket other = (LegacyPacket) o;
+        return isSupportedPacket == other.isSupportedPacket && packetType == other.packetType
+                && (structs == null ? other.structs == null : structs.equals(other.structs));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * packetType + (structs == null ? 0 : structs.hashCode());
+    }
+
+    /**
+     * Same algorithm as ScanResultParser.parse, on a raw scan record.
+     */
+    static LegacyPacket parse(byte[] scanRecord) {
+        LegacyPacket packet;
+        byte[] rawBytes = new byte[26];
+        System.arraycopy(scanRecord, 5, rawBytes, 0, 26);
+
+        try {
+            ArrayList<Struct> structs = new ArrayList<>();
+            int packetType = fromOrdinal(rawBytes[0], PayloadView.PACKET_TYPE_COUNT);
+
+            for (int i = 1; i < rawBytes.length; i++) {
+                int structLength = rawBytes[i];
+                if (structLength <= 0)
+                    break;
+                // Log.d is a no-op off device, but its message is still built.
+                String message = "Parsing...: Current pos in rawBytes: " + i + ", Current structLength: " + structLength;
+                if (message.isEmpty())
+                    throw new AssertionError();
+
+                i++;
+                int structType = fromOrdinal(rawBytes[i], PayloadView.STRUCT_TYPE_COUNT);
+                i++;
+                byte[] data = new byte[structLength - 1];
+                int j;
+                for (j = 0; j < structLength - 1; j++)
+                    data[j] = rawBytes[i + j];
+                i += j - 1;
+                structs.add(new Struct(structType, new String(data)));
+            }
+            packet = new LegacyPacket(true, packetType, structs);
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            packet = new LegacyPacket(false, -1, null);
+        }
+        return packet;
+    }
+
+    /**
+     * Same algorithm as AdvertiseDataBuilder.build, up to the AdvertiseData.Builder it hands the bytes to.
+     */
+    static Advertisement build(int packetType, Struct... structs) {
+        ArrayList<Byte> bytes = new ArrayList<>();
+        bytes.add((byte) packetType);
+        for (Struct struct : structs) {
+            bytes.add((byte) (struct.data.length() + 1));
+            bytes.add((byte) struct.type);
+            for (byte b : struct.data.getBytes()) {
+                bytes.add(b);
+            }
+        }
+
+        int manufacturerId;
+        byte[] manufacturerData;
+        if (bytes.size() <= 1) {
+            manufacturerId = bytes.get(0);
+            manufacturerData = new byte[0];
+        } else {
+            manufacturerId = 256 * bytes.get(1) + bytes.get(0);
+            manufacturerData = new byte[bytes.size() - 2];
+            for (int i = 0; i < manufacturerData.length; i++) {
+                manufacturerData[i] = bytes.get(i + 2);
+            }
+        }
+        return new Advertisement(manufacturerId, manufacturerData);
+    }
+
+    // Like the library enums' fromOrdinal, which index their values array.
+    private static int fromOrdinal(int ordinal, int count) {
+        if (ordinal < 0 || ordinal >= count) {
+            throw new ArrayIndexOutOfBoundsException(ordinal);
+        }
+        return ordinal;
+    }
+}
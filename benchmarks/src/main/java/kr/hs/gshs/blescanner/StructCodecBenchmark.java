@@ -0,0 +1,109 @@
+package kr.hs.gshs.blescanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding compressed struct data, sized like a real advertisement: each codec on its own,
+ * and {@link StructCodecs} with its cache in front, as PayloadView reads it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StructCodecBenchmark {
+
+    private static final int STRUCTS = 64;
+
+    // Room left for struct data in a payload with a single struct.
+    private static final int MAX_DATA_LENGTH = PayloadView.PAYLOAD_LENGTH - 3;
+
+    private static final String[] WORDS = {"sale", "on", "at", "the", "canteen", "free", "snacks",
+            "room", "closed", "until", "noon", "wet", "floor", "library", "opens", "at", "8"};
+
+    private final RleCodec rleCodec = new RleCodec();
+    private final HuffmanCodec huffmanCodec = new HuffmanCodec();
+    private final byte[][] rle = new byte[STRUCTS][];
+    private final byte[][] huffman = new byte[STRUCTS][];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(618);
+        for (int i = 0; i < STRUCTS; i++) {
+            StringBuilder runs = new StringBuilder();
+            for (int j = 0; j < 10; j++) {
+                int run = 1 + random.nextInt(8);
+                char c = (char) ('a' + random.nextInt(26));
+                for (int k = 0; k < run; k++) {
+                    runs.append(c);
+                }
+            }
+            rle[i] = encode(rleCodec, runs.toString());
+
+            // As many words as fit once compressed.
+            StringBuilder text = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+            while (true) {
+                String longer = text + " " + WORDS[random.nextInt(WORDS.length)];
+                if (StructCodecs.encode(StructCodecs.TEXT_HUFFMAN_CODING, longer, new byte[MAX_DATA_LENGTH], 0, MAX_DATA_LENGTH) < 0) {
+                    break;
+                }
+                text.setLength(0);
+                text.append(longer);
+            }
+            huffman[i] = encode(huffmanCodec, text.toString());
+        }
+    }
+
+    @Benchmark
+    public String rle() {
+        byte[] data = rle[nextIndex()];
+        return rleCodec.decode(data, 0, data.length);
+    }
+
+    @Benchmark
+    public String huffman() {
+        byte[] data = huffman[nextIndex()];
+        return huffmanCodec.decode(data, 0, data.length);
+    }
+
+    /**
+     * The same structs keep reappearing, so after the first pass every decode is a cache hit.
+     */
+    @Benchmark
+    public String cachedHuffman() {
+        byte[] data = huffman[nextIndex()];
+        return StructCodecs.decode(StructCodecs.TEXT_HUFFMAN_CODING, data, 0, data.length);
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) % STRUCTS;
+        return index;
+    }
+
+    private static byte[] encode(StructCodec codec, String text) {
+        byte[] utf8 = text.getBytes(Charset.forName("UTF-8"));
+        byte[] out = new byte[MAX_DATA_LENGTH];
+        int length = codec.encode(utf8, 0, utf8.length, out, 0, out.length);
+        if (length < 0) {
+            throw new IllegalStateException("Doesn't fit: " + text);
+        }
+        return Arrays.copyOf(out, length);
+    }
+}
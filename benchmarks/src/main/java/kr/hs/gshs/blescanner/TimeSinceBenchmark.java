@@ -0,0 +1,49 @@
+package kr.hs.gshs.blescanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting the 'last seen' time of a row, done for every visible row on each refresh.
+ * Most packets in the list were seen in the last minute, a few hours ago.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeSinceBenchmark {
+
+    private static final int AGES = 1024;
+
+    private final long[] ages = new long[AGES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(618);
+        for (int i = 0; i < AGES; i++) {
+            long maxAge = i % 8 == 0 ? TimeUnit.HOURS.toNanos(3) : TimeUnit.MINUTES.toNanos(1);
+            ages[i] = (long) (random.nextDouble() * maxAge);
+        }
+    }
+
+    @Benchmark
+    public String format() {
+        String text = TimeSinceFormat.format(ages[next]);
+        next = (next + 1) & (AGES - 1);
+        return text;
+    }
+}
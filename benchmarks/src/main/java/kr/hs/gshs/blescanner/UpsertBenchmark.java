@@ -0,0 +1,110 @@
+package kr.hs.gshs.blescanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding a received scan record to the packet list, or updating when it was last seen: the old
+ * ScanResultAdapter.add against the path ScanIngestor takes. Both keep as many packets as there are
+ * beacons, dropping the oldest, so the old list doesn't grow for the length of a run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UpsertBenchmark extends AdvertisementStream {
+
+    private List<LegacyPacket> legacyPackets;
+    private List<Long> legacyTimestamps;
+
+    private PacketStore<LegacyPacket> store;
+    private PayloadFingerprints fingerprints;
+    private final PayloadView view = new PayloadView();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        generate();
+        legacyPackets = new ArrayList<>();
+        legacyTimestamps = new ArrayList<>();
+        store = new PacketStore<>(beacons, PacketStore.NO_TTL);
+        fingerprints = new PayloadFingerprints();
+        for (byte[] record : initialRecords) {
+            legacyAdd(record, 0);
+            add(record, 0);
+        }
+    }
+
+    @Benchmark
+    public int legacyAdd() {
+        return legacyAdd(next(), now());
+    }
+
+    @Benchmark
+    public int add() {
+        return add(next(), now());
+    }
+
+    private int legacyAdd(byte[] record, long timestamp) {
+        LegacyPacket packet = LegacyPacket.parse(record);
+        int existingPosition = legacyPackets.indexOf(packet);
+        if (existingPosition >= 0) {
+            legacyTimestamps.set(existingPosition, timestamp);
+            return existingPosition;
+        }
+        if (legacyPackets.size() == beacons) {
+            legacyPackets.remove(0);
+            legacyTimestamps.remove(0);
+        }
+        legacyPackets.add(packet);
+        legacyTimestamps.add(timestamp);
+        return -legacyPackets.size();
+    }
+
+    // As ScanIngestor.ingest, with the filter and sighting log left out.
+    private int add(byte[] record, long timestamp) {
+        long fingerprint = PayloadFingerprints.of(record);
+        int slot = fingerprints.indexOf(fingerprint);
+        if (slot >= 0) {
+            int entry = store.indexOf(fingerprints.getKey(slot));
+            if (entry >= 0) {
+                store.setTimestamp(entry, timestamp);
+                return entry;
+            }
+        }
+
+        view.wrap(record);
+        long key = PayloadKeys.of(view);
+        int entry = store.indexOf(key);
+        if (entry >= 0) {
+            store.setTimestamp(entry, timestamp);
+        } else {
+            entry = -(store.add(key, toPacket(view), timestamp) + 1);
+        }
+        fingerprints.put(fingerprint, key);
+        return entry;
+    }
+
+    // Materializes the structs the way PacketView.toPacketData does.
+    private static LegacyPacket toPacket(PayloadView view) {
+        ArrayList<LegacyPacket.Struct> structs = new ArrayList<>(view.getStructCount());
+        for (int i = 0; i < view.getStructCount(); i++) {
+            structs.add(new LegacyPacket.Struct(view.getStructTypeValue(i), view.getStructData(i)));
+        }
+        return new LegacyPacket(view.isSupportedPacket(), view.getPacketTypeValue(), structs);
+    }
+}
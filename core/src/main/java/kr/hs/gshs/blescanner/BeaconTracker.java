@@ -0,0 +1,80 @@
+package kr.hs.gshs.blescanner;
+
+/**
+ * {@link RssiHistory} of every beacon in range, keyed by device address. Beacons are kept in a
+ * {@link PacketStore}, so finding one takes a primitive lookup, and past the maximum the one seen
+ * longest ago is dropped. Thread safe, sightings come in on the ingestion thread while the UI reads.
+ */
+public class BeaconTracker {
+
+    public static final int DEFAULT_MAX_BEACONS = 500;
+
+    private final PacketStore<RssiHistory> histories;
+
+    public BeaconTracker(int maxBeacons) {
+        // Nobody persists the tracker.
+        histories = new PacketStore<>(maxBeacons, PacketStore.NO_TTL, false);
+    }
+
+    /**
+     * Record a sighting of a beacon.
+     *
+     * @param address device address as returned by {@link ScanTraceWriter#parseAddress(String)}
+     * @param timestamp scan result timestamp in nanoseconds
+     */
+    public synchronized void record(long address, long timestamp, int rssi) {
+        int entry = histories.indexOf(address);
+        RssiHistory history;
+        if (entry >= 0) {
+            history = histories.get(entry);
+            history.record(timestamp, rssi);
+            histories.setTimestamp(entry, timestamp);
+        } else {
+            history = new RssiHistory();
+            history.record(timestamp, rssi);
+            histories.add(address, history, timestamp);
+        }
+    }
+
+    public synchronized int size() {
+        return histories.size();
+    }
+
+    /**
+     * Return the smoothed RSSI of a beacon, or NaN if it isn't tracked.
+     */
+    public synchronized double getSmoothedRssi(long address) {
+        int entry = histories.indexOf(address);
+        return entry >= 0 ? histories.get(entry).getSmoothedRssi() : Double.NaN;
+    }
+
+    /**
+     * Return whether a beacon was seen at most windowNanos before now.
+     */
+    public synchronized boolean wasSeenWithin(long address, long now, long windowNanos) {
+        int entry = histories.indexOf(address);
+        return entry >= 0 && histories.get(entry).wasSeenWithin(now, windowNanos);
+    }
+
+    /**
+     * Return how many beacons were seen at most windowNanos before now.
+     */
+    public synchronized int countSeenWithin(long now, long windowNanos) {
+        PacketSnapshot<RssiHistory> snapshot = histories.snapshot();
+        int count = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.get(i).wasSeenWithin(now, windowNanos)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return a copy of a beacon's history, or null if it isn't tracked, to read outside the lock.
+     */
+    public synchronized RssiHistory copyHistory(long address) {
+        int entry = histories.indexOf(address);
+        return entry >= 0 ? histories.get(entry).copy() : null;
+    }
+}
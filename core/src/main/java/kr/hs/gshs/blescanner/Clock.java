@@ -0,0 +1,9 @@
+package kr.hs.gshs.blescanner;
+
+/**
+ * Source of the current time, on the same base as ScanResult.getTimestampNanos().
+ * On a device this is SystemClock.elapsedRealtimeNanos(), tests can substitute their own.
+ */
+public interface Clock {
+    long elapsedRealtimeNanos();
+}
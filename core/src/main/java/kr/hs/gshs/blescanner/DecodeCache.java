@@ -0,0 +1,134 @@
+package kr.hs.gshs.blescanner;
+
+import java.nio.charset.Charset;
+
+/**
+ * Bounded cache of decoded struct data, keyed by the struct type value and its raw bytes, so a compressed
+ * struct that keeps being advertised is decoded once. Direct mapped: the hash of a key picks its one
+ * slot, and a new key replaces whatever was there, so a lookup never allocates and takes constant time.
+ */
+public class DecodeCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long[] hashes;
+    // Struct type value followed by the raw bytes.
+    private final byte[][] keys;
+    private final String[] values;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public DecodeCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        hashes = new long[slots];
+        keys = new byte[slots][];
+        values = new String[slots];
+    }
+
+    /**
+     * Return the cached text of a struct, or null.
+     */
+    public synchronized String get(int structType, byte[] bytes, int offset, int length) {
+        long hash = hash(structType, bytes, offset, length);
+        int slot = (int) hash & (keys.length - 1);
+        if (hashes[slot] == hash && matches(keys[slot], structType, bytes, offset, length)) {
+            hitCount++;
+            return values[slot];
+        }
+        missCount++;
+        return null;
+    }
+
+    public synchronized void put(int structType, byte[] bytes, int offset, int length, String text) {
+        long hash = hash(structType, bytes, offset, length);
+        store(hash, key(structType, bytes, offset, length), text);
+    }
+
+    /**
+     * Return the cached text of a struct, decoding it with its codec and caching it on a miss, hashing the
+     * bytes once either way. Data the codec can't decode is cached as UTF-8 text, as it was received.
+     * Decodes outside the lock, so threads decoding different structs don't wait on each other.
+     */
+    public String getOrDecode(int structType, StructCodec codec, byte[] bytes, int offset, int length) {
+        long hash = hash(structType, bytes, offset, length);
+        int slot = (int) hash & (keys.length - 1);
+        synchronized (this) {
+            if (hashes[slot] == hash && matches(keys[slot], structType, bytes, offset, length)) {
+                hitCount++;
+                return values[slot];
+            }
+            missCount++;
+        }
+
+        String text = codec.decode(bytes, offset, length);
+        if (text == null) {
+            text = new String(bytes, offset, length, UTF_8);
+        }
+        byte[] key = key(structType, bytes, offset, length);
+        synchronized (this) {
+            store(hash, key, text);
+        }
+        return text;
+    }
+
+    public synchronized void clear() {
+        for (int slot = 0; slot < keys.length; slot++) {
+            keys[slot] = null;
+            values[slot] = null;
+        }
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    private void store(long hash, byte[] key, String text) {
+        int slot = (int) hash & (keys.length - 1);
+        hashes[slot] = hash;
+        keys[slot] = key;
+        values[slot] = text;
+    }
+
+    private static byte[] key(int structType, byte[] bytes, int offset, int length) {
+        byte[] key = new byte[length + 1];
+        key[0] = (byte) structType;
+        System.arraycopy(bytes, offset, key, 1, length);
+        return key;
+    }
+
+    private static boolean matches(byte[] key, int structType, byte[] bytes, int offset, int length) {
+        if (key == null || key.length != length + 1 || key[0] != structType) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i + 1] != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(int structType, byte[] bytes, int offset, int length) {
+        long h = 0xcbf29ce484222325L ^ structType;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+        }
+        return h ^ h >>> 29;
+    }
+}
@@ -0,0 +1,130 @@
+package kr.hs.gshs.blescanner;
+
+import java.nio.charset.Charset;
+
+/**
+ * Codec of TEXT_HUFFMAN_CODING struct data: UTF-8 text coded byte by byte with a fixed prefix code,
+ * most significant bit first, the last byte padded with 1 bits.
+ * Codes are 4 to 11 bits long, shortest for common lowercase text, and assigned canonically in table
+ * order. Decoding looks up the next 11 bits in a table of every code, so it takes one lookup per byte.
+ */
+public class HuffmanCodec implements StructCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int MAX_CODE_LENGTH = 11;
+    private static final int MIN_CODE_LENGTH = 4;
+
+    // Symbols by code length, the rest of the bytes follow in the order built below.
+    private static final String LENGTH_4 = " etaoins";
+    private static final String LENGTH_6 = "rhldcumfpgwyb.,v";
+    private static final String LENGTH_8 = "kxjqz0123456789ETAOINS-/";
+    private static final int LENGTH_10_COUNT = 112;
+
+    private static final int[] codes = new int[256];
+    private static final int[] codeLengths = new int[256];
+
+    // Indexed by the next MAX_CODE_LENGTH bits, holds symbol << 4 | code length.
+    private static final short[] table = new short[1 << MAX_CODE_LENGTH];
+
+    static {
+        int[] symbols = new int[256];
+        boolean[] listed = new boolean[256];
+        int count = 0;
+        for (char c : (LENGTH_4 + LENGTH_6 + LENGTH_8).toCharArray()) {
+            symbols[count++] = c;
+            listed[c] = true;
+        }
+        // Then the rest of printable ASCII, UTF-8 continuation bytes, and lead bytes of Hangul syllables.
+        int[][] ranges = {{0x20, 0x7e}, {0x80, 0xbf}, {0xea, 0xed}, {0x00, 0xff}};
+        for (int[] range : ranges) {
+            for (int symbol = range[0]; symbol <= range[1]; symbol++) {
+                if (!listed[symbol]) {
+                    symbols[count++] = symbol;
+                    listed[symbol] = true;
+                }
+            }
+        }
+
+        int code = 0;
+        int previousLength = MIN_CODE_LENGTH;
+        int length4 = LENGTH_4.length();
+        int length6 = length4 + LENGTH_6.length();
+        int length8 = length6 + LENGTH_8.length();
+        int length10 = length8 + LENGTH_10_COUNT;
+        for (int i = 0; i < symbols.length; i++) {
+            int length = i < length4 ? 4 : i < length6 ? 6 : i < length8 ? 8 : i < length10 ? 10 : 11;
+            code <<= length - previousLength;
+            previousLength = length;
+
+            codes[symbols[i]] = code;
+            codeLengths[symbols[i]] = length;
+            int shift = MAX_CODE_LENGTH - length;
+            for (int suffix = 0; suffix < 1 << shift; suffix++) {
+                table[code << shift | suffix] = (short) (symbols[i] << 4 | length);
+            }
+            code++;
+        }
+    }
+
+    @Override
+    public String decode(byte[] bytes, int offset, int length) {
+        byte[] decoded = new byte[length * 8 / MIN_CODE_LENGTH];
+        int count = 0;
+
+        int pos = offset;
+        int end = offset + length;
+        int remaining = length * 8;
+        long bits = 0;
+        int bitCount = 0;
+        while (remaining > 0) {
+            while (bitCount < MAX_CODE_LENGTH) {
+                // Past the end, fill with 1 bits like the padding.
+                bits = bits << 8 | (pos < end ? bytes[pos++] & 0xff : 0xff);
+                bitCount += 8;
+            }
+
+            int entry = table[(int) (bits >>> (bitCount - MAX_CODE_LENGTH)) & (table.length - 1)];
+            int codeLength = entry & 0xf;
+            if (codeLength > remaining) {
+                // Only padding is left, fewer than 8 bits that are all 1.
+                int mask = (1 << remaining) - 1;
+                if (remaining >= 8 || (bits >>> (bitCount - remaining) & mask) != mask) {
+                    return null;
+                }
+                break;
+            }
+            decoded[count++] = (byte) (entry >> 4);
+            bitCount -= codeLength;
+            remaining -= codeLength;
+        }
+        return new String(decoded, 0, count, UTF_8);
+    }
+
+    @Override
+    public int encode(byte[] text, int textOffset, int textLength, byte[] out, int offset, int maxLength) {
+        int pos = offset;
+        int end = offset + maxLength;
+        long bits = 0;
+        int bitCount = 0;
+        for (int i = textOffset; i < textOffset + textLength; i++) {
+            int symbol = text[i] & 0xff;
+            bits = bits << codeLengths[symbol] | codes[symbol];
+            bitCount += codeLengths[symbol];
+            while (bitCount >= 8) {
+                if (pos == end) {
+                    return -1;
+                }
+                bitCount -= 8;
+                out[pos++] = (byte) (bits >>> bitCount);
+            }
+        }
+        if (bitCount > 0) {
+            if (pos == end) {
+                return -1;
+            }
+            out[pos++] = (byte) (bits << (8 - bitCount) | 0xff >>> bitCount);
+        }
+        return pos - offset;
+    }
+}
@@ -0,0 +1,58 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.Locale;
+
+/**
+ * Formats {@link PipelineMetrics} as text, with rates over the time since the previous report.
+ * Each reader keeps a reporter of its own. Not thread safe.
+ */
+public class MetricsReporter {
+
+    private final PipelineMetrics metrics;
+    private long lastNanos;
+    private long lastCallbacks;
+    private long lastRefreshes;
+
+    /**
+     * @param nowNanos start of the first report's rates, on any monotonic clock used for later reports
+     */
+    public MetricsReporter(PipelineMetrics metrics, long nowNanos) {
+        this.metrics = metrics;
+        lastNanos = nowNanos;
+        lastCallbacks = metrics.getCallbackCount();
+        lastRefreshes = metrics.getRefreshCount();
+    }
+
+    public String report(long nowNanos) {
+        long callbacks = metrics.getCallbackCount();
+        long refreshes = metrics.getRefreshCount();
+        double seconds = Math.max(nowNanos - lastNanos, 1) / 1e9;
+        long duplicates = metrics.getDuplicateCount();
+        long parsed = duplicates + metrics.getNewPacketCount();
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "Callbacks: %.1f/s, %d total, %d filtered%n",
+                (callbacks - lastCallbacks) / seconds, callbacks, metrics.getFilteredCount()));
+        text.append(String.format(Locale.US, "Dedup hit ratio: %.1f%% of %d records%n",
+                parsed == 0 ? 0 : 100.0 * duplicates / parsed, parsed));
+        text.append("Parse time: ").append(latencies(metrics.getParseLatency(), 1e3, "us")).append('\n');
+        text.append(String.format(Locale.US, "Store: %d packets, %d evicted, %d dropped%n",
+                metrics.getStoreSize(), metrics.getEvictedCount(), metrics.getDroppedCount()));
+        text.append(String.format(Locale.US, "Refreshes: %.1f/s, %d total%n",
+                (refreshes - lastRefreshes) / seconds, refreshes));
+        text.append("Notifications: ").append(metrics.getNotificationCount()).append('\n');
+        text.append("Scan to screen: ").append(latencies(metrics.getScreenLatency(), 1e6, "ms")).append('\n');
+
+        lastNanos = nowNanos;
+        lastCallbacks = callbacks;
+        lastRefreshes = refreshes;
+        return text.toString();
+    }
+
+    private static String latencies(LatencyHistogram histogram, double nanosPerUnit, String unit) {
+        return String.format(Locale.US, "p50 %.1f %s, p90 %.1f %s, p99 %.1f %s, max %.1f %s (%d)",
+                histogram.getPercentile(50) / nanosPerUnit, unit, histogram.getPercentile(90) / nanosPerUnit, unit,
+                histogram.getPercentile(99) / nanosPerUnit, unit, histogram.getMax() / nanosPerUnit, unit,
+                histogram.getCount());
+    }
+}
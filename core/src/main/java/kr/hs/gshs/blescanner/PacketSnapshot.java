@@ -0,0 +1,66 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.Arrays;
+
+/**
+ * Immutable copy of the contents of a {@link PacketStore}, safe to hand to another thread.
+ */
+public class PacketSnapshot<P> {
+
+    private static final PacketSnapshot<?> EMPTY = new PacketSnapshot<>(new Object[0], new long[0], new long[0]);
+
+    private final Object[] packets;
+    private final long[] keys;
+    private final long[] timestamps;
+
+    PacketSnapshot(Object[] packets, long[] keys, long[] timestamps) {
+        this.packets = packets;
+        this.keys = keys;
+        this.timestamps = timestamps;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <P> PacketSnapshot<P> empty() {
+        return (PacketSnapshot<P>) EMPTY;
+    }
+
+    public int size() {
+        return packets.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    public P get(int position) {
+        return (P) packets[position];
+    }
+
+    public long getKey(int position) {
+        return keys[position];
+    }
+
+    public long getTimestamp(int position) {
+        return timestamps[position];
+    }
+
+    /**
+     * Return a snapshot of only the packets whose keys are in a sorted array, in the same order.
+     */
+    public PacketSnapshot<P> retain(long[] sortedKeys) {
+        int count = 0;
+        int[] positions = new int[Math.min(keys.length, sortedKeys.length)];
+        for (int i = 0; i < keys.length && count < positions.length; i++) {
+            if (Arrays.binarySearch(sortedKeys, keys[i]) >= 0) {
+                positions[count++] = i;
+            }
+        }
+
+        Object[] packetsCopy = new Object[count];
+        long[] keysCopy = new long[count];
+        long[] timestampsCopy = new long[count];
+        for (int i = 0; i < count; i++) {
+            packetsCopy[i] = packets[positions[i]];
+            keysCopy[i] = keys[positions[i]];
+            timestampsCopy[i] = timestamps[positions[i]];
+        }
+        return new PacketSnapshot<>(packetsCopy, keysCopy, timestampsCopy);
+    }
+}
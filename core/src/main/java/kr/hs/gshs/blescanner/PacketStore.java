@@ -0,0 +1,473 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.Arrays;
+
+/**
+ * Holds packets keyed by a 64-bit content hash, with O(1) lookup and upsert.
+ * Each packet lives in an entry whose index stays valid until the packet is removed.
+ * Entries are kept in insertion order for display, and in least-recently-seen order so the store
+ * can be bounded: adding past the maximum size evicts the packet seen longest ago, and packets
+ * idle for longer than the TTL are expired from the front of that order, without scanning the rest.
+ * Entries added, updated or removed are also tracked as dirty, so the store can be persisted incrementally,
+ * unless the store is made without, for stores nobody persists.
+ * A {@link Listener} hears of every packet added and removed, however it left, to keep an index in step.
+ */
+public class PacketStore<P> {
+
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+    public static final long NO_TTL = Long.MAX_VALUE;
+
+    /**
+     * Called as packets enter and leave the store, on the thread changing it.
+     */
+    public interface Listener<P> {
+        void onAdded(long key, P packet);
+
+        /**
+         * A packet was removed, evicted, expired or cleared.
+         */
+        void onRemoved(long key, P packet);
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NIL = -1;
+
+    private final int maxSize;
+    private final long idleTtlNanos;
+
+    private Object[] packets;
+    private long[] keys;
+    private long[] timestamps;
+
+    // Insertion order, also chains free entries through orderNext.
+    private int[] orderPrev;
+    private int[] orderNext;
+    private int orderHead = NIL;
+    private int orderTail = NIL;
+    private int freeHead = NIL;
+
+    // Least recently seen first.
+    private int[] recencyPrev;
+    private int[] recencyNext;
+    private int recencyHead = NIL;
+    private int recencyTail = NIL;
+
+    private int size;
+    private int allocated;
+
+    // Open addressing table with linear probing, holds (entry + 1), 0 marks an empty slot.
+    private int[] slots;
+
+    // Entries changed since the last drainDirty, each listed once, null when not tracked.
+    private final boolean trackDirty;
+    private boolean[] dirty;
+    private int[] dirtyEntries;
+    private int dirtyCount;
+
+    private long evictedCount;
+    private long expiredCount;
+
+    private Listener<P> listener;
+
+    public PacketStore() {
+        this(UNBOUNDED, NO_TTL);
+    }
+
+    /**
+     * @param maxSize number of packets kept before the least recently seen one is evicted
+     * @param idleTtlNanos how long a packet is kept after it was last seen, or {@link #NO_TTL}
+     */
+    public PacketStore(int maxSize, long idleTtlNanos) {
+        this(maxSize, idleTtlNanos, true);
+    }
+
+    /**
+     * @param trackDirty whether to track dirty entries, without them {@link #getDirtyCount()} stays 0
+     */
+    public PacketStore(int maxSize, long idleTtlNanos, boolean trackDirty) {
+        if (maxSize <= 0 || idleTtlNanos <= 0) {
+            throw new IllegalArgumentException("Invalid store bounds");
+        }
+        this.maxSize = maxSize;
+        this.idleTtlNanos = idleTtlNanos;
+        this.trackDirty = trackDirty;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getIdleTtlNanos() {
+        return idleTtlNanos;
+    }
+
+    /**
+     * Whether an entry holds a packet, rather than being free.
+     */
+    public boolean isUsed(int entry) {
+        return entry < allocated && packets[entry] != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public P get(int entry) {
+        return (P) packets[entry];
+    }
+
+    public long getKey(int entry) {
+        return keys[entry];
+    }
+
+    public long getTimestamp(int entry) {
+        return timestamps[entry];
+    }
+
+    /**
+     * Move the timestamp of an entry forward, moving its packet up the least-recently-seen order.
+     * An older timestamp, as results held back in a batch can bring, changes nothing, so last seen
+     * never goes backwards. Returns whether the timestamp advanced.
+     */
+    public boolean setTimestamp(int entry, long timestamp) {
+        if (timestamp <= timestamps[entry]) {
+            return false;
+        }
+        timestamps[entry] = timestamp;
+        markDirty(entry);
+        if (entry != recencyTail) {
+            unlinkRecency(entry);
+            linkRecency(entry);
+        }
+        return true;
+    }
+
+    /**
+     * Return the entry of the packet with the given key, otherwise return -1.
+     */
+    public int indexOf(long key) {
+        int mask = slots.length - 1;
+        for (int i = mix(key) & mask; slots[i] != 0; i = (i + 1) & mask) {
+            int entry = slots[i] - 1;
+            if (keys[entry] == key) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add a packet whose key isn't present yet and return its entry.
+     * Evicts the least recently seen packet if the store is full.
+     */
+    public int add(long key, P packet, long timestamp) {
+        if (size == maxSize) {
+            removeEntry(recencyHead);
+            evictedCount++;
+        }
+
+        int entry;
+        if (freeHead != NIL) {
+            entry = freeHead;
+            freeHead = orderNext[entry];
+        } else {
+            if (allocated == keys.length) {
+                grow();
+            }
+            entry = allocated++;
+        }
+
+        packets[entry] = packet;
+        keys[entry] = key;
+        timestamps[entry] = timestamp;
+        linkOrder(entry);
+        linkRecency(entry);
+        insertSlot(key, entry);
+        markDirty(entry);
+        size++;
+
+        if (listener != null) {
+            listener.onAdded(key, packet);
+        }
+        return entry;
+    }
+
+    /**
+     * Update the timestamp of an existing packet, otherwise add it.
+     * Returns the entry, or -(entry + 1) if the packet was newly added.
+     */
+    public int upsert(long key, P packet, long timestamp) {
+        int entry = indexOf(key);
+        if (entry >= 0) {
+            setTimestamp(entry, timestamp);
+            return entry;
+        }
+        return -(add(key, packet, timestamp) + 1);
+    }
+
+    /**
+     * Remove the packet with the given key, returns false if it wasn't present.
+     */
+    public boolean remove(long key) {
+        int entry = indexOf(key);
+        if (entry < 0) {
+            return false;
+        }
+        removeEntry(entry);
+        return true;
+    }
+
+    /**
+     * Remove packets not seen for the idle TTL or longer, as of now, and return how many were removed.
+     * Only looks at expired packets, starting from the least recently seen one.
+     */
+    public int expire(long now) {
+        int count = 0;
+        while (recencyHead != NIL && now - timestamps[recencyHead] >= idleTtlNanos) {
+            removeEntry(recencyHead);
+            count++;
+        }
+        expiredCount += count;
+        return count;
+    }
+
+    /**
+     * Return the time at which the next packet expires, or Long.MAX_VALUE if none will.
+     */
+    public long nextExpiry() {
+        if (recencyHead == NIL || idleTtlNanos == NO_TTL) {
+            return Long.MAX_VALUE;
+        }
+        return timestamps[recencyHead] + idleTtlNanos;
+    }
+
+    /**
+     * Number of packets evicted so far because the store was full.
+     */
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    /**
+     * Number of packets expired so far because they were idle for the TTL.
+     */
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Number of entries changed since the last {@link #drainDirty(int[])}.
+     */
+    public int getDirtyCount() {
+        return dirtyCount;
+    }
+
+    /**
+     * Copy the entries added, updated or removed since the last call into out, in the order they first
+     * changed, and forget them. Out must hold {@link #getDirtyCount()} entries. Returns how many were copied.
+     */
+    public int drainDirty(int[] out) {
+        int count = dirtyCount;
+        for (int i = 0; i < count; i++) {
+            out[i] = dirtyEntries[i];
+            dirty[dirtyEntries[i]] = false;
+        }
+        dirtyCount = 0;
+        return count;
+    }
+
+    /**
+     * Return a copy of the store's current contents, in insertion order.
+     */
+    public PacketSnapshot<P> snapshot() {
+        Object[] packetsCopy = new Object[size];
+        long[] keysCopy = new long[size];
+        long[] timestampsCopy = new long[size];
+
+        int position = 0;
+        for (int entry = orderHead; entry != NIL; entry = orderNext[entry]) {
+            packetsCopy[position] = packets[entry];
+            keysCopy[position] = keys[entry];
+            timestampsCopy[position] = timestamps[entry];
+            position++;
+        }
+        return new PacketSnapshot<>(packetsCopy, keysCopy, timestampsCopy);
+    }
+
+    public void setListener(Listener<P> listener) {
+        this.listener = listener;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        if (listener != null) {
+            for (int entry = orderHead; entry != NIL; entry = orderNext[entry]) {
+                listener.onRemoved(keys[entry], (P) packets[entry]);
+            }
+        }
+        for (int entry = 0; entry < allocated; entry++) {
+            markDirty(entry);
+        }
+        Arrays.fill(packets, null);
+        Arrays.fill(slots, 0);
+        orderHead = orderTail = NIL;
+        recencyHead = recencyTail = NIL;
+        freeHead = NIL;
+        size = 0;
+        allocated = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removeEntry(int entry) {
+        if (listener != null) {
+            listener.onRemoved(keys[entry], (P) packets[entry]);
+        }
+        removeSlot(entry);
+        unlinkRecency(entry);
+
+        int prev = orderPrev[entry];
+        int next = orderNext[entry];
+        if (prev == NIL) {
+            orderHead = next;
+        } else {
+            orderNext[prev] = next;
+        }
+        if (next == NIL) {
+            orderTail = prev;
+        } else {
+            orderPrev[next] = prev;
+        }
+
+        packets[entry] = null;
+        markDirty(entry);
+        orderNext[entry] = freeHead;
+        freeHead = entry;
+        size--;
+    }
+
+    private void markDirty(int entry) {
+        if (trackDirty && !dirty[entry]) {
+            dirty[entry] = true;
+            dirtyEntries[dirtyCount++] = entry;
+        }
+    }
+
+    private void linkOrder(int entry) {
+        orderPrev[entry] = orderTail;
+        orderNext[entry] = NIL;
+        if (orderTail == NIL) {
+            orderHead = entry;
+        } else {
+            orderNext[orderTail] = entry;
+        }
+        orderTail = entry;
+    }
+
+    // Keeps the recency order sorted by timestamp, which expire relies on to stop at the first live head.
+    // Walks back from the tail, so the usual latest sighting links in right away.
+    private void linkRecency(int entry) {
+        int prev = recencyTail;
+        while (prev != NIL && timestamps[prev] > timestamps[entry]) {
+            prev = recencyPrev[prev];
+        }
+        int next = prev == NIL ? recencyHead : recencyNext[prev];
+        recencyPrev[entry] = prev;
+        recencyNext[entry] = next;
+        if (prev == NIL) {
+            recencyHead = entry;
+        } else {
+            recencyNext[prev] = entry;
+        }
+        if (next == NIL) {
+            recencyTail = entry;
+        } else {
+            recencyPrev[next] = entry;
+        }
+    }
+
+    private void unlinkRecency(int entry) {
+        int prev = recencyPrev[entry];
+        int next = recencyNext[entry];
+        if (prev == NIL) {
+            recencyHead = next;
+        } else {
+            recencyNext[prev] = next;
+        }
+        if (next == NIL) {
+            recencyTail = prev;
+        } else {
+            recencyPrev[next] = prev;
+        }
+    }
+
+    private void insertSlot(long key, int entry) {
+        int mask = slots.length - 1;
+        int i = mix(key) & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = entry + 1;
+    }
+
+    private void removeSlot(int entry) {
+        int mask = slots.length - 1;
+        int i = mix(keys[entry]) & mask;
+        while (slots[i] != entry + 1) {
+            i = (i + 1) & mask;
+        }
+
+        // Shift later slots of the probe run back, so lookups never stop at the hole.
+        for (int j = (i + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+            int home = mix(keys[slots[j] - 1]) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                slots[i] = slots[j];
+                i = j;
+            }
+        }
+        slots[i] = 0;
+    }
+
+    private void allocate(int capacity) {
+        packets = new Object[capacity];
+        keys = new long[capacity];
+        timestamps = new long[capacity];
+        orderPrev = new int[capacity];
+        orderNext = new int[capacity];
+        recencyPrev = new int[capacity];
+        recencyNext = new int[capacity];
+        if (trackDirty) {
+            dirty = new boolean[capacity];
+            dirtyEntries = new int[capacity];
+        }
+
+        // Keep the table at most half full.
+        slots = new int[capacity * 2];
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        packets = Arrays.copyOf(packets, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        orderPrev = Arrays.copyOf(orderPrev, capacity);
+        orderNext = Arrays.copyOf(orderNext, capacity);
+        recencyPrev = Arrays.copyOf(recencyPrev, capacity);
+        recencyNext = Arrays.copyOf(recencyNext, capacity);
+        if (trackDirty) {
+            dirty = Arrays.copyOf(dirty, capacity);
+            dirtyEntries = Arrays.copyOf(dirtyEntries, capacity);
+        }
+
+        slots = new int[capacity * 2];
+        for (int entry = orderHead; entry != NIL; entry = orderNext[entry]) {
+            insertSlot(keys[entry], entry);
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,107 @@
+package kr.hs.gshs.blescanner;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes a packet payload into a reusable fixed buffer, the counterpart of {@link PayloadView}.
+ * The payload is checked against the {@link PayloadView#PAYLOAD_LENGTH} bytes a legacy advertisement
+ * has room for after the flags. Text structs are written as TEXT_UNCOMPRESSED, TEXT_RLE or
+ * TEXT_HUFFMAN_CODING, whichever is shortest, uncompressed on a tie so ScanResultParser still reads
+ * them as they were. Nothing is allocated per packet. Not thread safe.
+ */
+public class PayloadEncoder {
+
+    // Tried in this order, a later one has to be strictly shorter.
+    private static final int[] TEXT_TYPES = {
+            StructCodecs.TEXT_UNCOMPRESSED, StructCodecs.TEXT_RLE, StructCodecs.TEXT_HUFFMAN_CODING};
+
+    // Longest UTF-8 text a struct can hold, a payload of maximal RLE runs.
+    private static final int MAX_TEXT_LENGTH = (PayloadView.PAYLOAD_LENGTH - 3) / 2 * 255;
+
+    // Advertisement and scan response, as ScanRecord.getBytes() returns them.
+    private static final int SCAN_RECORD_LENGTH = 62;
+
+    private final ByteBuffer payload = ByteBuffer.allocate(PayloadView.PAYLOAD_LENGTH);
+    private final byte[] text = new byte[MAX_TEXT_LENGTH];
+    private final byte[] candidate = new byte[PayloadView.PAYLOAD_LENGTH];
+    private int position;
+
+    /**
+     * Start a payload of a packet type, dropping whatever was written before.
+     */
+    public void begin(int packetType) {
+        payload.array()[0] = (byte) packetType;
+        position = 1;
+    }
+
+    /**
+     * Append a struct. Throws IllegalArgumentException if it doesn't fit, the payload is then unchanged.
+     */
+    public void addStruct(int structType, String data) {
+        byte[] out = payload.array();
+        int room = out.length - position - 2;
+        int textLength = StructCodecs.encodeUtf8(data, text, 0, text.length);
+        if (room < 0 || textLength < 0) {
+            throw new IllegalArgumentException("Packet doesn't fit in an advertisement");
+        }
+
+        int length;
+        if (isText(structType)) {
+            length = -1;
+            for (int textType : TEXT_TYPES) {
+                int candidateLength = StructCodecs.encode(textType, text, 0, textLength, candidate, 0, room);
+                if (candidateLength >= 0 && (length < 0 || candidateLength < length)) {
+                    System.arraycopy(candidate, 0, out, position + 2, candidateLength);
+                    length = candidateLength;
+                    structType = textType;
+                }
+            }
+        } else {
+            length = StructCodecs.encode(structType, text, 0, textLength, out, position + 2, room);
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("Packet doesn't fit in an advertisement");
+        }
+
+        out[position] = (byte) (length + 1);
+        out[position + 1] = (byte) structType;
+        position += 2 + length;
+    }
+
+    /**
+     * Return the payload buffer, holding the payload up to its limit and zeroed after it, like the rest
+     * of a received scan record. The buffer is overwritten by the next payload.
+     */
+    public ByteBuffer finish() {
+        Arrays.fill(payload.array(), position, payload.capacity(), (byte) 0);
+        payload.clear();
+        payload.limit(position);
+        return payload;
+    }
+
+    /**
+     * Return a new scan record holding the payload, as a scanner receives it behind the flags and
+     * manufacturer data headers.
+     */
+    public byte[] finishScanRecord() {
+        ByteBuffer payload = finish();
+        byte[] record = new byte[SCAN_RECORD_LENGTH];
+        record[0] = 2;
+        record[1] = 0x01;
+        record[2] = 0x06;
+        record[3] = (byte) (PayloadView.PAYLOAD_LENGTH + 3);
+        record[4] = (byte) 0xff;
+        System.arraycopy(payload.array(), 0, record, PayloadView.PAYLOAD_OFFSET, PayloadView.PAYLOAD_LENGTH);
+        return record;
+    }
+
+    private static boolean isText(int structType) {
+        for (int textType : TEXT_TYPES) {
+            if (structType == textType) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,339 @@
+package kr.hs.gshs.blescanner;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rule set compiled to a flat program that accepts or rejects scan records on their raw bytes, before
+ * anything is parsed. A record is accepted if it matches every condition of any {@link Rule}, or if there
+ * are no rules. Each rule becomes a run of instructions in one int array, cheapest checks first and ending
+ * in an accept, and a failed check jumps to the next rule. Packet and struct types are checked against
+ * bitmasks of their wire values, text with shift tables built when compiling. Immutable, so a new filter
+ * can be swapped in while records are being checked.
+ */
+public class PayloadFilter {
+
+    /**
+     * Filter without rules, accepting every record.
+     */
+    public static final PayloadFilter ACCEPT_ALL = compile();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Instructions are an opcode, the instruction to go to on failure and two operands.
+    private static final int INSTRUCTION_SIZE = 4;
+    private static final int OP_RSSI = 0;
+    private static final int OP_PACKET_TYPES = 1;
+    private static final int OP_ADDRESS = 2;
+    private static final int OP_STRUCT_TYPES = 3;
+    private static final int OP_CONTAINS = 4;
+    private static final int OP_ACCEPT = 5;
+
+    private static final int ALL_STRUCT_TYPES = (1 << PayloadView.STRUCT_TYPE_COUNT) - 1;
+
+    // Lower case of every byte, ASCII letters only, as UTF-8 bytes of other characters never are.
+    private static final byte[] FOLD = new byte[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            FOLD[b] = (byte) (b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b);
+        }
+    }
+
+    /**
+     * Conditions a record has to meet all of, any left unset match everything. Copied when compiled.
+     */
+    public static class Rule {
+
+        private int packetTypes = -1;
+        private int structTypes = -1;
+        private String text;
+        private int textStructTypes = ALL_STRUCT_TYPES;
+        private long[] addresses;
+        private int minRssi = Integer.MIN_VALUE;
+
+        /**
+         * Match packets of any of these packet type values.
+         */
+        public Rule packetTypes(int... values) {
+            packetTypes = mask(values);
+            return this;
+        }
+
+        /**
+         * Match packets with a struct of any of these struct type values.
+         */
+        public Rule structTypes(int... values) {
+            structTypes = mask(values);
+            return this;
+        }
+
+        /**
+         * Match packets with text in the data of a struct of any of these struct type values, or of any
+         * struct if none are given, ignoring the case of ASCII letters only, the same whether struct data
+         * is searched raw or, compressed, decoded first.
+         */
+        public Rule contains(String text, int... structTypeValues) {
+            if (text.isEmpty()) {
+                throw new IllegalArgumentException("Empty text");
+            }
+            this.text = text;
+            textStructTypes = structTypeValues.length == 0 ? ALL_STRUCT_TYPES : mask(structTypeValues);
+            return this;
+        }
+
+        /**
+         * Match records from any of these devices, addresses as returned by {@link ScanTraceWriter#parseAddress(String)}.
+         */
+        public Rule addresses(long... values) {
+            addresses = values.clone();
+            Arrays.sort(addresses);
+            return this;
+        }
+
+        /**
+         * Match records received at this RSSI or stronger.
+         */
+        public Rule minRssi(int dbm) {
+            minRssi = dbm;
+            return this;
+        }
+
+        private static int mask(int[] values) {
+            int mask = 0;
+            for (int value : values) {
+                if (value < 0 || value >= 32) {
+                    throw new IllegalArgumentException("Invalid type value: " + value);
+                }
+                mask |= 1 << value;
+            }
+            return mask;
+        }
+    }
+
+    private final int[] program;
+    private final long[][] addresses;
+    private final String[] texts;
+    private final byte[][] patterns;
+    private final int[][] shifts;
+    private final boolean usesAddress;
+
+    private PayloadFilter(int[] program, List<long[]> addresses, List<String> texts) {
+        this.program = program;
+        this.addresses = addresses.toArray(new long[addresses.size()][]);
+        this.texts = texts.toArray(new String[texts.size()]);
+        usesAddress = !addresses.isEmpty();
+
+        patterns = new byte[texts.size()][];
+        shifts = new int[texts.size()][];
+        for (int i = 0; i < texts.size(); i++) {
+            byte[] pattern = texts.get(i).getBytes(UTF_8);
+            for (int j = 0; j < pattern.length; j++) {
+                pattern[j] = FOLD[pattern[j] & 0xff];
+            }
+
+            // Horspool: how far the window moves when its last byte is a given one.
+            int[] shift = new int[256];
+            Arrays.fill(shift, pattern.length);
+            for (int j = 0; j < pattern.length - 1; j++) {
+                shift[pattern[j] & 0xff] = pattern.length - 1 - j;
+            }
+            patterns[i] = pattern;
+            shifts[i] = shift;
+        }
+    }
+
+    /**
+     * Compile rules into a filter accepting records that match any of them.
+     */
+    public static PayloadFilter compile(Rule... rules) {
+        return compile(Arrays.asList(rules));
+    }
+
+    public static PayloadFilter compile(List<Rule> rules) {
+        List<long[]> addresses = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        int[] program = new int[0];
+        int pc = 0;
+
+        for (Rule rule : rules) {
+            int[] instructions = new int[6 * INSTRUCTION_SIZE];
+            int count = 0;
+            if (rule.minRssi != Integer.MIN_VALUE) {
+                count = emit(instructions, count, OP_RSSI, rule.minRssi, 0);
+            }
+            if (rule.packetTypes != -1) {
+                count = emit(instructions, count, OP_PACKET_TYPES, rule.packetTypes, 0);
+            }
+            if (rule.addresses != null) {
+                addresses.add(rule.addresses);
+                count = emit(instructions, count, OP_ADDRESS, addresses.size() - 1, 0);
+            }
+            if (rule.structTypes != -1) {
+                count = emit(instructions, count, OP_STRUCT_TYPES, rule.structTypes, 0);
+            }
+            if (rule.text != null) {
+                texts.add(rule.text);
+                count = emit(instructions, count, OP_CONTAINS, texts.size() - 1, rule.textStructTypes);
+            }
+            count = emit(instructions, count, OP_ACCEPT, 0, 0);
+
+            // Every check of the rule fails over to the start of the next one.
+            int next = pc + count;
+            for (int i = 0; i < count; i += INSTRUCTION_SIZE) {
+                instructions[i + 1] = next;
+            }
+            program = Arrays.copyOf(program, next);
+            System.arraycopy(instructions, 0, program, pc, count);
+            pc = next;
+        }
+        return new PayloadFilter(program, addresses, texts);
+    }
+
+    private static int emit(int[] instructions, int count, int op, int a, int b) {
+        instructions[count] = op;
+        instructions[count + 2] = a;
+        instructions[count + 3] = b;
+        return count + INSTRUCTION_SIZE;
+    }
+
+    /**
+     * Whether there are no rules, so callers can skip matching altogether.
+     */
+    public boolean acceptsAll() {
+        return program.length == 0;
+    }
+
+    /**
+     * Whether any rule checks the device address, so callers can skip parsing it otherwise.
+     */
+    public boolean usesAddress() {
+        return usesAddress;
+    }
+
+    /**
+     * Return whether a scan record matches any rule. Never allocates, unless compressed struct data
+     * has to be searched for text.
+     *
+     * @param scanRecord raw scan record, or null
+     * @param address device address, only read by rules with addresses
+     */
+    public boolean matches(byte[] scanRecord, long address, int rssi) {
+        if (program.length == 0) {
+            return true;
+        }
+
+        boolean hasPayload = scanRecord != null
+                && scanRecord.length >= PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH;
+        int pc = 0;
+        while (pc < program.length) {
+            int a = program[pc + 2];
+            boolean matched;
+            switch (program[pc]) {
+                case OP_RSSI:
+                    matched = rssi >= a;
+                    break;
+                case OP_PACKET_TYPES:
+                    matched = hasPayload && (a & typeBit(scanRecord[PayloadView.PAYLOAD_OFFSET])) != 0;
+                    break;
+                case OP_ADDRESS:
+                    matched = Arrays.binarySearch(addresses[a], address) >= 0;
+                    break;
+                case OP_STRUCT_TYPES:
+                    matched = hasPayload && (a & structTypes(scanRecord)) != 0;
+                    break;
+                case OP_CONTAINS:
+                    matched = hasPayload && contains(scanRecord, a, program[pc + 3]);
+                    break;
+                default:
+                    return true;
+            }
+            pc = matched ? pc + INSTRUCTION_SIZE : program[pc + 1];
+        }
+        return false;
+    }
+
+    private static int typeBit(int value) {
+        return value >= 0 && value < 32 ? 1 << value : 0;
+    }
+
+    // Bits of the struct type values in a payload, walking the struct headers as far as they are valid.
+    private static int structTypes(byte[] scanRecord) {
+        int types = 0;
+        int end = PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH;
+        int pos = PayloadView.PAYLOAD_OFFSET + 1;
+        while (pos + 1 < end) {
+            int structLength = scanRecord[pos];
+            if (structLength <= 0 || pos + 1 + structLength > end) {
+                break;
+            }
+            types |= typeBit(scanRecord[pos + 1]);
+            pos += 1 + structLength;
+        }
+        return types;
+    }
+
+    private boolean contains(byte[] scanRecord, int text, int structTypes) {
+        int end = PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH;
+        int pos = PayloadView.PAYLOAD_OFFSET + 1;
+        while (pos + 1 < end) {
+            int structLength = scanRecord[pos];
+            if (structLength <= 0 || pos + 1 + structLength > end) {
+                break;
+            }
+            int structType = scanRecord[pos + 1];
+            if ((structTypes & typeBit(structType)) != 0) {
+                int offset = pos + 2;
+                int length = structLength - 1;
+                if (structType < PayloadView.STRUCT_TYPE_COUNT && StructCodecs.get(structType) != null) {
+                    if (containsIgnoreAsciiCase(StructCodecs.decode(structType, scanRecord, offset, length), texts[text])) {
+                        return true;
+                    }
+                } else if (indexOf(scanRecord, offset, length, patterns[text], shifts[text]) >= 0) {
+                    return true;
+                }
+            }
+            pos += 1 + structLength;
+        }
+        return false;
+    }
+
+    /**
+     * Return where a folded pattern first occurs in bytes, ignoring ASCII case, or -1.
+     */
+    static int indexOf(byte[] bytes, int offset, int length, byte[] pattern, int[] shift) {
+        int last = pattern.length - 1;
+        int i = offset;
+        int end = offset + length - pattern.length;
+        while (i <= end) {
+            int j = last;
+            while (FOLD[bytes[i + j] & 0xff] == pattern[j]) {
+                if (j-- == 0) {
+                    return i;
+                }
+            }
+            i += shift[FOLD[bytes[i + last] & 0xff] & 0xff];
+        }
+        return -1;
+    }
+
+    // Folds like indexOf does the raw bytes, as String.regionMatches would fold other letters too.
+    static boolean containsIgnoreAsciiCase(String s, String text) {
+        for (int i = 0; i + text.length() <= s.length(); i++) {
+            int j = 0;
+            while (j < text.length() && fold(s.charAt(i + j)) == fold(text.charAt(j))) {
+                j++;
+            }
+            if (j == text.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static char fold(char c) {
+        return c < 128 ? (char) FOLD[c] : c;
+    }
+}
@@ -0,0 +1,152 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.Arrays;
+
+/**
+ * Remembers raw payloads that were already parsed, by a 64-bit fingerprint of their 26 bytes.
+ * Maps each fingerprint to the {@link PayloadKeys} key of its packet, so a repeated advertisement
+ * can be found in the {@link PacketStore} without walking its structs.
+ * Open addressing table with linear probing on primitive longs, nothing is boxed.
+ */
+public class PayloadFingerprints {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Default upper bound on remembered payloads, the table is reset once it is reached.
+     */
+    public static final int MAX_SIZE = 1 << 16;
+
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private final int maxSize;
+
+    private long[] fingerprints;
+    private long[] keys;
+    private boolean[] used;
+    private int size;
+
+    public PayloadFingerprints() {
+        this(MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize number of payloads remembered before the table is reset, or {@link #UNBOUNDED}
+     */
+    public PayloadFingerprints(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size");
+        }
+        this.maxSize = maxSize;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Return the fingerprint of the packet payload of a scan record. The record must hold
+     * at least {@link PayloadView#PAYLOAD_OFFSET} + {@link PayloadView#PAYLOAD_LENGTH} bytes.
+     */
+    public static long of(byte[] scanRecord) {
+        return of(scanRecord, PayloadView.PAYLOAD_OFFSET);
+    }
+
+    /**
+     * Return the fingerprint of the {@link PayloadView#PAYLOAD_LENGTH} bytes starting at offset.
+     */
+    public static long of(byte[] bytes, int offset) {
+        long h = 0x27d4eb2f165667c5L;
+        h = mix(h, readLong(bytes, offset));
+        h = mix(h, readLong(bytes, offset + 8));
+        h = mix(h, readLong(bytes, offset + 16));
+        h = mix(h, (bytes[offset + 24] & 0xff) | (bytes[offset + 25] & 0xff) << 8);
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Return the slot holding a fingerprint, otherwise return -1.
+     */
+    public int indexOf(long fingerprint) {
+        int mask = fingerprints.length - 1;
+        for (int i = spread(fingerprint) & mask; used[i]; i = (i + 1) & mask) {
+            if (fingerprints[i] == fingerprint) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getKey(int slot) {
+        return keys[slot];
+    }
+
+    public void put(long fingerprint, long key) {
+        if (size >= maxSize) {
+            clear();
+        } else if (size * 2 >= fingerprints.length) {
+            grow();
+        }
+
+        int mask = fingerprints.length - 1;
+        int i = spread(fingerprint) & mask;
+        while (used[i]) {
+            if (fingerprints[i] == fingerprint) {
+                keys[i] = key;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        fingerprints[i] = fingerprint;
+        keys[i] = key;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void allocate(int capacity) {
+        fingerprints = new long[capacity];
+        keys = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    private void grow() {
+        long[] oldFingerprints = fingerprints;
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+
+        allocate(oldFingerprints.length * 2);
+        size = 0;
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                put(oldFingerprints[i], oldKeys[i]);
+            }
+        }
+    }
+
+    private static long readLong(byte[] b, int i) {
+        return (b[i] & 0xffL)
+                | (b[i + 1] & 0xffL) << 8
+                | (b[i + 2] & 0xffL) << 16
+                | (b[i + 3] & 0xffL) << 24
+                | (b[i + 4] & 0xffL) << 32
+                | (b[i + 5] & 0xffL) << 40
+                | (b[i + 6] & 0xffL) << 48
+                | (b[i + 7] & 0xffL) << 56;
+    }
+
+    private static long mix(long h, long word) {
+        h ^= word * 0xc2b2ae3d27d4eb4fL;
+        h = Long.rotateLeft(h, 31) * 0x9e3779b97f4a7c15L;
+        return h;
+    }
+
+    private static int spread(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+}
@@ -0,0 +1,80 @@
+package kr.hs.gshs.blescanner;
+
+/**
+ * Computes stable 64-bit content hashes of packets, used as keys by {@link PacketStore}.
+ * The hash covers the packet type and the type and UTF-8 bytes of each struct, so it can be taken
+ * from the raw payload, or from a parsed packet by hashing the same values in the same order.
+ * Struct types with a {@link StructCodec} are hashed by their decoded text, which the view decodes.
+ */
+public class PayloadKeys {
+
+    /**
+     * Key shared by every unsupported packet, as they all compare equal.
+     */
+    public static final long UNSUPPORTED = 0L;
+
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    private PayloadKeys() {
+    }
+
+    /**
+     * Return the key of the packet a view currently points at, decoding only compressed struct data.
+     */
+    public static long of(PayloadView view) {
+        if (!view.isSupportedPacket()) {
+            return UNSUPPORTED;
+        }
+
+        byte[] bytes = view.getBytes();
+        long h = FNV_OFFSET_BASIS;
+        h = (h ^ bytes[PayloadView.PAYLOAD_OFFSET]) * FNV_PRIME;
+
+        for (int i = 0; i < view.getStructCount(); i++) {
+            int offset = view.getStructDataOffset(i);
+            int length = view.getStructDataLength(i);
+            h = (h ^ bytes[offset - 1]) * FNV_PRIME;
+            if (StructCodecs.get(view.getStructTypeValue(i)) != null) {
+                h = hashUtf8(h, view.getStructData(i));
+                continue;
+            }
+            for (int j = offset; j < offset + length; j++) {
+                h = (h ^ (bytes[j] & 0xff)) * FNV_PRIME;
+            }
+            h = (h ^ length) * FNV_PRIME;
+        }
+
+        return h == UNSUPPORTED ? 1L : h;
+    }
+
+    // Hash the UTF-8 encoding of s followed by its length in bytes, without allocating.
+    static long hashUtf8(long h, String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            int c = s.charAt(i);
+            if (c < 0x80) {
+                h = (h ^ c) * FNV_PRIME;
+                length += 1;
+            } else if (c < 0x800) {
+                h = (h ^ (0xc0 | (c >> 6))) * FNV_PRIME;
+                h = (h ^ (0x80 | (c & 0x3f))) * FNV_PRIME;
+                length += 2;
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint((char) c, s.charAt(++i));
+                h = (h ^ (0xf0 | (cp >> 18))) * FNV_PRIME;
+                h = (h ^ (0x80 | ((cp >> 12) & 0x3f))) * FNV_PRIME;
+                h = (h ^ (0x80 | ((cp >> 6) & 0x3f))) * FNV_PRIME;
+                h = (h ^ (0x80 | (cp & 0x3f))) * FNV_PRIME;
+                length += 4;
+            } else {
+                h = (h ^ (0xe0 | (c >> 12))) * FNV_PRIME;
+                h = (h ^ (0x80 | ((c >> 6) & 0x3f))) * FNV_PRIME;
+                h = (h ^ (0x80 | (c & 0x3f))) * FNV_PRIME;
+                length += 3;
+            }
+        }
+        return (h ^ length) * FNV_PRIME;
+    }
+}
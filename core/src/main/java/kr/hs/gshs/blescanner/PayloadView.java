@@ -0,0 +1,142 @@
+package kr.hs.gshs.blescanner;
+
+/**
+ * Reusable flyweight over the bytes of a scan record, decoding packets in place.
+ * Reads the same wire format as ScanResultParser, but only the struct headers are walked
+ * when wrapping, and struct data is turned into a String only when it is read, decoding
+ * TEXT_RLE and TEXT_HUFFMAN_CODING data rather than showing it raw. Types are read as their
+ * wire values, the ordinals of the protocol library's PacketTypes and StructTypes.
+ */
+public class PayloadView {
+
+    /**
+     * Offset of the packet payload in a scan record, right after the flags and manufacturer data headers.
+     */
+    public static final int PAYLOAD_OFFSET = 5;
+
+    /**
+     * Length of the packet payload in a scan record.
+     */
+    public static final int PAYLOAD_LENGTH = 26;
+
+    /**
+     * Number of packet types, valid packet type values are below it.
+     */
+    public static final int PACKET_TYPE_COUNT = 4;
+
+    /**
+     * Number of struct types, valid struct type values are below it.
+     */
+    public static final int STRUCT_TYPE_COUNT = 7;
+
+    // Each struct takes at least a length and a type byte.
+    private static final int MAX_STRUCTS = (PAYLOAD_LENGTH - 1) / 2;
+
+    private byte[] bytes;
+    private boolean isSupportedPacket;
+    private int structCount;
+
+    // Offset of the length byte of each struct in bytes.
+    private final int[] structOffsets = new int[MAX_STRUCTS];
+    private final String[] structData = new String[MAX_STRUCTS];
+
+    /**
+     * Point the view at a scan record and validate its structs. Returns {@link #isSupportedPacket()}.
+     */
+    public boolean wrap(byte[] scanRecord) {
+        bytes = scanRecord;
+        for (int i = 0; i < structCount; i++) {
+            structData[i] = null;
+        }
+        structCount = 0;
+        isSupportedPacket = validate();
+        if (!isSupportedPacket) {
+            structCount = 0;
+        }
+        return isSupportedPacket;
+    }
+
+    private boolean validate() {
+        if (bytes == null || bytes.length < PAYLOAD_OFFSET + PAYLOAD_LENGTH) {
+            return false;
+        }
+
+        int end = PAYLOAD_OFFSET + PAYLOAD_LENGTH;
+        int packetType = bytes[PAYLOAD_OFFSET];
+        if (packetType < 0 || packetType >= PACKET_TYPE_COUNT) {
+            return false;
+        }
+
+        int pos = PAYLOAD_OFFSET + 1;
+        while (pos < end) {
+            int structLength = bytes[pos];
+            if (structLength <= 0) {
+                break;
+            }
+            if (pos + 1 >= end) {
+                return false;
+            }
+            int structType = bytes[pos + 1];
+            if (structType < 0 || structType >= STRUCT_TYPE_COUNT) {
+                return false;
+            }
+            if (pos + 1 + structLength > end) {
+                return false;
+            }
+
+            structOffsets[structCount++] = pos;
+            pos += 1 + structLength;
+        }
+        return true;
+    }
+
+    public boolean isSupportedPacket() {
+        return isSupportedPacket;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Return the packet type value, or -1 if the packet isn't supported.
+     */
+    public int getPacketTypeValue() {
+        return isSupportedPacket ? bytes[PAYLOAD_OFFSET] : -1;
+    }
+
+    public int getStructCount() {
+        return structCount;
+    }
+
+    /**
+     * Return the length of a struct as it is on the wire, the type byte plus the data.
+     */
+    public int getStructLength(int index) {
+        return bytes[structOffsets[index]];
+    }
+
+    public int getStructTypeValue(int index) {
+        return bytes[structOffsets[index] + 1];
+    }
+
+    public int getStructDataOffset(int index) {
+        return structOffsets[index] + 2;
+    }
+
+    public int getStructDataLength(int index) {
+        return bytes[structOffsets[index]] - 1;
+    }
+
+    /**
+     * Return the data of a struct, decoding it with its {@link StructCodecs} codec on first access.
+     */
+    public String getStructData(int index) {
+        String data = structData[index];
+        if (data == null) {
+            data = StructCodecs.decode(getStructTypeValue(index), bytes, getStructDataOffset(index), getStructDataLength(index));
+            structData[index] = data;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,149 @@
+package kr.hs.gshs.blescanner;
+
+/**
+ * Counters and latency histograms of the scan pipeline, from scan callbacks to packets on screen.
+ * Recording never allocates or locks, and counters are striped so the threads reporting to them
+ * don't contend. Read them as text through a {@link MetricsReporter}.
+ */
+public class PipelineMetrics {
+
+    private final StripedCounter callbacks = new StripedCounter();
+    private final StripedCounter filtered = new StripedCounter();
+    private final StripedCounter duplicates = new StripedCounter();
+    private final StripedCounter newPackets = new StripedCounter();
+    private final StripedCounter refreshes = new StripedCounter();
+    private final StripedCounter notifications = new StripedCounter();
+
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram screenLatency = new LatencyHistogram();
+
+    private volatile int storeSize;
+    private volatile long evictedCount;
+    private volatile long droppedCount;
+
+    // Latest packet timestamp shown, only touched by the thread calling onShown.
+    private long shownTimestamp;
+
+    /**
+     * @param startNanos elapsed realtime now, packets last seen before aren't timed to the screen
+     */
+    public PipelineMetrics(long startNanos) {
+        shownTimestamp = startNanos;
+    }
+
+    /**
+     * Scan results delivered by the scanner.
+     */
+    public void onCallbacks(int count) {
+        callbacks.add(count);
+    }
+
+    /**
+     * Scan results rejected by a {@link PayloadFilter}, never queued.
+     */
+    public void onFiltered(int count) {
+        filtered.add(count);
+    }
+
+    /**
+     * A record whose packet was already in the store, by payload fingerprint or key.
+     */
+    public void onDuplicate() {
+        duplicates.increment();
+    }
+
+    /**
+     * A record that had to be parsed, and how long that and applying it to the store took.
+     */
+    public void onParsed(long nanos, boolean newPacket) {
+        parseLatency.record(nanos);
+        if (newPacket) {
+            newPackets.increment();
+        } else {
+            duplicates.increment();
+        }
+    }
+
+    /**
+     * The store was published, with the ingestor's totals so far.
+     */
+    public void onPublished(int storeSize, long evictedCount, long droppedCount) {
+        this.storeSize = storeSize;
+        this.evictedCount = evictedCount;
+        this.droppedCount = droppedCount;
+        refreshes.increment();
+    }
+
+    public void onNotification() {
+        notifications.increment();
+    }
+
+    /**
+     * A snapshot went on screen, times every packet seen since the previous one from its scan
+     * timestamp. Call from one thread.
+     *
+     * @param now elapsed realtime in nanoseconds, the clock of scan result timestamps
+     */
+    public void onShown(PacketSnapshot<?> snapshot, long now) {
+        long shown = shownTimestamp;
+        long latest = shown;
+        for (int i = 0; i < snapshot.size(); i++) {
+            long timestamp = snapshot.getTimestamp(i);
+            if (timestamp > shown) {
+                screenLatency.record(now - timestamp);
+                latest = Math.max(latest, timestamp);
+            }
+        }
+        shownTimestamp = latest;
+    }
+
+    public long getCallbackCount() {
+        return callbacks.sum();
+    }
+
+    public long getFilteredCount() {
+        return filtered.sum();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    public long getNewPacketCount() {
+        return newPackets.sum();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    public long getNotificationCount() {
+        return notifications.sum();
+    }
+
+    public int getStoreSize() {
+        return storeSize;
+    }
+
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Time to parse a record and apply it to the store, for records not found by fingerprint.
+     */
+    public LatencyHistogram getParseLatency() {
+        return parseLatency;
+    }
+
+    /**
+     * Time from a scan result's timestamp to its packet being on screen.
+     */
+    public LatencyHistogram getScreenLatency() {
+        return screenLatency;
+    }
+}
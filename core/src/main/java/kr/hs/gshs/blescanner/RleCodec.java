@@ -0,0 +1,62 @@
+package kr.hs.gshs.blescanner;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Codec of TEXT_RLE struct data: pairs of a run length, 1 to 255, and the byte repeated, which
+ * expand to UTF-8 text. Decoding sizes the output in a first pass, so it allocates the expanded bytes
+ * once, at their final length, and then the text.
+ */
+public class RleCodec implements StructCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAX_RUN = 255;
+
+    @Override
+    public String decode(byte[] bytes, int offset, int length) {
+        if (length % 2 != 0) {
+            return null;
+        }
+
+        int end = offset + length;
+        int decodedLength = 0;
+        for (int i = offset; i < end; i += 2) {
+            int run = bytes[i] & 0xff;
+            if (run == 0) {
+                return null;
+            }
+            decodedLength += run;
+        }
+
+        byte[] decoded = new byte[decodedLength];
+        int pos = 0;
+        for (int i = offset; i < end; i += 2) {
+            int run = bytes[i] & 0xff;
+            Arrays.fill(decoded, pos, pos + run, bytes[i + 1]);
+            pos += run;
+        }
+        return new String(decoded, UTF_8);
+    }
+
+    @Override
+    public int encode(byte[] text, int textOffset, int textLength, byte[] out, int offset, int maxLength) {
+        int pos = offset;
+        int end = offset + maxLength;
+        int textEnd = textOffset + textLength;
+        for (int i = textOffset; i < textEnd; ) {
+            int run = 1;
+            while (run < MAX_RUN && i + run < textEnd && text[i + run] == text[i]) {
+                run++;
+            }
+            if (pos + 2 > end) {
+                return -1;
+            }
+            out[pos++] = (byte) run;
+            out[pos++] = text[i];
+            i += run;
+        }
+        return pos - offset;
+    }
+}
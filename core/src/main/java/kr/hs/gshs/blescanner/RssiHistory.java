@@ -0,0 +1,255 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RSSI over time of one beacon, in a fixed amount of memory. Sightings of the last minute are kept raw,
+ * older ones only as min, max and mean buckets of growing length, each tier downsampling the one before:
+ * 10 second buckets for 10 minutes, 1 minute buckets for an hour and 10 minute buckets for a day.
+ * Everything lives in primitive ring buffers, recording a sighting never allocates. Smoothed RSSI and
+ * recency are kept up to date as sightings come in, so both are answered in constant time.
+ * Sightings should come in timestamp order, one older than the current bucket counts towards it.
+ * Not thread safe.
+ */
+public class RssiHistory {
+
+    /**
+     * How long sightings are kept raw.
+     */
+    public static final long RAW_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Most raw sightings kept, older ones within the window are dropped past it.
+     */
+    public static final int RAW_CAPACITY = 256;
+
+    /**
+     * How quickly the smoothed RSSI follows changes, a sighting this long after the previous one
+     * moves it halfway to the new value.
+     */
+    public static final long SMOOTHING_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private static final long[] BUCKET_NANOS = {
+            TimeUnit.SECONDS.toNanos(10), TimeUnit.MINUTES.toNanos(1), TimeUnit.MINUTES.toNanos(10)};
+    private static final int[] BUCKET_CAPACITY = {60, 60, 144};
+
+    public static final int TIER_COUNT = BUCKET_NANOS.length;
+
+    private final long[] rawTimestamps = new long[RAW_CAPACITY];
+    private final short[] rawRssi = new short[RAW_CAPACITY];
+    private int rawHead;
+    private int rawSize;
+
+    // Closed buckets of each tier, oldest first from the head.
+    private final long[][] bucketStarts = new long[TIER_COUNT][];
+    private final short[][] bucketMins = new short[TIER_COUNT][];
+    private final short[][] bucketMaxs = new short[TIER_COUNT][];
+    private final short[][] bucketMeans = new short[TIER_COUNT][];
+    private final int[][] bucketCounts = new int[TIER_COUNT][];
+    private final int[] bucketHeads = new int[TIER_COUNT];
+    private final int[] bucketSizes = new int[TIER_COUNT];
+
+    // The bucket each tier is filling, with no sightings yet if its count is 0.
+    private final long[] openStarts = new long[TIER_COUNT];
+    private final int[] openMins = new int[TIER_COUNT];
+    private final int[] openMaxs = new int[TIER_COUNT];
+    private final long[] openSums = new long[TIER_COUNT];
+    private final int[] openCounts = new int[TIER_COUNT];
+
+    private long lastTimestamp = Long.MIN_VALUE;
+    private double smoothedRssi;
+    private long sightingCount;
+
+    public RssiHistory() {
+        for (int tier = 0; tier < TIER_COUNT; tier++) {
+            int capacity = BUCKET_CAPACITY[tier];
+            bucketStarts[tier] = new long[capacity];
+            bucketMins[tier] = new short[capacity];
+            bucketMaxs[tier] = new short[capacity];
+            bucketMeans[tier] = new short[capacity];
+            bucketCounts[tier] = new int[capacity];
+        }
+    }
+
+    /**
+     * Return a copy that doesn't change as sightings are recorded.
+     */
+    public RssiHistory copy() {
+        RssiHistory copy = new RssiHistory();
+        System.arraycopy(rawTimestamps, 0, copy.rawTimestamps, 0, RAW_CAPACITY);
+        System.arraycopy(rawRssi, 0, copy.rawRssi, 0, RAW_CAPACITY);
+        copy.rawHead = rawHead;
+        copy.rawSize = rawSize;
+        for (int tier = 0; tier < TIER_COUNT; tier++) {
+            int capacity = BUCKET_CAPACITY[tier];
+            System.arraycopy(bucketStarts[tier], 0, copy.bucketStarts[tier], 0, capacity);
+            System.arraycopy(bucketMins[tier], 0, copy.bucketMins[tier], 0, capacity);
+            System.arraycopy(bucketMaxs[tier], 0, copy.bucketMaxs[tier], 0, capacity);
+            System.arraycopy(bucketMeans[tier], 0, copy.bucketMeans[tier], 0, capacity);
+            System.arraycopy(bucketCounts[tier], 0, copy.bucketCounts[tier], 0, capacity);
+        }
+        System.arraycopy(bucketHeads, 0, copy.bucketHeads, 0, TIER_COUNT);
+        System.arraycopy(bucketSizes, 0, copy.bucketSizes, 0, TIER_COUNT);
+        System.arraycopy(openStarts, 0, copy.openStarts, 0, TIER_COUNT);
+        System.arraycopy(openMins, 0, copy.openMins, 0, TIER_COUNT);
+        System.arraycopy(openMaxs, 0, copy.openMaxs, 0, TIER_COUNT);
+        System.arraycopy(openSums, 0, copy.openSums, 0, TIER_COUNT);
+        System.arraycopy(openCounts, 0, copy.openCounts, 0, TIER_COUNT);
+        copy.lastTimestamp = lastTimestamp;
+        copy.smoothedRssi = smoothedRssi;
+        copy.sightingCount = sightingCount;
+        return copy;
+    }
+
+    /**
+     * Record a sighting at a timestamp in nanoseconds, on the clock of scan result timestamps.
+     */
+    public void record(long timestamp, int rssi) {
+        if (sightingCount == 0) {
+            smoothedRssi = rssi;
+        } else {
+            // First order low pass, weighing the new value by how long it stood.
+            double elapsed = Math.max(0, timestamp - lastTimestamp);
+            smoothedRssi += (rssi - smoothedRssi) * elapsed / (elapsed + SMOOTHING_NANOS);
+        }
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        sightingCount++;
+
+        // Raw ring, dropping sightings that left the window or don't fit.
+        while (rawSize > 0 && (rawSize == RAW_CAPACITY || lastTimestamp - rawTimestamps[rawHead] > RAW_WINDOW_NANOS)) {
+            rawHead = (rawHead + 1) % RAW_CAPACITY;
+            rawSize--;
+        }
+        int tail = (rawHead + rawSize) % RAW_CAPACITY;
+        rawTimestamps[tail] = timestamp;
+        rawRssi[tail] = (short) rssi;
+        rawSize++;
+
+        add(0, timestamp, rssi, rssi, rssi, 1);
+    }
+
+    // Add sightings to the open bucket of a tier, closing it first if they are past its end.
+    private void add(int tier, long timestamp, int min, int max, long sum, int count) {
+        long bucketNanos = BUCKET_NANOS[tier];
+        if (openCounts[tier] > 0 && timestamp - openStarts[tier] >= bucketNanos) {
+            close(tier);
+        }
+        if (openCounts[tier] == 0) {
+            openStarts[tier] = timestamp - ((timestamp % bucketNanos) + bucketNanos) % bucketNanos;
+            openMins[tier] = min;
+            openMaxs[tier] = max;
+            openSums[tier] = sum;
+            openCounts[tier] = count;
+            return;
+        }
+        openMins[tier] = Math.min(openMins[tier], min);
+        openMaxs[tier] = Math.max(openMaxs[tier], max);
+        openSums[tier] += sum;
+        openCounts[tier] += count;
+    }
+
+    private void close(int tier) {
+        int capacity = BUCKET_CAPACITY[tier];
+        int slot;
+        if (bucketSizes[tier] == capacity) {
+            slot = bucketHeads[tier];
+            bucketHeads[tier] = (slot + 1) % capacity;
+        } else {
+            slot = (bucketHeads[tier] + bucketSizes[tier]++) % capacity;
+        }
+        bucketStarts[tier][slot] = openStarts[tier];
+        bucketMins[tier][slot] = (short) openMins[tier];
+        bucketMaxs[tier][slot] = (short) openMaxs[tier];
+        bucketMeans[tier][slot] = (short) Math.round((double) openSums[tier] / openCounts[tier]);
+        bucketCounts[tier][slot] = openCounts[tier];
+
+        if (tier + 1 < TIER_COUNT) {
+            add(tier + 1, openStarts[tier], openMins[tier], openMaxs[tier], openSums[tier], openCounts[tier]);
+        }
+        openCounts[tier] = 0;
+    }
+
+    public long getSightingCount() {
+        return sightingCount;
+    }
+
+    /**
+     * Return the timestamp of the latest sighting, or Long.MIN_VALUE if there were none.
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Return whether the beacon was seen at most windowNanos before now.
+     */
+    public boolean wasSeenWithin(long now, long windowNanos) {
+        return sightingCount > 0 && now - lastTimestamp <= windowNanos;
+    }
+
+    /**
+     * Return the RSSI smoothed over the last few seconds of sightings, see {@link #SMOOTHING_NANOS}.
+     */
+    public double getSmoothedRssi() {
+        return smoothedRssi;
+    }
+
+    /**
+     * Number of raw sightings, those of the last minute up to {@link #RAW_CAPACITY}.
+     */
+    public int getRawCount() {
+        return rawSize;
+    }
+
+    /**
+     * Return the timestamp of a raw sighting, oldest first.
+     */
+    public long getRawTimestamp(int index) {
+        return rawTimestamps[(rawHead + index) % RAW_CAPACITY];
+    }
+
+    public int getRawRssi(int index) {
+        return rawRssi[(rawHead + index) % RAW_CAPACITY];
+    }
+
+    public static long getBucketNanos(int tier) {
+        return BUCKET_NANOS[tier];
+    }
+
+    /**
+     * Number of closed buckets of a tier. The bucket still filling isn't counted.
+     */
+    public int getBucketCount(int tier) {
+        return bucketSizes[tier];
+    }
+
+    /**
+     * Return the start of a closed bucket of a tier, oldest first, a multiple of its length.
+     */
+    public long getBucketStart(int tier, int index) {
+        return bucketStarts[tier][slot(tier, index)];
+    }
+
+    public int getBucketMin(int tier, int index) {
+        return bucketMins[tier][slot(tier, index)];
+    }
+
+    public int getBucketMax(int tier, int index) {
+        return bucketMaxs[tier][slot(tier, index)];
+    }
+
+    public int getBucketMean(int tier, int index) {
+        return bucketMeans[tier][slot(tier, index)];
+    }
+
+    /**
+     * Return the number of sightings in a closed bucket of a tier.
+     */
+    public int getBucketSightings(int tier, int index) {
+        return bucketCounts[tier][slot(tier, index)];
+    }
+
+    private int slot(int tier, int index) {
+        return (bucketHeads[tier] + index) % BUCKET_CAPACITY[tier];
+    }
+}
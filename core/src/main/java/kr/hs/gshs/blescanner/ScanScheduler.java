@@ -0,0 +1,209 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides when and how hard to scan, in place of scanning at low latency all the time.
+ * While the results are on screen, scans at low latency if new packets keep showing up and balanced
+ * otherwise. In the background, scans at low power in short windows separated by off windows, which
+ * get longer while no new packets are found and shorter once they are. Doesn't scan at all if every
+ * packet type is blocked, as the scan filters would let nothing through.
+ * Not thread-safe, except for {@link #recordNewPackets(int)}, driven by calling {@link #tick()}.
+ */
+public class ScanScheduler {
+
+    public enum Mode {
+        OFF, LOW_POWER, BALANCED, LOW_LATENCY
+    }
+
+    /**
+     * Starts and stops the actual scan.
+     */
+    public interface Scanner {
+
+        /**
+         * Start scanning in the given mode, never {@link Mode#OFF}. The previous scan was stopped first.
+         */
+        void startScan(Mode mode);
+
+        void stopScan();
+    }
+
+    public static final long TICK_MILLIS = 5000;
+
+    // Android 7.0+ ignores apps starting scans more than 5 times in 30 s, so a running scan keeps its mode this long.
+    public static final long MIN_DWELL_MILLIS = 10000;
+
+    public static final long ON_WINDOW_MILLIS = 10000;
+    public static final long MIN_OFF_WINDOW_MILLIS = 20000;
+    public static final long MAX_OFF_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * New packets per second from which results on screen are scanned at low latency.
+     */
+    public static final double BUSY_NEW_PACKET_RATE = 0.5;
+
+    // Weight of the latest tick in the new packet rate average.
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private final Scanner scanner;
+    private final Clock clock;
+
+    private boolean enabled;
+    private boolean foreground;
+    private boolean screenOn = true;
+    private boolean hasUnblockedTypes = true;
+
+    private Mode mode = Mode.OFF;
+    private long modeSince;
+
+    private final AtomicInteger pendingNewPackets = new AtomicInteger();
+    private double newPacketRate;
+    private int newPacketsInWindow;
+    private long lastTick;
+
+    private long offWindowNanos = TimeUnit.MILLISECONDS.toNanos(MIN_OFF_WINDOW_MILLIS);
+
+    public ScanScheduler(Scanner scanner, Clock clock) {
+        this.scanner = scanner;
+        this.clock = clock;
+        lastTick = clock.elapsedRealtimeNanos();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Smoothed number of new packets per second.
+     */
+    public double getNewPacketRate() {
+        return newPacketRate;
+    }
+
+    /**
+     * Count packets not seen before, can be called from any thread.
+     */
+    public void recordNewPackets(int count) {
+        pendingNewPackets.addAndGet(count);
+    }
+
+    /**
+     * Turn scanning on or off altogether, as the user asked.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            // Start right away rather than waiting out an off window.
+            offWindowNanos = TimeUnit.MILLISECONDS.toNanos(MIN_OFF_WINDOW_MILLIS);
+            modeSince = clock.elapsedRealtimeNanos() - offWindowNanos;
+        }
+        tick();
+    }
+
+    /**
+     * Whether the results are shown to the user.
+     */
+    public void setForeground(boolean foreground) {
+        this.foreground = foreground;
+        tick();
+    }
+
+    public void setScreenOn(boolean screenOn) {
+        this.screenOn = screenOn;
+        tick();
+    }
+
+    /**
+     * Whether any packet type isn't blocked, so a new packet could be notified.
+     */
+    public void setHasUnblockedTypes(boolean hasUnblockedTypes) {
+        this.hasUnblockedTypes = hasUnblockedTypes;
+        tick();
+    }
+
+    /**
+     * Restart the running scan in the same mode, so it picks up new scan filters.
+     */
+    public void restartScan() {
+        if (mode != Mode.OFF) {
+            scanner.stopScan();
+            scanner.startScan(mode);
+        }
+    }
+
+    /**
+     * Update the new packet rate and switch modes if needed. Returns the delay until the next tick.
+     */
+    public long tick() {
+        long now = clock.elapsedRealtimeNanos();
+
+        int count = pendingNewPackets.getAndSet(0);
+        long elapsed = now - lastTick;
+        if (elapsed > 0) {
+            double rate = count / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+            newPacketRate += RATE_SMOOTHING * (rate - newPacketRate);
+            lastTick = now;
+        }
+        newPacketsInWindow += count;
+
+        apply(decide(now), now);
+        return TICK_MILLIS;
+    }
+
+    private Mode decide(long now) {
+        if (!enabled) {
+            return Mode.OFF;
+        }
+
+        if (!hasUnblockedTypes) {
+            return Mode.OFF;
+        }
+
+        if (foreground && screenOn) {
+            return newPacketRate >= BUSY_NEW_PACKET_RATE ? Mode.LOW_LATENCY : Mode.BALANCED;
+        }
+
+        long inMode = now - modeSince;
+        if (mode == Mode.OFF) {
+            return inMode >= offWindowNanos ? Mode.LOW_POWER : Mode.OFF;
+        }
+        if (inMode < TimeUnit.MILLISECONDS.toNanos(ON_WINDOW_MILLIS)) {
+            // Keep the running scan for the rest of the window.
+            return mode;
+        }
+
+        // Window over, come back sooner if it found anything.
+        if (newPacketsInWindow > 0) {
+            offWindowNanos = Math.max(offWindowNanos / 2, TimeUnit.MILLISECONDS.toNanos(MIN_OFF_WINDOW_MILLIS));
+        } else {
+            offWindowNanos = Math.min(offWindowNanos * 2, TimeUnit.MILLISECONDS.toNanos(MAX_OFF_WINDOW_MILLIS));
+        }
+        return Mode.OFF;
+    }
+
+    private void apply(Mode target, long now) {
+        if (target == mode) {
+            return;
+        }
+        if (mode != Mode.OFF && target != Mode.OFF
+                && now - modeSince < TimeUnit.MILLISECONDS.toNanos(MIN_DWELL_MILLIS)) {
+            return;
+        }
+
+        if (mode != Mode.OFF) {
+            scanner.stopScan();
+        }
+        if (target != Mode.OFF) {
+            newPacketsInWindow = 0;
+            scanner.startScan(target);
+        }
+        mode = target;
+        modeSince = now;
+    }
+}
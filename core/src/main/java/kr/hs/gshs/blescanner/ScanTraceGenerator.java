@@ -0,0 +1,70 @@
+package kr.hs.gshs.blescanner;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes synthetic traces of dense beacon deployments, for load testing without a radio.
+ * Results arrive at an even rate, each from a random beacon. A beacon repeats the packet it last
+ * advertised with the duplicate ratio as probability, otherwise it advertises a changed one.
+ */
+public class ScanTraceGenerator {
+
+    // Static random addresses have the top two bits set.
+    private static final long ADDRESS_BASE = 0xc00000000000L;
+
+    private final int beacons;
+    private final double duplicateRatio;
+    private final Random random;
+
+    private final PayloadEncoder encoder = new PayloadEncoder();
+    private final int[] revisions;
+    private final int[] rssis;
+
+    /**
+     * @param duplicateRatio probability that a result repeats the beacon's last packet
+     */
+    public ScanTraceGenerator(int beacons, double duplicateRatio, long seed) {
+        if (beacons <= 0 || duplicateRatio < 0 || duplicateRatio > 1) {
+            throw new IllegalArgumentException("Invalid trace settings");
+        }
+        this.beacons = beacons;
+        this.duplicateRatio = duplicateRatio;
+        random = new Random(seed);
+        revisions = new int[beacons];
+        rssis = new int[beacons];
+        for (int beacon = 0; beacon < beacons; beacon++) {
+            rssis[beacon] = -45 - random.nextInt(50);
+        }
+    }
+
+    /**
+     * Write results at a rate for a duration, the first one at the start timestamp. Returns how many.
+     */
+    public int generate(ScanTraceWriter writer, int resultsPerSecond, long durationMillis, long startNanos)
+            throws IOException {
+        if (resultsPerSecond <= 0 || durationMillis < 0) {
+            throw new IllegalArgumentException("Invalid trace rate");
+        }
+        long count = durationMillis * resultsPerSecond / 1000;
+        double intervalNanos = (double) TimeUnit.SECONDS.toNanos(1) / resultsPerSecond;
+        for (long i = 0; i < count; i++) {
+            int beacon = random.nextInt(beacons);
+            if (random.nextDouble() >= duplicateRatio) {
+                revisions[beacon]++;
+            }
+
+            // Signal strength wanders a few dB around each beacon's own level.
+            int rssi = rssis[beacon] + random.nextInt(7) - 3;
+            writer.write(startNanos + (long) (i * intervalNanos), rssi, ADDRESS_BASE | beacon, record(beacon));
+        }
+        return (int) count;
+    }
+
+    private byte[] record(int beacon) {
+        encoder.begin(beacon % PayloadView.PACKET_TYPE_COUNT);
+        encoder.addStruct(StructCodecs.TEXT_UNCOMPRESSED, "beacon " + beacon + " #" + revisions[beacon]);
+        return encoder.finishScanRecord();
+    }
+}
@@ -0,0 +1,86 @@
+package kr.hs.gshs.blescanner;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a trace written by a {@link ScanTraceWriter}, one scan result at a time.
+ * A trace cut short while recording ends at its last complete result. Not thread safe.
+ */
+public class ScanTraceReader implements Closeable {
+
+    private final DataInputStream in;
+
+    private long timestampNanos;
+    private int rssi;
+    private long address;
+    private byte[] scanRecord;
+
+    /**
+     * Throws IOException if the stream doesn't start with a trace header.
+     */
+    public ScanTraceReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (this.in.readInt() != ScanTraceWriter.MAGIC || this.in.readInt() != ScanTraceWriter.VERSION) {
+                throw new IOException("Not a scan trace");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Not a scan trace", e);
+        }
+    }
+
+    /**
+     * Move to the next scan result, returns false at the end of the trace.
+     */
+    public boolean next() throws IOException {
+        try {
+            long timestamp = in.readLong();
+            int signal = in.readByte();
+            long deviceAddress = (long) in.readUnsignedShort() << 32 | in.readInt() & 0xffffffffL;
+            int length = in.readUnsignedShort();
+            byte[] record = null;
+            if (length != ScanTraceWriter.NO_SCAN_RECORD) {
+                record = new byte[length];
+                in.readFully(record);
+            }
+
+            timestampNanos = timestamp;
+            rssi = signal;
+            address = deviceAddress;
+            scanRecord = record;
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    public long getAddress() {
+        return address;
+    }
+
+    /**
+     * Return the raw scan record of the current result, or null if it had none.
+     * A new array for every result, so it can be handed on like ScanRecord.getBytes().
+     */
+    public byte[] getScanRecord() {
+        return scanRecord;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,107 @@
+package kr.hs.gshs.blescanner;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a trace of scan results, to replay them later with their original timing.
+ * A trace is a header followed by one record per scan result: its timestamp in nanoseconds,
+ * its RSSI, the 48-bit device address and the raw scan record bytes. Read it with a {@link ScanTraceReader}.
+ * Not thread safe.
+ */
+public class ScanTraceWriter implements Closeable {
+
+    static final int MAGIC = 0x42545243;
+    static final int VERSION = 1;
+
+    // Written as the record length of a result without a scan record.
+    static final int NO_SCAN_RECORD = 0xffff;
+
+    private final DataOutputStream out;
+    private long size;
+
+    public ScanTraceWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        size = 8;
+    }
+
+    /**
+     * Append a scan result.
+     *
+     * @param address device address as returned by {@link #parseAddress(String)}
+     * @param scanRecord raw scan record bytes, or null if the result had none
+     */
+    public void write(long timestampNanos, int rssi, long address, byte[] scanRecord) throws IOException {
+        if (scanRecord != null && scanRecord.length >= NO_SCAN_RECORD) {
+            throw new IllegalArgumentException("Scan record too long");
+        }
+        out.writeLong(timestampNanos);
+        out.writeByte(rssi);
+        out.writeShort((int) (address >>> 32));
+        out.writeInt((int) address);
+        if (scanRecord == null) {
+            out.writeShort(NO_SCAN_RECORD);
+        } else {
+            out.writeShort(scanRecord.length);
+            out.write(scanRecord);
+        }
+        size += 8 + 1 + 6 + 2 + (scanRecord == null ? 0 : scanRecord.length);
+    }
+
+    /**
+     * Number of bytes written so far, header included.
+     */
+    public long size() {
+        return size;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Return the 48-bit value of a device address like "00:11:22:AA:BB:CC".
+     */
+    public static long parseAddress(String address) {
+        // Digit by digit rather than splitting, as filters parse one per scan result.
+        long value = 0;
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c == ':') {
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                throw new NumberFormatException("Invalid address: " + address);
+            }
+            value = value << 4 | digit;
+        }
+        return value & 0xffffffffffffL;
+    }
+
+    /**
+     * Return a 48-bit device address in the "00:11:22:AA:BB:CC" form.
+     */
+    public static String formatAddress(long address) {
+        StringBuilder text = new StringBuilder(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            if (shift < 40) {
+                text.append(':');
+            }
+            int b = (int) (address >>> shift) & 0xff;
+            text.append(Character.toUpperCase(Character.forDigit(b >> 4, 16)))
+                    .append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+        }
+        return text.toString();
+    }
+}
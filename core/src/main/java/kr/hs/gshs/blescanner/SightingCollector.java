@@ -0,0 +1,321 @@
+package kr.hs.gshs.blescanner;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives the streams of many {@link SightingExporter}s and merges them into one {@link PacketStore}.
+ * Packets are keyed by their {@link PayloadKeys} key, as in each scanner's own store, so the same packet
+ * seen by several scanners is one entry, with the latest timestamp any of them saw it at.
+ * Streams are read one thread each, see {@link #start(ServerSocket)}, or fed directly through
+ * {@link #read(InputStream)}. Run as a program, it listens on a port and prints a summary now and then.
+ * Connections dropped on a bad stream are reported to a {@link Listener}, the collector prints nothing itself.
+ */
+public class SightingCollector implements Closeable {
+
+    public static final int DEFAULT_MAX_PACKETS = 100000;
+
+    // Frames longer than this can't come from an exporter.
+    static final int MAX_FRAME_SIZE = 1 << 24;
+
+    private static final long SUMMARY_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Told about connections dropped, called on the connection's reader thread.
+     */
+    public interface Listener {
+
+        /**
+         * A connection was dropped because its stream couldn't be read, what was read before is kept.
+         */
+        void onDropped(SocketAddress remote, IOException e);
+    }
+
+    // Scan records with the payload at PayloadView.PAYLOAD_OFFSET, timestamps in wall clock milliseconds.
+    private final PacketStore<byte[]> packets;
+    private final PayloadView view = new PayloadView();
+    private final Set<Long> scanners = new HashSet<>();
+    private long sightingCount;
+    private int connectionCount;
+
+    private final Set<Socket> sockets = new HashSet<>();
+    private ServerSocket serverSocket;
+    private volatile Listener listener;
+
+    public SightingCollector() {
+        this(DEFAULT_MAX_PACKETS);
+    }
+
+    /**
+     * @param maxPackets packets kept before the least recently seen one is evicted
+     */
+    public SightingCollector(int maxPackets) {
+        packets = new PacketStore<>(maxPackets, PacketStore.NO_TTL, false);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Accept connections on a server socket, reading each on a thread of its own until {@link #close()}.
+     */
+    public void start(final ServerSocket serverSocket) {
+        synchronized (sockets) {
+            this.serverSocket = serverSocket;
+        }
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    final Socket socket;
+                    try {
+                        socket = serverSocket.accept();
+                    } catch (IOException e) {
+                        return;
+                    }
+                    synchronized (sockets) {
+                        sockets.add(socket);
+                    }
+
+                    Thread reader = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                read(socket.getInputStream());
+                            } catch (IOException e) {
+                                Listener dropListener = listener;
+                                if (dropListener != null) {
+                                    dropListener.onDropped(socket.getRemoteSocketAddress(), e);
+                                }
+                            } finally {
+                                synchronized (sockets) {
+                                    sockets.remove(socket);
+                                }
+                                try {
+                                    socket.close();
+                                } catch (IOException e) {
+                                    // Done with it anyway.
+                                }
+                            }
+                        }
+                    }, "SightingCollector " + socket.getRemoteSocketAddress());
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+            }
+        }, "SightingCollector");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Read and merge the stream of one exporter until it ends.
+     * Throws IOException if it isn't an exporter stream or breaks off, what was read before is kept.
+     */
+    public void read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        long scannerId;
+        try {
+            if (in.readInt() != SightingExporter.MAGIC || in.readInt() != SightingExporter.VERSION) {
+                throw new IOException("Not a sighting stream");
+            }
+            scannerId = in.readLong();
+        } catch (EOFException e) {
+            throw new IOException("Not a sighting stream", e);
+        }
+        synchronized (this) {
+            scanners.add(scannerId);
+            connectionCount++;
+        }
+
+        // Keys of the payloads by their number on this connection.
+        long[] keys = new long[64];
+        byte[][] records = new byte[64][];
+        int payloadCount = 0;
+        byte[] frame = new byte[4096];
+
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            if (frame.length < length) {
+                frame = new byte[Math.max(frame.length * 2, length)];
+            }
+            in.readFully(frame, 0, length);
+
+            Frame reader = new Frame(frame, length);
+            if ((reader.readByte() & SightingExporter.FLAG_RESET_PAYLOADS) != 0) {
+                payloadCount = 0;
+            }
+
+            int newPayloads = (int) reader.readVarint();
+            for (int i = 0; i < newPayloads; i++) {
+                if (payloadCount == keys.length) {
+                    keys = Arrays.copyOf(keys, payloadCount * 2);
+                    records = Arrays.copyOf(records, payloadCount * 2);
+                }
+                byte[] record = new byte[PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH];
+                reader.readFully(record, PayloadView.PAYLOAD_OFFSET, PayloadView.PAYLOAD_LENGTH);
+                records[payloadCount] = record;
+                keys[payloadCount++] = key(record);
+            }
+
+            int sightings = (int) reader.readVarint();
+            long timestamp = 0;
+            synchronized (this) {
+                for (int i = 0; i < sightings; i++) {
+                    long number = reader.readVarint();
+                    long delta = reader.readVarint();
+                    timestamp += delta >>> 1 ^ -(delta & 1);
+                    if (number < 0 || number >= payloadCount) {
+                        throw new IOException("Unknown payload: " + number);
+                    }
+                    merge(keys[(int) number], records[(int) number], timestamp);
+                }
+                sightingCount += sightings;
+            }
+        }
+    }
+
+    private synchronized long key(byte[] record) {
+        view.wrap(record);
+        return PayloadKeys.of(view);
+    }
+
+    // Guarded by this.
+    private void merge(long key, byte[] record, long timestamp) {
+        int entry = packets.indexOf(key);
+        if (entry < 0) {
+            packets.add(key, record, timestamp);
+        } else {
+            packets.setTimestamp(entry, timestamp);
+        }
+    }
+
+    /**
+     * Return the merged packets, as scan records with their latest sighting in wall clock milliseconds.
+     */
+    public synchronized PacketSnapshot<byte[]> snapshot() {
+        return packets.snapshot();
+    }
+
+    /**
+     * Number of distinct scanners that connected so far.
+     */
+    public synchronized int getScannerCount() {
+        return scanners.size();
+    }
+
+    public synchronized int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Number of sightings merged so far, as sent, so repeats merged by the exporters count once.
+     */
+    public synchronized long getSightingCount() {
+        return sightingCount;
+    }
+
+    /**
+     * Stop accepting connections and drop the open ones, the merged packets are kept.
+     */
+    @Override
+    public void close() throws IOException {
+        Socket[] open;
+        ServerSocket server;
+        synchronized (sockets) {
+            open = sockets.toArray(new Socket[sockets.size()]);
+            server = serverSocket;
+        }
+        if (server != null) {
+            server.close();
+        }
+        for (Socket socket : open) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Listen on a port, {@link SightingExporter#DEFAULT_PORT} unless one is given, and print a summary
+     * of the merged packets every few seconds.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : SightingExporter.DEFAULT_PORT;
+        SightingCollector collector = new SightingCollector();
+        collector.setListener(new Listener() {
+            @Override
+            public void onDropped(SocketAddress remote, IOException e) {
+                System.err.println("Dropping " + remote + ": " + e);
+            }
+        });
+        collector.start(new ServerSocket(port));
+        System.out.println("Collecting sightings on port " + port);
+
+        while (true) {
+            Thread.sleep(SUMMARY_INTERVAL_MILLIS);
+            System.out.printf("%tT %d scanners, %d connections, %d sightings, %d packets%n",
+                    System.currentTimeMillis(), collector.getScannerCount(), collector.getConnectionCount(),
+                    collector.getSightingCount(), collector.snapshot().size());
+        }
+    }
+
+    /**
+     * Reads the fields of a frame, throwing IOException past its end.
+     */
+    private static class Frame {
+        private final byte[] bytes;
+        private final int length;
+        private int pos;
+
+        Frame(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        int readByte() throws IOException {
+            if (pos == length) {
+                throw new IOException("Truncated frame");
+            }
+            return bytes[pos++] & 0xff;
+        }
+
+        void readFully(byte[] out, int offset, int count) throws IOException {
+            if (length - pos < count) {
+                throw new IOException("Truncated frame");
+            }
+            System.arraycopy(bytes, pos, out, offset, count);
+            pos += count;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Invalid varint");
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package kr.hs.gshs.blescanner;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams sightings to a {@link SightingCollector}, so the scanners of a site can be merged into one view.
+ * Sightings are queued without blocking, collapsed per payload to the latest one, and sent by a thread of
+ * its own in batches, once enough are pending or the oldest one waited long enough.
+ * A connection starts with a header naming the scanner, then each batch is a length-prefixed frame of the
+ * payloads new to the connection, followed by the sightings as varints: the payload's number on the
+ * connection and the timestamp's difference to the previous one.
+ * When the link can't keep up, the sending thread blocks on the socket and sightings pile up in the queue,
+ * where repeats of a pending payload only move its timestamp and new payloads are dropped once it is full.
+ * A failed connection is retried with exponential backoff, and the batch being written is lost.
+ */
+public class SightingExporter implements Closeable {
+
+    public static final int DEFAULT_PORT = 7878;
+    public static final int DEFAULT_MAX_PENDING = 4096;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+    static final int MAGIC = 0x42545358;
+    static final int VERSION = 1;
+
+    // Set on a frame whose payloads are numbered from 0 again.
+    static final int FLAG_RESET_PAYLOADS = 1;
+
+    // Payloads numbered on a connection before the numbering starts over.
+    static final int MAX_PAYLOAD_NUMBERS = 1 << 16;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final long MIN_RETRY_MILLIS = 1000;
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // How long closing waits for the last batch to go out.
+    private static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
+    private static final String TAG = SightingExporter.class.getSimpleName();
+
+    /**
+     * Opens connections to the collector.
+     */
+    public interface Connector {
+
+        /**
+         * Open a new connection, closed by the exporter once it fails or the exporter is closed.
+         */
+        OutputStream connect() throws IOException;
+    }
+
+    /**
+     * Return a connector opening TCP connections to a collector.
+     */
+    public static Connector socketConnector(final String host, final int port) {
+        return new Connector() {
+            @Override
+            public OutputStream connect() throws IOException {
+                Socket socket = new Socket();
+                try {
+                    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                    socket.setTcpNoDelay(true);
+                    return socket.getOutputStream();
+                } catch (IOException | RuntimeException e) {
+                    socket.close();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Sightings of distinct payloads, with the payload bytes and an open addressing table of (sighting + 1)
+     * by fingerprint. One is filled by offer while the other is sent.
+     */
+    private static class Batch {
+        final long[] fingerprints;
+        final long[] timestamps;
+        final byte[] payloads;
+        final int[] table;
+        int size;
+
+        Batch(int capacity) {
+            fingerprints = new long[capacity];
+            timestamps = new long[capacity];
+            payloads = new byte[capacity * PayloadView.PAYLOAD_LENGTH];
+            table = new int[Integer.highestOneBit(capacity) * 4];
+        }
+
+        void clear() {
+            Arrays.fill(table, 0);
+            size = 0;
+        }
+    }
+
+    private final Connector connector;
+    private final long scannerId;
+    private final int batchSize;
+    private final long maxDelayNanos;
+
+    // Guards everything below up to the sending thread's state.
+    private final Object lock = new Object();
+    private Batch pending;
+    private long firstPendingNanos;
+    private boolean running = true;
+    private long droppedCount;
+    private long mergedCount;
+
+    private final Thread sender;
+
+    private volatile long sentCount;
+    private volatile long batchCount;
+    private volatile long byteCount;
+    private volatile long failureCount;
+    private volatile boolean connected;
+
+    // Only touched by the sending thread, except closing the stream to unblock it.
+    private Batch sending;
+    private volatile DataOutputStream out;
+    private final PayloadFingerprints payloadNumbers = new PayloadFingerprints(PayloadFingerprints.UNBOUNDED);
+    private byte[] frame = new byte[4096];
+    private int frameSize;
+
+    public SightingExporter(Connector connector, long scannerId) {
+        this(connector, scannerId, DEFAULT_MAX_PENDING, DEFAULT_BATCH_SIZE, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Start sending, connecting right away.
+     *
+     * @param scannerId identifies this scanner to the collector
+     * @param maxPending most distinct payloads queued, sightings of others are dropped past it
+     * @param batchSize number of pending payloads sent without waiting for more
+     * @param maxDelayMillis longest a sighting waits to be sent while the link keeps up
+     */
+    public SightingExporter(Connector connector, long scannerId, int maxPending, int batchSize, long maxDelayMillis) {
+        if (maxPending <= 0 || batchSize <= 0 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Invalid export settings");
+        }
+        this.connector = connector;
+        this.scannerId = scannerId;
+        this.batchSize = Math.min(batchSize, maxPending);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        pending = new Batch(maxPending);
+        sending = new Batch(maxPending);
+
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                send();
+            }
+        }, TAG);
+        sender.start();
+    }
+
+    /**
+     * Queue a sighting, never blocks. Returns false if the queue is full and it was dropped.
+     *
+     * @param scanRecord scan record holding a payload
+     * @param fingerprint {@link PayloadFingerprints#of(byte[])} of the record
+     * @param timestampMillis wall clock time of the sighting, so the collector can order those of all scanners
+     */
+    public boolean offer(byte[] scanRecord, long fingerprint, long timestampMillis) {
+        synchronized (lock) {
+            Batch batch = pending;
+            int mask = batch.table.length - 1;
+            int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+            while (batch.table[slot] != 0 && batch.fingerprints[batch.table[slot] - 1] != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (batch.table[slot] != 0) {
+                int sighting = batch.table[slot] - 1;
+                batch.timestamps[sighting] = Math.max(batch.timestamps[sighting], timestampMillis);
+                mergedCount++;
+                return true;
+            }
+            if (!running || batch.size == batch.fingerprints.length) {
+                droppedCount++;
+                return false;
+            }
+
+            int sighting = batch.size++;
+            batch.table[slot] = sighting + 1;
+            batch.fingerprints[sighting] = fingerprint;
+            batch.timestamps[sighting] = timestampMillis;
+            System.arraycopy(scanRecord, PayloadView.PAYLOAD_OFFSET, batch.payloads,
+                    sighting * PayloadView.PAYLOAD_LENGTH, PayloadView.PAYLOAD_LENGTH);
+            if (batch.size == 1) {
+                firstPendingNanos = System.nanoTime();
+                lock.notifyAll();
+            } else if (batch.size == batchSize) {
+                lock.notifyAll();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Number of sightings dropped so far, because the queue was full or the batch holding them failed to send.
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    /**
+     * Number of sightings merged so far into a pending one of the same payload.
+     */
+    public long getMergedCount() {
+        synchronized (lock) {
+            return mergedCount;
+        }
+    }
+
+    /**
+     * Number of sightings sent so far, after merging.
+     */
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Number of bytes sent so far, headers and framing included.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Number of failed connection attempts and connections so far.
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Send what is still pending, then stop. Waits for the sending thread a little while, then drops the
+     * connection if it is still blocked, what it was sending is lost.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            sender.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sender.isAlive()) {
+            disconnect();
+        }
+    }
+
+    private void send() {
+        long retryMillis = MIN_RETRY_MILLIS;
+        while (true) {
+            // Connect first, sightings keep merging in the queue while the collector is unreachable.
+            if (out == null) {
+                try {
+                    connect();
+                    retryMillis = MIN_RETRY_MILLIS;
+                } catch (IOException | RuntimeException e) {
+                    // A connector rejecting its address, like a port out of range, fails like the link.
+                    failureCount++;
+                    synchronized (lock) {
+                        if (!running) {
+                            droppedCount += pending.size;
+                            return;
+                        }
+                        try {
+                            lock.wait(retryMillis);
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                    }
+                    retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+                    continue;
+                }
+            }
+
+            boolean last;
+            synchronized (lock) {
+                try {
+                    while (running && pending.size < batchSize) {
+                        long delay = pending.size == 0
+                                ? Long.MAX_VALUE : firstPendingNanos + maxDelayNanos - System.nanoTime();
+                        if (delay <= 0) {
+                            break;
+                        }
+                        if (delay == Long.MAX_VALUE) {
+                            lock.wait();
+                        } else {
+                            TimeUnit.NANOSECONDS.timedWait(lock, delay);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                Batch batch = sending;
+                sending = pending;
+                pending = batch;
+                last = !running;
+            }
+
+            if (sending.size > 0) {
+                try {
+                    write(sending);
+                    sentCount += sending.size;
+                    batchCount++;
+                } catch (IOException e) {
+                    failureCount++;
+                    disconnect();
+                    synchronized (lock) {
+                        droppedCount += sending.size;
+                    }
+                }
+                sending.clear();
+            }
+            if (last) {
+                disconnect();
+                return;
+            }
+        }
+    }
+
+    private void connect() throws IOException {
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(connector.connect()));
+        try {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+            stream.writeLong(scannerId);
+            stream.flush();
+        } catch (IOException e) {
+            closeQuietly(stream);
+            throw e;
+        }
+        byteCount += 16;
+        payloadNumbers.clear();
+        out = stream;
+        connected = true;
+    }
+
+    private void disconnect() {
+        connected = false;
+        DataOutputStream stream = out;
+        out = null;
+        if (stream != null) {
+            closeQuietly(stream);
+        }
+    }
+
+    private void write(Batch batch) throws IOException {
+        int flags = 0;
+        if (payloadNumbers.size() + batch.size > MAX_PAYLOAD_NUMBERS) {
+            payloadNumbers.clear();
+            flags |= FLAG_RESET_PAYLOADS;
+        }
+
+        // Payloads the collector doesn't know yet, numbered in the order they are sent.
+        frameSize = 0;
+        writeByte(flags);
+        int newPayloads = 0;
+        for (int i = 0; i < batch.size; i++) {
+            if (payloadNumbers.indexOf(batch.fingerprints[i]) < 0) {
+                newPayloads++;
+            }
+        }
+        writeVarint(newPayloads);
+        for (int i = 0; i < batch.size; i++) {
+            long fingerprint = batch.fingerprints[i];
+            if (payloadNumbers.indexOf(fingerprint) < 0) {
+                payloadNumbers.put(fingerprint, payloadNumbers.size());
+                ensureFrameCapacity(PayloadView.PAYLOAD_LENGTH);
+                System.arraycopy(batch.payloads, i * PayloadView.PAYLOAD_LENGTH, frame, frameSize,
+                        PayloadView.PAYLOAD_LENGTH);
+                frameSize += PayloadView.PAYLOAD_LENGTH;
+            }
+        }
+
+        writeVarint(batch.size);
+        long previous = 0;
+        for (int i = 0; i < batch.size; i++) {
+            writeVarint(payloadNumbers.getKey(payloadNumbers.indexOf(batch.fingerprints[i])));
+            long delta = batch.timestamps[i] - previous;
+            writeVarint(delta << 1 ^ delta >> 63);
+            previous = batch.timestamps[i];
+        }
+
+        DataOutputStream stream = out;
+        if (stream == null) {
+            throw new IOException("Disconnected");
+        }
+        stream.writeInt(frameSize);
+        stream.write(frame, 0, frameSize);
+        stream.flush();
+        byteCount += 4 + frameSize;
+    }
+
+    private void writeByte(int b) {
+        ensureFrameCapacity(1);
+        frame[frameSize++] = (byte) b;
+    }
+
+    // Seven bits at a time, low bits first, the high bit set on all but the last byte.
+    private void writeVarint(long value) {
+        ensureFrameCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            frame[frameSize++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        frame[frameSize++] = (byte) value;
+    }
+
+    private void ensureFrameCapacity(int bytes) {
+        if (frameSize + bytes > frame.length) {
+            frame = Arrays.copyOf(frame, Math.max(frame.length * 2, frameSize + bytes));
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Already failed or done with.
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package kr.hs.gshs.blescanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Append-only binary log of packet sightings, kept across process restarts.
+ * A sighting is a fixed size record of a timestamp and a payload fingerprint, appended to a memory-mapped
+ * segment file. Full segments roll over to a new one, and the oldest ones are deleted past a limit.
+ * Each distinct 26-byte payload is stored once, in a separate memory-mapped dictionary. Once it has grown
+ * to twice the payloads it last kept, deleting a segment also rewrites it with only the payloads the kept
+ * segments refer to, so it stays bounded by the sightings kept however many payloads come and go.
+ * Appending only copies bytes into the mappings, which the kernel writes back on its own, so a record
+ * survives the process dying right after. Every record is checked when the log is opened, so a torn
+ * record at the end is dropped, and appending carries on from there.
+ * Sightings are numbered in the order they were appended, and can be read by number as well, as a
+ * full segment always holds the same number of them.
+ */
+public class SightingLog {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+    public static final int DEFAULT_MAX_SEGMENTS = 32;
+
+    /**
+     * Timestamp read for a sighting that was deleted, is torn or whose payload is missing.
+     */
+    public static final long MISSING = Long.MIN_VALUE;
+
+    // Timestamp, fingerprint and check word.
+    static final int SIGHTING_SIZE = 8 + 8 + 4;
+
+    // Fingerprint and payload, the fingerprint doubles as the check.
+    static final int DICTIONARY_ENTRY_SIZE = 8 + PayloadView.PAYLOAD_LENGTH;
+
+    private static final int DICTIONARY_GROWTH = 64 * 1024;
+
+    private static final String SEGMENT_PREFIX = "sightings-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String DICTIONARY_NAME = "payloads.dict";
+    private static final String COMPACTED_DICTIONARY_NAME = "payloads.dict.tmp";
+
+    /**
+     * Receives sightings read back from the log.
+     */
+    public interface Visitor {
+
+        /**
+         * @param payload the {@link PayloadView#PAYLOAD_LENGTH} payload bytes, reused between calls
+         */
+        void visit(long timestamp, long fingerprint, byte[] payload);
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    // Maps fingerprints to the offset of their entry in the dictionary, bounded by compacting it.
+    private PayloadFingerprints dictionaryIndex = new PayloadFingerprints(PayloadFingerprints.UNBOUNDED);
+    private FileChannel dictionaryChannel;
+    private MappedByteBuffer dictionary;
+
+    // Number of payloads from which deleting a segment compacts the dictionary.
+    private int compactAt;
+
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private long firstSegment;
+    private long lastSegment;
+
+    // Older segment last read by number, kept mapped as reads tend to stay in one. Guarded by readLock,
+    // taken before this, so segments are mapped without holding up appends.
+    private final Object readLock = new Object();
+    private long readSegmentIndex = -1;
+    private ByteBuffer readSegment;
+
+    private boolean closed;
+
+    public SightingLog(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Open the log in a directory, creating it if needed, and recover what was written before.
+     *
+     * @param segmentSize size of a segment file in bytes
+     * @param maxSegments number of segments kept before the oldest one is deleted
+     */
+    public SightingLog(File directory, int segmentSize, int maxSegments) throws IOException {
+        int perSegment = segmentSize / SIGHTING_SIZE;
+
+        // Compacting keeps the dictionary under twice the payloads of the kept sightings, and a segment's worth.
+        if (perSegment == 0 || maxSegments <= 0
+                || (2L * maxSegments + 1) * perSegment * DICTIONARY_ENTRY_SIZE + DICTIONARY_GROWTH > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid log bounds");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = perSegment * SIGHTING_SIZE;
+        this.maxSegments = maxSegments;
+        compactAt = perSegment;
+
+        openDictionary();
+        try {
+            openSegments();
+        } catch (IOException | RuntimeException e) {
+            dictionaryChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Append a sighting of the payload of a scan record, does nothing once the log is closed.
+     *
+     * @param fingerprint {@link PayloadFingerprints#of(byte[])} of the record
+     */
+    public synchronized void append(byte[] scanRecord, long fingerprint, long timestamp) throws IOException {
+        if (closed) {
+            return;
+        }
+
+        // Rolling over may compact the dictionary, which only keeps the payloads already referred to.
+        if (segment.remaining() < SIGHTING_SIZE) {
+            rollOver();
+        }
+
+        // The payload goes in first, so a sighting never refers to a missing one.
+        if (dictionaryIndex.indexOf(fingerprint) < 0) {
+            int offset = dictionary.position();
+            if (dictionary.remaining() < DICTIONARY_ENTRY_SIZE) {
+                dictionary = dictionaryChannel.map(FileChannel.MapMode.READ_WRITE, 0, dictionary.capacity() + DICTIONARY_GROWTH);
+                dictionary.position(offset);
+            }
+            dictionary.putLong(fingerprint);
+            dictionary.put(scanRecord, PayloadView.PAYLOAD_OFFSET, PayloadView.PAYLOAD_LENGTH);
+            dictionaryIndex.put(fingerprint, offset);
+        }
+
+        segment.putLong(timestamp);
+        segment.putLong(fingerprint);
+        segment.putInt(check(timestamp, fingerprint));
+    }
+
+    /**
+     * Read every sighting still kept, oldest first.
+     */
+    public synchronized void forEach(Visitor visitor) throws IOException {
+        byte[] payload = new byte[PayloadView.PAYLOAD_LENGTH];
+        ByteBuffer entries = dictionary.duplicate();
+
+        for (long index = firstSegment; index <= lastSegment; index++) {
+            ByteBuffer sightings;
+            if (index == lastSegment) {
+                sightings = segment.duplicate();
+                sightings.flip();
+            } else {
+                sightings = map(index, FileChannel.MapMode.READ_ONLY);
+            }
+
+            while (sightings.remaining() >= SIGHTING_SIZE) {
+                long timestamp = sightings.getLong();
+                long fingerprint = sightings.getLong();
+                if (sightings.getInt() != check(timestamp, fingerprint)) {
+                    break;
+                }
+
+                int slot = dictionaryIndex.indexOf(fingerprint);
+                if (slot < 0) {
+                    continue;
+                }
+                entries.position((int) dictionaryIndex.getKey(slot) + 8);
+                entries.get(payload);
+                visitor.visit(timestamp, fingerprint, payload);
+            }
+        }
+    }
+
+    /**
+     * Return the number of the oldest sighting still kept.
+     */
+    public synchronized long getFirstSequence() {
+        return firstSegment * (segmentSize / SIGHTING_SIZE);
+    }
+
+    /**
+     * Return the number the next sighting appended gets, one past the latest.
+     */
+    public synchronized long getEndSequence() {
+        return lastSegment * (segmentSize / SIGHTING_SIZE) + segment.position() / SIGHTING_SIZE;
+    }
+
+    /**
+     * Read sightings by number, oldest first, without going through the ones before.
+     * A sighting that can't be read gets {@link #MISSING} as its timestamp.
+     * Older segments are mapped without holding the log's lock, so appending goes on meanwhile.
+     *
+     * @param timestamps receives the timestamp of each sighting
+     * @param payloads receives the {@link PayloadView#PAYLOAD_LENGTH} payload bytes of each sighting
+     * @return number of sightings read, fewer than count past the latest
+     */
+    public int read(long sequence, int count, long[] timestamps, byte[] payloads) throws IOException {
+        int perSegment = segmentSize / SIGHTING_SIZE;
+        synchronized (readLock) {
+            int read;
+            synchronized (this) {
+                checkOpen();
+                read = (int) Math.max(0, Math.min(count, getEndSequence() - sequence));
+            }
+
+            // A segment at a time, each mapped first if it's an older one, then read under the lock.
+            int i = 0;
+            while (i < read) {
+                long number = sequence + i;
+                long index = number / perSegment;
+                int chunk = (int) Math.min(read - i, (index + 1) * perSegment - number);
+
+                boolean older;
+                synchronized (this) {
+                    checkOpen();
+                    older = index != lastSegment && index >= firstSegment;
+                }
+                ByteBuffer mapped = null;
+                if (older) {
+                    try {
+                        mapped = segmentAt(index);
+                    } catch (IOException e) {
+                        // Fine if the segment was deleted meanwhile, its sightings are missing.
+                        synchronized (this) {
+                            if (index >= firstSegment) {
+                                throw e;
+                            }
+                        }
+                    }
+                }
+
+                synchronized (this) {
+                    checkOpen();
+                    if (index == lastSegment) {
+                        mapped = segment;
+                    } else if (mapped == null && index >= firstSegment) {
+                        // Rolled over since, map it as an older segment.
+                        continue;
+                    }
+                    copySightings(mapped, number, chunk, timestamps, payloads, i);
+                }
+                i += chunk;
+            }
+            return read;
+        }
+    }
+
+    // Guarded by this, reads sightings of one segment, missing ones if it's null.
+    private void copySightings(ByteBuffer sightings, long sequence, int count, long[] timestamps, byte[] payloads, int start) {
+        int perSegment = segmentSize / SIGHTING_SIZE;
+        ByteBuffer entries = dictionary.duplicate();
+        for (int i = start; i < start + count; i++) {
+            long number = sequence + i - start;
+            timestamps[i] = MISSING;
+            if (sightings == null || number < getFirstSequence()) {
+                continue;
+            }
+
+            int offset = (int) (number % perSegment) * SIGHTING_SIZE;
+            if (offset + SIGHTING_SIZE > sightings.limit()) {
+                continue;
+            }
+            long timestamp = sightings.getLong(offset);
+            long fingerprint = sightings.getLong(offset + 8);
+            int slot = dictionaryIndex.indexOf(fingerprint);
+            if (sightings.getInt(offset + 16) != check(timestamp, fingerprint) || slot < 0) {
+                continue;
+            }
+            entries.position((int) dictionaryIndex.getKey(slot) + 8);
+            entries.get(payloads, i * PayloadView.PAYLOAD_LENGTH, PayloadView.PAYLOAD_LENGTH);
+            timestamps[i] = timestamp;
+        }
+    }
+
+    // Guarded by readLock.
+    private ByteBuffer segmentAt(long index) throws IOException {
+        if (index != readSegmentIndex) {
+            readSegment = map(index, FileChannel.MapMode.READ_ONLY);
+            readSegmentIndex = index;
+        }
+        return readSegment;
+    }
+
+    // Guarded by this.
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Sighting log closed");
+        }
+    }
+
+    /**
+     * Number of distinct payloads in the dictionary.
+     */
+    public synchronized int getPayloadCount() {
+        return dictionaryIndex.size();
+    }
+
+    public synchronized int getSegmentCount() {
+        return (int) (lastSegment - firstSegment + 1);
+    }
+
+    /**
+     * Write everything appended so far to storage, blocks until it's done.
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            dictionary.force();
+            segment.force();
+        }
+    }
+
+    /**
+     * Close the log without waiting for storage, what was appended is still written back by the kernel.
+     * Waits for a read in progress, and lets go of the segment it kept mapped.
+     */
+    public void close() throws IOException {
+        synchronized (readLock) {
+            readSegment = null;
+            readSegmentIndex = -1;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                dictionaryChannel.close();
+                segmentChannel.close();
+            }
+        }
+    }
+
+    private void openDictionary() throws IOException {
+        dictionaryChannel = new RandomAccessFile(new File(directory, DICTIONARY_NAME), "rw").getChannel();
+        try {
+            long size = Math.max(dictionaryChannel.size(), DICTIONARY_GROWTH);
+            dictionary = dictionaryChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException | RuntimeException e) {
+            dictionaryChannel.close();
+            throw e;
+        }
+
+        // Entries are valid up to the first whose payload doesn't match its fingerprint.
+        byte[] payload = new byte[PayloadView.PAYLOAD_LENGTH];
+        while (dictionary.remaining() >= DICTIONARY_ENTRY_SIZE) {
+            int offset = dictionary.position();
+            long fingerprint = dictionary.getLong();
+            dictionary.get(payload);
+            if (PayloadFingerprints.of(payload, 0) != fingerprint) {
+                dictionary.position(offset);
+                break;
+            }
+            dictionaryIndex.put(fingerprint, offset);
+        }
+    }
+
+    private void openSegments() throws IOException {
+        String[] names = directory.list();
+        long[] indices = new long[names == null ? 0 : names.length];
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (names[i].startsWith(SEGMENT_PREFIX) && names[i].endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    indices[count] = Long.parseLong(names[i].substring(
+                            SEGMENT_PREFIX.length(), names[i].length() - SEGMENT_SUFFIX.length()));
+                    count++;
+                } catch (NumberFormatException e) {
+                    // Not one of ours.
+                }
+            }
+        }
+        Arrays.sort(indices, 0, count);
+
+        firstSegment = count == 0 ? 0 : indices[0];
+        lastSegment = count == 0 ? 0 : indices[count - 1];
+        segmentChannel = new RandomAccessFile(segmentFile(lastSegment), "rw").getChannel();
+        try {
+            segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException | RuntimeException e) {
+            segmentChannel.close();
+            throw e;
+        }
+
+        // Only the last segment can end in a torn record, carry on after its last valid one.
+        while (segment.remaining() >= SIGHTING_SIZE) {
+            int offset = segment.position();
+            if (segment.getInt(offset + 16) != check(segment.getLong(offset), segment.getLong(offset + 8))) {
+                break;
+            }
+            segment.position(offset + SIGHTING_SIZE);
+        }
+    }
+
+    private void rollOver() throws IOException {
+        segmentChannel.close();
+        lastSegment++;
+        segmentChannel = new RandomAccessFile(segmentFile(lastSegment), "rw").getChannel();
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+
+        boolean deleted = false;
+        while (lastSegment - firstSegment >= maxSegments) {
+            if (!segmentFile(firstSegment).delete()) {
+                throw new IOException("Can't delete " + segmentFile(firstSegment));
+            }
+            firstSegment++;
+            deleted = true;
+        }
+        if (deleted && dictionaryIndex.size() >= compactAt) {
+            compactDictionary();
+        }
+    }
+
+    /**
+     * Rewrite the dictionary with only the payloads the kept segments refer to. The new one is written
+     * next to it and renamed over it, so a crash leaves one or the other, both holding every payload needed.
+     */
+    private void compactDictionary() throws IOException {
+        PayloadFingerprints referenced = new PayloadFingerprints(PayloadFingerprints.UNBOUNDED);
+        for (long index = firstSegment; index <= lastSegment; index++) {
+            ByteBuffer sightings;
+            if (index == lastSegment) {
+                sightings = segment.duplicate();
+                sightings.flip();
+            } else {
+                sightings = map(index, FileChannel.MapMode.READ_ONLY);
+            }
+            while (sightings.remaining() >= SIGHTING_SIZE) {
+                long timestamp = sightings.getLong();
+                long fingerprint = sightings.getLong();
+                if (sightings.getInt() != check(timestamp, fingerprint)) {
+                    break;
+                }
+                referenced.put(fingerprint, 0);
+            }
+        }
+
+        File compactedFile = new File(directory, COMPACTED_DICTIONARY_NAME);
+        FileChannel channel = new RandomAccessFile(compactedFile, "rw").getChannel();
+        PayloadFingerprints index = new PayloadFingerprints(PayloadFingerprints.UNBOUNDED);
+        MappedByteBuffer compacted;
+        try {
+            channel.truncate(0);
+            compacted = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    referenced.size() * DICTIONARY_ENTRY_SIZE + DICTIONARY_GROWTH);
+
+            byte[] payload = new byte[PayloadView.PAYLOAD_LENGTH];
+            ByteBuffer entries = dictionary.duplicate();
+            entries.flip();
+            while (entries.remaining() >= DICTIONARY_ENTRY_SIZE) {
+                long fingerprint = entries.getLong();
+                entries.get(payload);
+                if (referenced.indexOf(fingerprint) >= 0 && index.indexOf(fingerprint) < 0) {
+                    index.put(fingerprint, compacted.position());
+                    compacted.putLong(fingerprint);
+                    compacted.put(payload);
+                }
+            }
+            compacted.force();
+            if (!compactedFile.renameTo(new File(directory, DICTIONARY_NAME))) {
+                throw new IOException("Can't replace " + DICTIONARY_NAME);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            compactedFile.delete();
+            throw e;
+        }
+
+        dictionaryChannel.close();
+        dictionaryChannel = channel;
+        dictionary = compacted;
+        dictionaryIndex = index;
+        compactAt = Math.max(2 * index.size(), segmentSize / SIGHTING_SIZE);
+    }
+
+    private MappedByteBuffer map(long index, FileChannel.MapMode mode) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile(index), "r");
+        try {
+            return file.getChannel().map(mode, 0, Math.min(file.length(), segmentSize));
+        } finally {
+            file.close();
+        }
+    }
+
+    private File segmentFile(long index) {
+        return new File(directory, String.format(Locale.US, "%s%010d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    // Never 0 for a zeroed record, so the unwritten end of a segment doesn't pass.
+    private static int check(long timestamp, long fingerprint) {
+        long h = (timestamp * 0x9e3779b97f4a7c15L) ^ Long.rotateLeft(fingerprint, 31) ^ 0x5bd1e9955bd1e995L;
+        h *= 0xff51afd7ed558ccdL;
+        int check = (int) (h ^ (h >>> 32));
+        return check == 0 ? 1 : check;
+    }
+}
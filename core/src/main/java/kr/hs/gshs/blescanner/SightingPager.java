@@ -0,0 +1,203 @@
+package kr.hs.gshs.blescanner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Scrollable window over a {@link SightingLog}, newest sighting first, holding only a few pages of it.
+ * Rows are read a page at a time on a loader as they are asked for, and the next page in the direction
+ * of scrolling is read ahead. Pages are kept in primitive arrays, the least recently used one dropped
+ * past a limit, so memory stays the same however long the history is. Rows of a page not loaded yet
+ * read as {@link #NOT_LOADED}, and the listener is told once they can be read.
+ * The window is fixed at the latest {@link #refresh()}, sightings appended since only show after the next.
+ * Thread safe, rows are read on the UI thread while pages load.
+ */
+public class SightingPager {
+
+    public static final int DEFAULT_PAGE_SIZE = 128;
+    public static final int DEFAULT_MAX_PAGES = 4;
+
+    /**
+     * Timestamp read for a row whose page isn't loaded yet.
+     */
+    public static final long NOT_LOADED = Long.MIN_VALUE + 1;
+
+    /**
+     * Told about rows becoming readable, called on the loader.
+     */
+    public interface Listener {
+
+        /**
+         * Rows at positions from position on can now be read.
+         */
+        void onRowsLoaded(int position, int count);
+
+        /**
+         * The window moved to the latest sightings, every row may have changed.
+         */
+        void onRefreshed(int size);
+    }
+
+    /**
+     * Consecutive sightings, oldest first from a sequence number.
+     */
+    private static class Page {
+        final long start;
+        final long[] timestamps;
+        final byte[] payloads;
+
+        Page(long start, int size) {
+            this.start = start;
+            timestamps = new long[size];
+            payloads = new byte[size * PayloadView.PAYLOAD_LENGTH];
+        }
+    }
+
+    private final SightingLog log;
+    private final Executor loader;
+    private final int pageSize;
+    private final int maxPages;
+    private final Listener listener;
+
+    // Resident pages by page number, in access order.
+    private final LinkedHashMap<Long, Page> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Long> loading = new HashSet<>();
+
+    // Sequence numbers of the window, bumping the generation drops pages still loading for an older one.
+    private long first;
+    private long end;
+    private int generation;
+
+    // Last page read and which way rows are being read, towards older sightings unless going back up.
+    private long lastPage = -1;
+    private int direction = -1;
+
+    public SightingPager(SightingLog log, Executor loader, Listener listener) {
+        this(log, loader, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, listener);
+    }
+
+    /**
+     * Create an empty pager, {@link #refresh()} fills it.
+     *
+     * @param maxPages pages kept resident, at least two so reading ahead doesn't drop the current one
+     */
+    public SightingPager(SightingLog log, Executor loader, int pageSize, int maxPages, Listener listener) {
+        if (pageSize <= 0 || maxPages < 2) {
+            throw new IllegalArgumentException("Invalid page settings");
+        }
+        this.log = log;
+        this.loader = loader;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.listener = listener;
+    }
+
+    /**
+     * Move the window to what the log holds now, on the loader.
+     */
+    public void refresh() {
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                long firstSequence = log.getFirstSequence();
+                long endSequence = log.getEndSequence();
+                int size;
+                synchronized (SightingPager.this) {
+                    first = firstSequence;
+                    end = endSequence;
+                    pages.clear();
+                    loading.clear();
+                    generation++;
+                    size = size();
+                }
+                listener.onRefreshed(size);
+            }
+        });
+    }
+
+    /**
+     * Number of rows, the sightings in the window.
+     */
+    public synchronized int size() {
+        return (int) Math.min(end - first, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Number of pages resident, at most the limit given.
+     */
+    public synchronized int getResidentPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Copy the payload of the sighting in a row to {@link PayloadView#PAYLOAD_OFFSET} in a scan record,
+     * and return its timestamp. If its page isn't resident, return {@link #NOT_LOADED} and load it.
+     * Returns {@link SightingLog#MISSING} for a sighting that couldn't be read.
+     */
+    public synchronized long get(int position, byte[] scanRecord) {
+        long sequence = end - 1 - position;
+        long page = sequence / pageSize;
+
+        if (lastPage >= 0 && page != lastPage) {
+            direction = page < lastPage ? -1 : 1;
+        }
+        lastPage = page;
+
+        Page resident = pages.get(page);
+        if (resident == null) {
+            load(page);
+        }
+        load(page + direction);
+        if (resident == null) {
+            return NOT_LOADED;
+        }
+        int row = (int) (sequence - resident.start);
+        System.arraycopy(resident.payloads, row * PayloadView.PAYLOAD_LENGTH, scanRecord,
+                PayloadView.PAYLOAD_OFFSET, PayloadView.PAYLOAD_LENGTH);
+        return resident.timestamps[row];
+    }
+
+    // Guarded by this.
+    private void load(final long page) {
+        final long from = Math.max(page * pageSize, first);
+        final long to = Math.min((page + 1) * pageSize, end);
+        if (from >= to || pages.containsKey(page) || !loading.add(page)) {
+            return;
+        }
+
+        final int loadGeneration = generation;
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                Page loaded = new Page(from, (int) (to - from));
+                Arrays.fill(loaded.timestamps, SightingLog.MISSING);
+                try {
+                    log.read(from, loaded.timestamps.length, loaded.timestamps, loaded.payloads);
+                } catch (IOException e) {
+                    // Shown as missing rows rather than loaded again and again.
+                }
+
+                int position;
+                synchronized (SightingPager.this) {
+                    if (loadGeneration != generation) {
+                        return;
+                    }
+                    loading.remove(page);
+                    pages.put(page, loaded);
+                    Iterator<Long> eldest = pages.keySet().iterator();
+                    while (pages.size() > maxPages) {
+                        eldest.next();
+                        eldest.remove();
+                    }
+                    position = (int) (end - to);
+                }
+                listener.onRowsLoaded(position, (int) (to - from));
+            }
+        });
+    }
+}
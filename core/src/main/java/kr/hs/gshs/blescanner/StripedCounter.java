@@ -0,0 +1,56 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that threads add to without contending, for hot paths where an AtomicLong would bounce its
+ * cache line between cores. Each thread adds to one of a few padded cells picked by its id, reading
+ * sums the cells. Works like LongAdder, which needs Java 8 and API level 24.
+ */
+public class StripedCounter {
+
+    // Longs per cell, so each cell has a cache line of its own.
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedCounter(int stripes) {
+        int count = 1;
+        while (count < stripes) {
+            count <<= 1;
+        }
+        mask = count - 1;
+
+        // A spare cell in front keeps the first one clear of the array header.
+        cells = new AtomicLongArray((count + 1) * PADDING);
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(cell(), delta);
+    }
+
+    /**
+     * Return the total added so far. Not a snapshot, adds made while summing may or may not be seen.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get((i + 1) * PADDING);
+        }
+        return sum;
+    }
+
+    private int cell() {
+        long id = Thread.currentThread().getId() * 0x9e3779b97f4a7c15L;
+        return ((int) (id >>> 32) & mask) * PADDING + PADDING;
+    }
+}
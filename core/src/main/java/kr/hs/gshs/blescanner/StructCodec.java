@@ -0,0 +1,19 @@
+package kr.hs.gshs.blescanner;
+
+/**
+ * Converts the data of a struct type between its text and the bytes sent in the advertisement.
+ * Registered per struct type with {@link StructCodecs}, implementations must be thread safe.
+ */
+public interface StructCodec {
+
+    /**
+     * Decode length bytes at offset into text, or return null if they are malformed.
+     */
+    String decode(byte[] bytes, int offset, int length);
+
+    /**
+     * Encode textLength bytes of UTF-8 text at textOffset into out at offset, writing at most maxLength bytes.
+     * Returns the number of bytes written, or -1 if the encoded text doesn't fit.
+     */
+    int encode(byte[] text, int textOffset, int textLength, byte[] out, int offset, int maxLength);
+}
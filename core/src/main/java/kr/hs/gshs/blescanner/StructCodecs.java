@@ -0,0 +1,137 @@
+package kr.hs.gshs.blescanner;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Registry of {@link StructCodec}s by struct type value, with a {@link DecodeCache} in front of decoding.
+ * TEXT_RLE and TEXT_HUFFMAN_CODING have codecs by default, struct types without one are UTF-8 text.
+ */
+public class StructCodecs {
+
+    /**
+     * Values of the text struct types, the ordinals of StructTypes.
+     */
+    public static final int TEXT_UNCOMPRESSED = 0;
+    public static final int TEXT_RLE = 1;
+    public static final int TEXT_HUFFMAN_CODING = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Indexed by struct type value, replaced as a whole on registration.
+    private static volatile StructCodec[] codecs = new StructCodec[PayloadView.STRUCT_TYPE_COUNT];
+
+    private static final DecodeCache cache = new DecodeCache(DecodeCache.DEFAULT_CAPACITY);
+
+    static {
+        register(TEXT_RLE, new RleCodec());
+        register(TEXT_HUFFMAN_CODING, new HuffmanCodec());
+    }
+
+    private StructCodecs() {
+    }
+
+    /**
+     * Set the codec of a struct type, or remove it with null.
+     */
+    public static synchronized void register(int structType, StructCodec codec) {
+        StructCodec[] registered = Arrays.copyOf(codecs, codecs.length);
+        registered[structType] = codec;
+        codecs = registered;
+        cache.clear();
+    }
+
+    /**
+     * Return the codec of a struct type, or null if its data is plain UTF-8 text.
+     */
+    public static StructCodec get(int structType) {
+        return codecs[structType];
+    }
+
+    public static DecodeCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Return the text of struct data. Data a codec can't decode is shown as UTF-8 text, as it was received.
+     */
+    public static String decode(int structType, byte[] bytes, int offset, int length) {
+        StructCodec codec = codecs[structType];
+        if (codec == null) {
+            return new String(bytes, offset, length, UTF_8);
+        }
+
+        return cache.getOrDecode(structType, codec, bytes, offset, length);
+    }
+
+    /**
+     * Encode the text of struct data into out at offset, writing at most maxLength bytes.
+     * Returns the number of bytes written, or -1 if it doesn't fit.
+     */
+    public static int encode(int structType, String text, byte[] out, int offset, int maxLength) {
+        byte[] bytes = text.getBytes(UTF_8);
+        return encode(structType, bytes, 0, bytes.length, out, offset, maxLength);
+    }
+
+    /**
+     * Encode struct data from textLength bytes of UTF-8 text at textOffset, like {@link #encode(int, String,
+     * byte[], int, int)} but without allocating.
+     */
+    public static int encode(int structType, byte[] text, int textOffset, int textLength,
+                             byte[] out, int offset, int maxLength) {
+        StructCodec codec = codecs[structType];
+        if (codec != null) {
+            return codec.encode(text, textOffset, textLength, out, offset, maxLength);
+        }
+
+        if (textLength > maxLength) {
+            return -1;
+        }
+        System.arraycopy(text, textOffset, out, offset, textLength);
+        return textLength;
+    }
+
+    /**
+     * Write the UTF-8 encoding of text into out at offset without allocating, writing at most maxLength bytes.
+     * Returns the number of bytes written, or -1 if it doesn't fit. Unpaired surrogates become '?'.
+     */
+    public static int encodeUtf8(String text, byte[] out, int offset, int maxLength) {
+        int pos = offset;
+        int end = offset + maxLength;
+        for (int i = 0; i < text.length(); i++) {
+            int c = text.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, text.charAt(++i));
+            } else if (Character.isSurrogate((char) c)) {
+                c = '?';
+            }
+
+            int length = c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (pos + length > end) {
+                return -1;
+            }
+            switch (length) {
+                case 1:
+                    out[pos++] = (byte) c;
+                    break;
+                case 2:
+                    out[pos++] = (byte) (0xc0 | c >> 6);
+                    out[pos++] = (byte) (0x80 | c & 0x3f);
+                    break;
+                case 3:
+                    out[pos++] = (byte) (0xe0 | c >> 12);
+                    out[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    out[pos++] = (byte) (0x80 | c & 0x3f);
+                    break;
+                default:
+                    out[pos++] = (byte) (0xf0 | c >> 18);
+                    out[pos++] = (byte) (0x80 | c >> 12 & 0x3f);
+                    out[pos++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    out[pos++] = (byte) (0x80 | c & 0x3f);
+                    break;
+            }
+        }
+        return pos - offset;
+    }
+}
@@ -0,0 +1,230 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Inverted index from the words of struct data to the {@link PayloadKeys} keys of the packets holding them,
+ * with the struct types each word was found in. Kept up to date one packet at a time as packets enter and
+ * leave the {@link PacketStore}, never rebuilt, and words no packet holds anymore are dropped, so it stays
+ * as large as the store's contents. Words are runs of letters and digits, compared in lower case.
+ * Thread safe, searched from the UI while the ingestion thread updates it.
+ */
+public class TextIndex {
+
+    /**
+     * Struct type mask matching every struct type.
+     */
+    public static final int ALL_STRUCT_TYPES = (1 << PayloadView.STRUCT_TYPE_COUNT) - 1;
+
+    /**
+     * Keys of packets, sorted, each with the struct types it has the word in.
+     */
+    private static class Postings {
+        long[] keys = new long[4];
+        int[] structTypes = new int[4];
+        int size;
+
+        void add(long key, int structTypeBits) {
+            int i = Arrays.binarySearch(keys, 0, size, key);
+            if (i >= 0) {
+                structTypes[i] |= structTypeBits;
+                return;
+            }
+            i = -(i + 1);
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                structTypes = Arrays.copyOf(structTypes, size * 2);
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(structTypes, i, structTypes, i + 1, size - i);
+            keys[i] = key;
+            structTypes[i] = structTypeBits;
+            size++;
+        }
+
+        void remove(long key) {
+            int i = Arrays.binarySearch(keys, 0, size, key);
+            if (i < 0) {
+                return;
+            }
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(structTypes, i + 1, structTypes, i, size - i - 1);
+            size--;
+        }
+    }
+
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+
+    // Packets with a struct of each type, indexed by struct type value.
+    private final Postings[] types = new Postings[PayloadView.STRUCT_TYPE_COUNT];
+
+    public TextIndex() {
+        for (int i = 0; i < types.length; i++) {
+            types[i] = new Postings();
+        }
+    }
+
+    /**
+     * Index a struct of a packet, call for each of its structs as the packet is added.
+     */
+    public synchronized void add(long key, int structType, String data) {
+        int bit = 1 << structType;
+        types[structType].add(key, bit);
+
+        for (String word : words(data)) {
+            Postings postings = words.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                words.put(word, postings);
+            }
+            postings.add(key, bit);
+        }
+    }
+
+    /**
+     * Remove a struct of a packet, call for each of its structs as the packet is removed.
+     * The packet no longer matches any word of the data, whichever of its structs it was in.
+     */
+    public synchronized void remove(long key, int structType, String data) {
+        types[structType].remove(key);
+
+        for (String word : words(data)) {
+            Postings postings = words.get(word);
+            if (postings != null) {
+                postings.remove(key);
+                if (postings.size == 0) {
+                    words.remove(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of distinct words indexed.
+     */
+    public synchronized int getWordCount() {
+        return words.size();
+    }
+
+    /**
+     * Return the sorted keys of packets with a word starting with each word of the query, found in structs
+     * of the types in a mask, or null if the query has no words and the mask has every type, meaning all.
+     */
+    public synchronized long[] search(String query, int structTypeMask) {
+        long[] result = null;
+        for (String word : words(query)) {
+            long[] matches = prefixMatches(word, structTypeMask);
+            result = result == null ? matches : intersect(result, matches);
+            if (result.length == 0) {
+                return result;
+            }
+        }
+
+        if (result == null && (structTypeMask & ALL_STRUCT_TYPES) != ALL_STRUCT_TYPES) {
+            // No words, only the struct types count.
+            long[] keys = new long[0];
+            for (int type = 0; type < types.length; type++) {
+                if ((structTypeMask & 1 << type) != 0) {
+                    keys = union(keys, types[type].keys, types[type].size);
+                }
+            }
+            return keys;
+        }
+        return result;
+    }
+
+    /**
+     * Return the words of a text, runs of letters and digits, in lower case.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // Keys of packets with a word starting with prefix in a struct of the mask's types. Gathered then sorted
+    // once, as merging posting by posting would be quadratic for a short prefix of many words.
+    private long[] prefixMatches(String prefix, int structTypeMask) {
+        long[] keys = new long[16];
+        int count = 0;
+        for (Map.Entry<String, Postings> entry : words.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            Postings postings = entry.getValue();
+            if (keys.length < count + postings.size) {
+                keys = Arrays.copyOf(keys, Math.max(keys.length * 2, count + postings.size));
+            }
+            for (int i = 0; i < postings.size; i++) {
+                if ((postings.structTypes[i] & structTypeMask) != 0) {
+                    keys[count++] = postings.keys[i];
+                }
+            }
+        }
+
+        Arrays.sort(keys, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || keys[i] != keys[unique - 1]) {
+                keys[unique++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, unique);
+    }
+
+    private static long[] union(long[] a, long[] b, int bLength) {
+        long[] out = new long[a.length + bLength];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < bLength) {
+            if (a[i] < b[j]) {
+                out[count++] = a[i++];
+            } else if (a[i] > b[j]) {
+                out[count++] = b[j++];
+            } else {
+                out[count++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) {
+            out[count++] = a[i++];
+        }
+        while (j < bLength) {
+            out[count++] = b[j++];
+        }
+        return count == out.length ? out : Arrays.copyOf(out, count);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[count++] = a[i++];
+                j++;
+            }
+        }
+        return count == out.length ? out : Arrays.copyOf(out, count);
+    }
+}
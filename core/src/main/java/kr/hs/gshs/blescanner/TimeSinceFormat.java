@@ -0,0 +1,46 @@
+package kr.hs.gshs.blescanner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats how long ago a packet was last seen, as shown in the packet list.
+ */
+public class TimeSinceFormat {
+
+    private TimeSinceFormat() {
+    }
+
+    /**
+     * Takes in a number of nanoseconds and returns a human-readable string giving a vague
+     * description of how long ago that was.
+     */
+    public static String format(long timeSince) {
+        String lastSeenText;
+
+        long secondsSince = TimeUnit.SECONDS.convert(timeSince, TimeUnit.NANOSECONDS);
+
+        if (secondsSince == 1) {
+            lastSeenText = secondsSince + " second ago";
+        } else if (secondsSince < 60) {
+            lastSeenText = secondsSince + " seconds ago";
+        } else {
+            long minutesSince = TimeUnit.MINUTES.convert(secondsSince, TimeUnit.SECONDS);
+            if (minutesSince < 60) {
+                if (minutesSince == 1) {
+                    lastSeenText = minutesSince + " minute ago";
+                } else {
+                    lastSeenText = minutesSince + " minutes ago";
+                }
+            } else {
+                long hoursSince = TimeUnit.HOURS.convert(minutesSince, TimeUnit.MINUTES);
+                if (hoursSince == 1) {
+                    lastSeenText = hoursSince + " hour ago";
+                } else {
+                    lastSeenText = hoursSince + " hours ago";
+                }
+            }
+        }
+
+        return lastSeenText;
+    }
+}
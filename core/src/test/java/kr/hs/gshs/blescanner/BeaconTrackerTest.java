@@ -0,0 +1,44 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BeaconTrackerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void record_tracksEachBeacon() throws Exception {
+        BeaconTracker tracker = new BeaconTracker(10);
+        tracker.record(1, 0, -50);
+        tracker.record(2, 0, -80);
+        tracker.record(1, 20 * SECOND, -50);
+
+        assertEquals(2, tracker.size());
+        assertEquals(-50, tracker.getSmoothedRssi(1), 0);
+        assertEquals(-80, tracker.getSmoothedRssi(2), 0);
+        assertTrue(Double.isNaN(tracker.getSmoothedRssi(3)));
+
+        assertTrue(tracker.wasSeenWithin(1, 25 * SECOND, 10 * SECOND));
+        assertFalse(tracker.wasSeenWithin(2, 25 * SECOND, 10 * SECOND));
+        assertEquals(1, tracker.countSeenWithin(25 * SECOND, 10 * SECOND));
+        assertEquals(2, tracker.copyHistory(1).getSightingCount());
+        assertNull(tracker.copyHistory(3));
+    }
+
+    @Test
+    public void record_dropsTheBeaconSeenLongestAgo() throws Exception {
+        BeaconTracker tracker = new BeaconTracker(2);
+        tracker.record(1, 0, -50);
+        tracker.record(2, SECOND, -50);
+        tracker.record(1, 2 * SECOND, -50);
+        tracker.record(3, 3 * SECOND, -50);
+
+        assertEquals(2, tracker.size());
+        assertNotNull(tracker.copyHistory(1));
+        assertNull(tracker.copyHistory(2));
+    }
+}
@@ -0,0 +1,61 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HuffmanCodecTest {
+
+    private final HuffmanCodec codec = new HuffmanCodec();
+
+    private int encode(String text, byte[] out, int offset, int maxLength) {
+        byte[] utf8 = text.getBytes(Charset.forName("UTF-8"));
+        return codec.encode(utf8, 0, utf8.length, out, offset, maxLength);
+    }
+
+    @Test
+    public void encode_shrinksLowercaseText() throws Exception {
+        String text = "sale on at the canteen";
+        byte[] out = new byte[24];
+
+        int length = encode(text, out, 0, out.length);
+        assertTrue(length > 0 && length < text.length());
+        assertEquals(text, codec.decode(out, 0, length));
+    }
+
+    @Test
+    public void decode_roundTripsEveryByteValue() throws Exception {
+        Random random = new Random(42);
+        byte[] out = new byte[64];
+        for (int i = 0; i < 1000; i++) {
+            char[] chars = new char[1 + random.nextInt(10)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = random.nextBoolean() ? (char) random.nextInt(0x80) : (char) (0xac00 + random.nextInt(11172));
+            }
+            String text = new String(chars);
+
+            int length = encode(text, out, 3, out.length - 3);
+            assertEquals(text, codec.decode(out, 3, length));
+        }
+    }
+
+    @Test
+    public void encode_failsWhenTooLong() throws Exception {
+        assertEquals(-1, encode("the quick brown fox", new byte[4], 0, 4));
+    }
+
+    @Test
+    public void decode_rejectsBadPadding() throws Exception {
+        byte[] out = new byte[8];
+        int length = encode("e", out, 0, out.length);
+        assertEquals(1, length);
+        assertEquals("e", codec.decode(out, 0, 1));
+
+        // 'e' is 4 bits long, the rest of the byte must be 1 bits rather than the start of a code.
+        out[0] = 0x1c;
+        assertNull(codec.decode(out, 0, 1));
+    }
+}
@@ -0,0 +1,52 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucket_isExactBelow64AndLogLinearAbove() throws Exception {
+        assertEquals(0, LatencyHistogram.bucket(0));
+        assertEquals(63, LatencyHistogram.bucket(63));
+        assertEquals(64, LatencyHistogram.bucket(64));
+        assertEquals(64, LatencyHistogram.bucket(65));
+        assertEquals(65, LatencyHistogram.bucket(66));
+
+        assertEquals(63, LatencyHistogram.highestValue(63));
+        assertEquals(65, LatencyHistogram.highestValue(64));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void bucket_containsItsValue() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value <= LatencyHistogram.highestValue(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+        }
+    }
+
+    @Test
+    public void getPercentile_isWithinBucketPrecision() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value * 1000);
+        }
+        histogram.record(-5);
+
+        assertEquals(100001, histogram.getCount());
+        assertEquals(100000000, histogram.getMax());
+        assertEquals(50000000, histogram.getPercentile(50), 50000000 * 0.04);
+        assertEquals(99000000, histogram.getPercentile(99), 99000000 * 0.04);
+        assertTrue(histogram.getPercentile(99) >= 99000000);
+        assertEquals(100000000, histogram.getPercentile(100));
+    }
+}
@@ -0,0 +1,203 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PacketStoreTest {
+    @Test
+    public void upsert_updatesExistingTimestamp() throws Exception {
+        PacketStore<String> store = new PacketStore<>();
+
+        assertEquals(-1, store.upsert(42L, "a", 1L));
+        assertEquals(0, store.upsert(42L, "b", 2L));
+
+        assertEquals(1, store.size());
+        assertEquals("a", store.get(0));
+        assertEquals(2L, store.getTimestamp(0));
+        assertEquals(42L, store.getKey(0));
+    }
+
+    @Test
+    public void add_keepsInsertionOrderAcrossGrowth() throws Exception {
+        PacketStore<Integer> store = new PacketStore<>();
+        for (int i = 0; i < 1000; i++) {
+            store.add(i * 31L, i, i);
+        }
+
+        assertEquals(1000, store.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, store.indexOf(i * 31L));
+            assertEquals(Integer.valueOf(i), store.get(i));
+        }
+        assertEquals(-1, store.indexOf(7L));
+    }
+
+    @Test
+    public void clear_removesAllKeys() throws Exception {
+        PacketStore<String> store = new PacketStore<>();
+        store.add(1L, "a", 0L);
+        store.clear();
+
+        assertEquals(0, store.size());
+        assertEquals(-1, store.indexOf(1L));
+    }
+
+    @Test
+    public void add_evictsLeastRecentlySeen() throws Exception {
+        PacketStore<String> store = new PacketStore<>(2, PacketStore.NO_TTL);
+        store.add(1L, "a", 0L);
+        store.add(2L, "b", 1L);
+        store.setTimestamp(store.indexOf(1L), 2L);
+        store.add(3L, "c", 3L);
+
+        assertEquals(2, store.size());
+        assertEquals(-1, store.indexOf(2L));
+        assertEquals(1, store.getEvictedCount());
+
+        PacketSnapshot<String> snapshot = store.snapshot();
+        assertEquals("a", snapshot.get(0));
+        assertEquals("c", snapshot.get(1));
+    }
+
+    @Test
+    public void expire_removesIdlePacketsOnly() throws Exception {
+        PacketStore<Integer> store = new PacketStore<>(PacketStore.UNBOUNDED, 10L);
+        for (int i = 0; i < 100; i++) {
+            store.add(i, i, i);
+        }
+        assertEquals(10L, store.nextExpiry());
+
+        assertEquals(50, store.expire(59L));
+        assertEquals(50, store.size());
+        assertEquals(60L, store.nextExpiry());
+        assertEquals(-1, store.indexOf(49L));
+        assertEquals(50, store.get(store.indexOf(50L)).intValue());
+        assertEquals(50, store.getExpiredCount());
+    }
+
+    @Test
+    public void setTimestamp_neverGoesBackwards() throws Exception {
+        PacketStore<String> store = new PacketStore<>(PacketStore.UNBOUNDED, 10L);
+        store.add(1L, "a", 0L);
+        store.add(2L, "b", 5L);
+        store.add(3L, "c", 8L);
+
+        // A late result from a batch doesn't make "c" look older, nor move "a" past "b".
+        assertFalse(store.setTimestamp(store.indexOf(3L), 4L));
+        assertEquals(8L, store.getTimestamp(store.indexOf(3L)));
+        assertTrue(store.setTimestamp(store.indexOf(1L), 6L));
+
+        assertEquals(15L, store.nextExpiry());
+        assertEquals(1, store.expire(15L));
+        assertEquals(-1, store.indexOf(2L));
+        assertEquals(16L, store.nextExpiry());
+        assertEquals(2, store.expire(18L));
+    }
+
+    @Test
+    public void add_keepsOlderTimestampsFirstToExpire() throws Exception {
+        PacketStore<String> store = new PacketStore<>(PacketStore.UNBOUNDED, 10L);
+        store.add(1L, "a", 5L);
+        store.add(2L, "b", 0L);
+
+        assertEquals(10L, store.nextExpiry());
+        assertEquals(1, store.expire(10L));
+        assertEquals(-1, store.indexOf(2L));
+    }
+
+    @Test
+    public void remove_keepsOtherKeysReachable() throws Exception {
+        PacketStore<Integer> store = new PacketStore<>();
+        // Keys colliding in the table exercise the backward shift on removal.
+        for (int i = 0; i < 200; i++) {
+            store.add(i << 20, i, 0L);
+        }
+        for (int i = 0; i < 200; i += 3) {
+            assertTrue(store.remove(i << 20));
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i % 3 != 0, store.indexOf(i << 20) >= 0);
+        }
+
+        // Freed entries are reused.
+        store.add(-1L, -1, 0L);
+        assertEquals(134, store.size());
+        assertEquals(-1, store.get(store.indexOf(-1L)).intValue());
+    }
+
+    @Test
+    public void drainDirty_listsEachChangedEntryOnce() throws Exception {
+        PacketStore<String> store = new PacketStore<>();
+        store.add(1L, "a", 0L);
+        store.add(2L, "b", 0L);
+        int[] dirty = new int[store.getDirtyCount()];
+        assertEquals(2, store.drainDirty(dirty));
+        assertEquals(0, store.getDirtyCount());
+
+        store.setTimestamp(store.indexOf(2L), 1L);
+        store.setTimestamp(store.indexOf(2L), 2L);
+        store.remove(1L);
+        dirty = new int[store.getDirtyCount()];
+        assertEquals(2, store.drainDirty(dirty));
+        assertEquals(1, dirty[0]);
+        assertEquals(0, dirty[1]);
+        assertFalse(store.isUsed(0));
+        assertTrue(store.isUsed(1));
+    }
+
+    @Test
+    public void drainDirty_findsNothingWhenNotTracked() throws Exception {
+        PacketStore<String> store = new PacketStore<>(PacketStore.UNBOUNDED, PacketStore.NO_TTL, false);
+        for (long key = 0; key < 100; key++) {
+            store.add(key, "p" + key, key);
+        }
+        store.setTimestamp(store.indexOf(5L), 1000L);
+        store.remove(7L);
+        store.clear();
+
+        assertEquals(0, store.getDirtyCount());
+        assertEquals(0, store.drainDirty(new int[0]));
+    }
+
+    @Test
+    public void listener_seesEveryPacketLeave() throws Exception {
+        final StringBuilder events = new StringBuilder();
+        PacketStore<String> store = new PacketStore<>(2, 10L);
+        store.setListener(new PacketStore.Listener<String>() {
+            @Override
+            public void onAdded(long key, String packet) {
+                events.append('+').append(packet);
+            }
+
+            @Override
+            public void onRemoved(long key, String packet) {
+                events.append('-').append(packet);
+            }
+        });
+
+        store.add(1L, "a", 0L);
+        store.add(2L, "b", 5L);
+        store.add(3L, "c", 6L);
+        store.expire(16L);
+        store.add(4L, "d", 20L);
+        store.clear();
+
+        assertEquals("+a+b-a+c-b-c+d-d", events.toString());
+    }
+
+    @Test
+    public void retain_keepsOrderOfSnapshot() throws Exception {
+        PacketStore<String> store = new PacketStore<>();
+        store.add(30L, "a", 0L);
+        store.add(10L, "b", 1L);
+        store.add(20L, "c", 2L);
+
+        PacketSnapshot<String> retained = store.snapshot().retain(new long[]{10L, 30L, 40L});
+
+        assertEquals(2, retained.size());
+        assertEquals("a", retained.get(0));
+        assertEquals(10L, retained.getKey(1));
+        assertEquals(1L, retained.getTimestamp(1));
+    }
+}
@@ -0,0 +1,96 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PayloadEncoderTest {
+
+    private final PayloadEncoder encoder = new PayloadEncoder();
+
+    // What a scanner receives for the payload, behind the flags and manufacturer data headers.
+    private static byte[] scanRecord(ByteBuffer payload) {
+        byte[] record = Payloads.record(0);
+        payload.get(record, PayloadView.PAYLOAD_OFFSET, payload.remaining());
+        return record;
+    }
+
+    @Test
+    public void finish_zeroesRestOfPayload() throws Exception {
+        encoder.begin(Payloads.COUPON);
+        encoder.addStruct(Payloads.REGULAR_URL, "gshs.kr.example");
+        encoder.finish();
+        encoder.begin(Payloads.COUPON);
+        encoder.addStruct(Payloads.REGULAR_URL, "gshs.kr");
+        ByteBuffer payload = encoder.finish();
+
+        assertEquals(1 + 2 + 7, payload.limit());
+        for (int i = payload.limit(); i < payload.capacity(); i++) {
+            assertEquals(0, payload.array()[i]);
+        }
+        PayloadView view = new PayloadView();
+        assertTrue(view.wrap(scanRecord(payload)));
+        assertEquals(1, view.getStructCount());
+        assertEquals("gshs.kr", view.getStructData(0));
+    }
+
+    @Test
+    public void addStruct_picksShortestTextEncoding() throws Exception {
+        PayloadView view = new PayloadView();
+        String sentence = "the snacks are on sale at noon";
+        encoder.begin(Payloads.ADVERTISEMENT);
+        encoder.addStruct(StructCodecs.TEXT_RLE, sentence);
+        view.wrap(scanRecord(encoder.finish()));
+        assertEquals(StructCodecs.TEXT_HUFFMAN_CODING, view.getStructTypeValue(0));
+        assertEquals(sentence, view.getStructData(0));
+
+        // No shorter than plain text, so old parsers still read it.
+        encoder.begin(Payloads.ADVERTISEMENT);
+        encoder.addStruct(StructCodecs.TEXT_HUFFMAN_CODING, "Q#");
+        view.wrap(scanRecord(encoder.finish()));
+        assertEquals(StructCodecs.TEXT_UNCOMPRESSED, view.getStructTypeValue(0));
+    }
+
+    @Test
+    public void addStruct_rejectsOversizedStruct() throws Exception {
+        encoder.begin(Payloads.ADVERTISEMENT);
+        encoder.addStruct(Payloads.DEVICE_NAME, "B1");
+        try {
+            encoder.addStruct(Payloads.REGULAR_URL, "https://www.gshs.hs.kr/main.do");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        // The payload is left as it was.
+        assertEquals(1 + 2 + 2, encoder.finish().limit());
+    }
+
+    @Test
+    public void encode_allocatesNothing() throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (int i = 0; i < 20000; i++) {
+            encode();
+        }
+        long before = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 20000; i++) {
+            encode();
+        }
+        long allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertTrue(allocated < 20000);
+    }
+
+    private void encode() {
+        encoder.begin(0);
+        encoder.addStruct(StructCodecs.TEXT_UNCOMPRESSED, "library opens at 8");
+        encoder.addStruct(Payloads.DEVICE_NAME, "B1");
+        encoder.finish();
+    }
+}
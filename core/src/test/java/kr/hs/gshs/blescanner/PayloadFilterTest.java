@@ -0,0 +1,111 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PayloadFilterTest {
+
+    private static final long ADDRESS = ScanTraceWriter.parseAddress("C0:11:22:AA:BB:CC");
+
+    private final byte[] coupon = Payloads.record(Payloads.COUPON,
+            StructCodecs.TEXT_UNCOMPRESSED, "Price Pizza",
+            Payloads.REGULAR_URL, "gshs.hs.kr");
+    private final byte[] caution = Payloads.record(Payloads.CAUTION,
+            StructCodecs.TEXT_HUFFMAN_CODING, "wet floor wet floor",
+            Payloads.DEVICE_NAME, "hall");
+
+    @Test
+    public void acceptAll_matchesEveryRecord() throws Exception {
+        assertTrue(PayloadFilter.ACCEPT_ALL.acceptsAll());
+        assertTrue(PayloadFilter.ACCEPT_ALL.matches(null, 0, -100));
+        assertTrue(PayloadFilter.ACCEPT_ALL.matches(coupon, 0, -100));
+    }
+
+    @Test
+    public void matches_checksTypeMasks() throws Exception {
+        PayloadFilter byPacketType = PayloadFilter.compile(new PayloadFilter.Rule().packetTypes(Payloads.COUPON));
+        assertTrue(byPacketType.matches(coupon, 0, 0));
+        assertFalse(byPacketType.matches(caution, 0, 0));
+        assertFalse(byPacketType.matches(null, 0, 0));
+        assertFalse(byPacketType.matches(new byte[10], 0, 0));
+
+        PayloadFilter byStructType = PayloadFilter.compile(new PayloadFilter.Rule().structTypes(Payloads.DEVICE_NAME));
+        assertFalse(byStructType.matches(coupon, 0, 0));
+        assertTrue(byStructType.matches(caution, 0, 0));
+    }
+
+    @Test
+    public void matches_findsTextIgnoringCase() throws Exception {
+        PayloadFilter pizza = PayloadFilter.compile(new PayloadFilter.Rule().contains("price PIZZA"));
+        assertTrue(pizza.matches(coupon, 0, 0));
+        assertFalse(pizza.matches(caution, 0, 0));
+
+        PayloadFilter url = PayloadFilter.compile(new PayloadFilter.Rule().contains("hs.kr", Payloads.REGULAR_URL));
+        assertTrue(url.matches(coupon, 0, 0));
+        PayloadFilter text = PayloadFilter.compile(
+                new PayloadFilter.Rule().contains("hs.kr", StructCodecs.TEXT_UNCOMPRESSED));
+        assertFalse(text.matches(coupon, 0, 0));
+
+        // Huffman coded, decoded to be searched.
+        PayloadFilter compressed = PayloadFilter.compile(new PayloadFilter.Rule().contains("Floor"));
+        assertTrue(compressed.matches(caution, 0, 0));
+    }
+
+    @Test
+    public void matches_foldsAsciiOnlyWhetherDecodedOrNot() throws Exception {
+        byte[] raw = Payloads.record(Payloads.COUPON, Payloads.DEVICE_NAME, "\u00c9COLE");
+        byte[] compressed = Payloads.record(Payloads.COUPON, StructCodecs.TEXT_RLE, "\u00c9COLE");
+
+        PayloadFilter ascii = PayloadFilter.compile(new PayloadFilter.Rule().contains("\u00c9col"));
+        assertTrue(ascii.matches(raw, 0, 0));
+        assertTrue(ascii.matches(compressed, 0, 0));
+
+        PayloadFilter accented = PayloadFilter.compile(new PayloadFilter.Rule().contains("\u00e9col"));
+        assertFalse(accented.matches(raw, 0, 0));
+        assertFalse(accented.matches(compressed, 0, 0));
+    }
+
+    @Test
+    public void matches_checksAddressAndRssi() throws Exception {
+        PayloadFilter filter = PayloadFilter.compile(new PayloadFilter.Rule()
+                .addresses(ScanTraceWriter.parseAddress("00:00:00:00:00:01"), ADDRESS)
+                .minRssi(-70));
+
+        assertTrue(filter.usesAddress());
+        assertTrue(filter.matches(coupon, ADDRESS, -70));
+        assertFalse(filter.matches(coupon, ADDRESS, -71));
+        assertFalse(filter.matches(coupon, ADDRESS + 1, -50));
+        assertFalse(PayloadFilter.compile(new PayloadFilter.Rule().minRssi(-70)).usesAddress());
+    }
+
+    @Test
+    public void matches_acceptsWhenAnyRuleMatches() throws Exception {
+        PayloadFilter filter = PayloadFilter.compile(
+                new PayloadFilter.Rule().packetTypes(Payloads.COUPON).contains("burger"),
+                new PayloadFilter.Rule().packetTypes(Payloads.CAUTION).minRssi(-60));
+
+        assertFalse(filter.matches(coupon, 0, 0));
+        assertTrue(filter.matches(caution, 0, -50));
+        assertFalse(filter.matches(caution, 0, -80));
+    }
+
+    @Test
+    public void indexOf_skipsWithShiftTable() throws Exception {
+        byte[] text = "abcabdABDx".getBytes("UTF-8");
+        PayloadFilter filter = PayloadFilter.compile(new PayloadFilter.Rule().contains("abd"));
+
+        assertTrue(filter.matches(Payloads.record(Payloads.COUPON, StructCodecs.TEXT_UNCOMPRESSED, "xxABD"), 0, 0));
+        assertFalse(filter.matches(Payloads.record(Payloads.COUPON, StructCodecs.TEXT_UNCOMPRESSED, "xxab"), 0, 0));
+
+        int[] shift = new int[256];
+        Arrays.fill(shift, 3);
+        shift['a'] = 2;
+        shift['b'] = 1;
+        assertEquals(3, PayloadFilter.indexOf(text, 0, text.length, "abd".getBytes("UTF-8"), shift));
+        assertEquals(6, PayloadFilter.indexOf(text, 4, text.length - 4, "abd".getBytes("UTF-8"), shift));
+        assertEquals(-1, PayloadFilter.indexOf(text, 7, 3, "abd".getBytes("UTF-8"), shift));
+    }
+}
@@ -0,0 +1,43 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PayloadFingerprintsTest {
+    @Test
+    public void of_coversEveryPayloadByte() throws Exception {
+        byte[] record = Payloads.record(Payloads.ADVERTISEMENT, StructCodecs.TEXT_UNCOMPRESSED, "sale");
+        long fingerprint = PayloadFingerprints.of(record);
+
+        for (int i = 0; i < PayloadView.PAYLOAD_LENGTH; i++) {
+            byte[] changed = record.clone();
+            changed[PayloadView.PAYLOAD_OFFSET + i] ^= 1;
+            assertNotEquals(fingerprint, PayloadFingerprints.of(changed));
+        }
+
+        // Bytes outside the payload, like the flags, are ignored.
+        byte[] flags = record.clone();
+        flags[2] = 0x1a;
+        assertEquals(fingerprint, PayloadFingerprints.of(flags));
+    }
+
+    @Test
+    public void put_mapsFingerprintsToKeys() throws Exception {
+        PayloadFingerprints fingerprints = new PayloadFingerprints();
+        for (long i = 0; i < 1000; i++) {
+            fingerprints.put(i * 7919, -i);
+        }
+
+        assertEquals(1000, fingerprints.size());
+        for (long i = 0; i < 1000; i++) {
+            int slot = fingerprints.indexOf(i * 7919);
+            assertTrue(slot >= 0);
+            assertEquals(-i, fingerprints.getKey(slot));
+        }
+        assertEquals(-1, fingerprints.indexOf(1));
+
+        fingerprints.clear();
+        assertEquals(-1, fingerprints.indexOf(7919));
+    }
+}
@@ -0,0 +1,42 @@
+package kr.hs.gshs.blescanner;
+
+/**
+ * Builds raw scan records for tests, with the type values of the protocol library's enums.
+ */
+class Payloads {
+
+    static final int ADVERTISEMENT = 1;
+    static final int COUPON = 2;
+    static final int CAUTION = 3;
+
+    static final int REGULAR_URL = 3;
+    static final int DEVICE_NAME = 5;
+    static final int SERVICE_NAME = 6;
+
+    private Payloads() {
+    }
+
+    /**
+     * Return a scan record holding a packet of the given type with (type, data) struct pairs,
+     * the data encoded with the codec of its struct type.
+     */
+    static byte[] record(int packetType, Object... structs) {
+        byte[] record = new byte[62];
+        record[0] = 2;
+        record[1] = 0x01;
+        record[2] = 0x06;
+        record[3] = (byte) (PayloadView.PAYLOAD_LENGTH + 3);
+        record[4] = (byte) 0xff;
+
+        int pos = PayloadView.PAYLOAD_OFFSET;
+        record[pos++] = (byte) packetType;
+        for (int i = 0; i < structs.length; i += 2) {
+            int structType = (Integer) structs[i];
+            int length = StructCodecs.encode(structType, (String) structs[i + 1], record, pos + 2, record.length - pos - 2);
+            record[pos++] = (byte) (length + 1);
+            record[pos++] = (byte) structType;
+            pos += length;
+        }
+        return record;
+    }
+}
@@ -0,0 +1,61 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PipelineMetricsTest {
+
+    @Test
+    public void onShown_timesOnlyPacketsSeenSinceTheLastSnapshot() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics(100);
+        PacketStore<String> store = new PacketStore<>();
+        store.add(1, "before start", 50);
+        store.add(2, "a", 1000);
+
+        metrics.onShown(store.snapshot(), 3000);
+        assertEquals(1, metrics.getScreenLatency().getCount());
+        assertEquals(2000, metrics.getScreenLatency().getMax());
+
+        store.add(3, "b", 4000);
+        metrics.onShown(store.snapshot(), 5000);
+        assertEquals(2, metrics.getScreenLatency().getCount());
+
+        // Seen again, so timed again.
+        store.setTimestamp(store.indexOf(2), 6000);
+        metrics.onShown(store.snapshot(), 6500);
+        assertEquals(3, metrics.getScreenLatency().getCount());
+        assertEquals(2000, metrics.getScreenLatency().getMax());
+    }
+
+    @Test
+    public void report_showsRatesAndRatios() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics(0);
+        MetricsReporter reporter = new MetricsReporter(metrics, 0);
+
+        metrics.onCallbacks(100);
+        for (int i = 0; i < 90; i++) {
+            metrics.onDuplicate();
+        }
+        metrics.onParsed(TimeUnit.MICROSECONDS.toNanos(20), false);
+        for (int i = 0; i < 9; i++) {
+            metrics.onParsed(TimeUnit.MICROSECONDS.toNanos(20), true);
+        }
+        metrics.onPublished(9, 2, 1);
+        metrics.onNotification();
+
+        String report = reporter.report(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(report, report.contains("Callbacks: 50.0/s, 100 total"));
+        assertTrue(report, report.contains("Dedup hit ratio: 91.0% of 100 records"));
+        assertTrue(report, report.contains("Parse time: p50 20.0 us"));
+        assertTrue(report, report.contains("Store: 9 packets, 2 evicted, 1 dropped"));
+        assertTrue(report, report.contains("Refreshes: 0.5/s, 1 total"));
+        assertTrue(report, report.contains("Notifications: 1"));
+
+        // Rates start over from the previous report.
+        report = reporter.report(TimeUnit.SECONDS.toNanos(3));
+        assertTrue(report, report.contains("Callbacks: 0.0/s, 100 total"));
+    }
+}
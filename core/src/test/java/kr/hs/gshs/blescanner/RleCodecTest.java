@@ -0,0 +1,49 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class RleCodecTest {
+
+    private final RleCodec codec = new RleCodec();
+
+    private int encode(String text, byte[] out, int offset, int maxLength) {
+        byte[] utf8 = text.getBytes(Charset.forName("UTF-8"));
+        return codec.encode(utf8, 0, utf8.length, out, offset, maxLength);
+    }
+
+    @Test
+    public void decode_expandsRuns() throws Exception {
+        byte[] bytes = {9, 3, 3, 'a', 1, 'b', 2, 'c'};
+
+        assertEquals("aaabcc", codec.decode(bytes, 2, 6));
+    }
+
+    @Test
+    public void encode_roundTripsLongRuns() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append('z');
+        }
+        text.append("!!\uD55C");
+        byte[] out = new byte[16];
+
+        int length = encode(text.toString(), out, 1, 15);
+        assertEquals(2 * 6, length);
+        assertEquals(text.toString(), codec.decode(out, 1, length));
+    }
+
+    @Test
+    public void encode_failsWhenTooLong() throws Exception {
+        assertEquals(-1, encode("abc", new byte[5], 0, 5));
+    }
+
+    @Test
+    public void decode_rejectsMalformedData() throws Exception {
+        assertNull(codec.decode(new byte[]{2, 'a', 3}, 0, 3));
+        assertNull(codec.decode(new byte[]{0, 'a'}, 0, 2));
+    }
+}
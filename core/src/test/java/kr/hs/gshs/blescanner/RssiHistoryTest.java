@@ -0,0 +1,120 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RssiHistoryTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void record_keepsTheLastMinuteRaw() throws Exception {
+        RssiHistory history = new RssiHistory();
+        for (int i = 0; i <= 90; i++) {
+            history.record(i * SECOND, -50 - i % 10);
+        }
+
+        assertEquals(61, history.getRawCount());
+        assertEquals(30 * SECOND, history.getRawTimestamp(0));
+        assertEquals(-50, history.getRawRssi(0));
+        assertEquals(90 * SECOND, history.getRawTimestamp(60));
+        assertEquals(91, history.getSightingCount());
+    }
+
+    @Test
+    public void record_dropsRawSightingsPastCapacity() throws Exception {
+        RssiHistory history = new RssiHistory();
+        for (int i = 0; i < RssiHistory.RAW_CAPACITY + 10; i++) {
+            history.record(i * 1000, -60);
+        }
+
+        assertEquals(RssiHistory.RAW_CAPACITY, history.getRawCount());
+        assertEquals(10 * 1000, history.getRawTimestamp(0));
+    }
+
+    @Test
+    public void record_downsamplesIntoTiers() throws Exception {
+        RssiHistory history = new RssiHistory();
+        // One sighting a second for 3 minutes, from -40 to -49 within every 10 seconds.
+        for (int i = 0; i < 180; i++) {
+            history.record(i * SECOND, -40 - i % 10);
+        }
+
+        // The last 10 second bucket is still open.
+        assertEquals(17, history.getBucketCount(0));
+        assertEquals(10 * SECOND, history.getBucketStart(0, 1));
+        assertEquals(-49, history.getBucketMin(0, 1));
+        assertEquals(-40, history.getBucketMax(0, 1));
+        // -44.5, rounded up.
+        assertEquals(-44, history.getBucketMean(0, 1));
+        assertEquals(10, history.getBucketSightings(0, 1));
+
+        assertEquals(2, history.getBucketCount(1));
+        assertEquals(60 * SECOND, history.getBucketStart(1, 1));
+        assertEquals(60, history.getBucketSightings(1, 1));
+        assertEquals(-49, history.getBucketMin(1, 1));
+        assertEquals(0, history.getBucketCount(2));
+    }
+
+    @Test
+    public void record_keepsMemoryFixed() throws Exception {
+        RssiHistory history = new RssiHistory();
+        // Two days, one sighting every 5 seconds.
+        long end = TimeUnit.DAYS.toNanos(2);
+        for (long t = 0; t < end; t += 5 * SECOND) {
+            history.record(t, -70);
+        }
+
+        assertEquals(60, history.getBucketCount(0));
+        assertEquals(60, history.getBucketCount(1));
+        assertEquals(144, history.getBucketCount(2));
+        long newest = history.getBucketStart(2, 143);
+        assertEquals(TimeUnit.MINUTES.toNanos(10) * 143, newest - history.getBucketStart(2, 0));
+        assertEquals(-70, history.getBucketMean(2, 0));
+    }
+
+    @Test
+    public void getSmoothedRssi_followsChangesGradually() throws Exception {
+        RssiHistory history = new RssiHistory();
+        history.record(0, -80);
+        assertEquals(-80, history.getSmoothedRssi(), 0);
+
+        // Halfway after one smoothing interval.
+        history.record(RssiHistory.SMOOTHING_NANOS, -60);
+        assertEquals(-70, history.getSmoothedRssi(), 1e-9);
+
+        for (int i = 2; i < 20; i++) {
+            history.record(i * RssiHistory.SMOOTHING_NANOS, -60);
+        }
+        assertEquals(-60, history.getSmoothedRssi(), 0.01);
+    }
+
+    @Test
+    public void wasSeenWithin_comparesTheLastSighting() throws Exception {
+        RssiHistory history = new RssiHistory();
+        assertFalse(history.wasSeenWithin(0, Long.MAX_VALUE));
+
+        history.record(10 * SECOND, -60);
+        history.record(5 * SECOND, -60);
+        assertTrue(history.wasSeenWithin(15 * SECOND, 5 * SECOND));
+        assertFalse(history.wasSeenWithin(16 * SECOND, 5 * SECOND));
+    }
+
+    @Test
+    public void copy_doesNotChangeWithTheOriginal() throws Exception {
+        RssiHistory history = new RssiHistory();
+        for (int i = 0; i < 30; i++) {
+            history.record(i * SECOND, -60);
+        }
+        RssiHistory copy = history.copy();
+        history.record(30 * SECOND, -40);
+
+        assertEquals(30, copy.getRawCount());
+        assertEquals(2, copy.getBucketCount(0));
+        assertEquals(3, history.getBucketCount(0));
+        assertEquals(-60, copy.getSmoothedRssi(), 0);
+    }
+}
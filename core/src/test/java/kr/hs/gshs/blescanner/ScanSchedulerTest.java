@@ -0,0 +1,157 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ScanSchedulerTest {
+
+    private long now = TimeUnit.HOURS.toNanos(1);
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long elapsedRealtimeNanos() {
+            return now;
+        }
+    };
+
+    // Times at which scans were started, and how long the radio has been scanning.
+    private final List<Long> starts = new ArrayList<>();
+    private long scanningNanos;
+
+    private final ScanScheduler.Scanner scanner = new ScanScheduler.Scanner() {
+        @Override
+        public void startScan(ScanScheduler.Mode mode) {
+            assertNotEquals(ScanScheduler.Mode.OFF, mode);
+            starts.add(now);
+        }
+
+        @Override
+        public void stopScan() {
+        }
+    };
+
+    private final ScanScheduler scheduler = new ScanScheduler(scanner, clock);
+
+    /**
+     * Run the scheduler for a while, with beacons showing up at the given rate while the radio is scanning.
+     */
+    private void run(long millis, double newPacketsPerSecond) {
+        double pending = 0;
+        for (long elapsed = 0; elapsed < millis; elapsed += ScanScheduler.TICK_MILLIS) {
+            if (scheduler.getMode() != ScanScheduler.Mode.OFF) {
+                scanningNanos += TimeUnit.MILLISECONDS.toNanos(ScanScheduler.TICK_MILLIS);
+                pending += newPacketsPerSecond * ScanScheduler.TICK_MILLIS / 1000;
+                scheduler.recordNewPackets((int) pending);
+                pending -= (int) pending;
+            }
+            now += TimeUnit.MILLISECONDS.toNanos(ScanScheduler.TICK_MILLIS);
+            scheduler.tick();
+        }
+    }
+
+    @Test
+    public void foreground_followsNewPacketRate() throws Exception {
+        scheduler.setForeground(true);
+        scheduler.setEnabled(true);
+        assertEquals(ScanScheduler.Mode.BALANCED, scheduler.getMode());
+
+        run(60000, 2);
+        assertEquals(ScanScheduler.Mode.LOW_LATENCY, scheduler.getMode());
+
+        run(60000, 0);
+        assertEquals(ScanScheduler.Mode.BALANCED, scheduler.getMode());
+    }
+
+    @Test
+    public void background_dutyCyclesAndBacksOffWhenQuiet() throws Exception {
+        scheduler.setEnabled(true);
+        assertEquals(ScanScheduler.Mode.LOW_POWER, scheduler.getMode());
+
+        run(TimeUnit.MINUTES.toMillis(30), 0);
+
+        // Off windows grow to the maximum, so the radio is idle most of the time.
+        assertTrue(scanningNanos < TimeUnit.MINUTES.toNanos(30) / 10);
+        long lastGap = starts.get(starts.size() - 1) - starts.get(starts.size() - 2);
+        assertTrue(lastGap >= TimeUnit.MILLISECONDS.toNanos(ScanScheduler.MAX_OFF_WINDOW_MILLIS));
+
+        // The ingestor's idle TTL relies on off windows never overrunning by more than a tick.
+        for (int i = 1; i < starts.size(); i++) {
+            assertTrue(starts.get(i) - starts.get(i - 1) <= TimeUnit.MILLISECONDS.toNanos(
+                    ScanScheduler.ON_WINDOW_MILLIS + ScanScheduler.MAX_OFF_WINDOW_MILLIS + ScanScheduler.TICK_MILLIS));
+        }
+
+        // Finding beacons brings the off window back down.
+        int startsBefore = starts.size();
+        run(TimeUnit.MINUTES.toMillis(30), 1);
+        assertTrue(starts.size() - startsBefore > 30);
+    }
+
+    @Test
+    public void everyTypeBlocked_doesNotScan() throws Exception {
+        scheduler.setHasUnblockedTypes(false);
+        scheduler.setEnabled(true);
+        run(TimeUnit.MINUTES.toMillis(10), 1);
+        scheduler.setForeground(true);
+        run(TimeUnit.MINUTES.toMillis(1), 1);
+
+        assertTrue(starts.isEmpty());
+
+        scheduler.setHasUnblockedTypes(true);
+        assertEquals(ScanScheduler.Mode.BALANCED, scheduler.getMode());
+    }
+
+    @Test
+    public void restartScan_keepsMode() throws Exception {
+        scheduler.restartScan();
+        assertTrue(starts.isEmpty());
+
+        scheduler.setForeground(true);
+        scheduler.setEnabled(true);
+        scheduler.restartScan();
+
+        assertEquals(2, starts.size());
+        assertEquals(ScanScheduler.Mode.BALANCED, scheduler.getMode());
+    }
+
+    @Test
+    public void screenOff_leavesForegroundModes() throws Exception {
+        scheduler.setForeground(true);
+        scheduler.setEnabled(true);
+        run(60000, 2);
+        assertEquals(ScanScheduler.Mode.LOW_LATENCY, scheduler.getMode());
+
+        scheduler.setScreenOn(false);
+        run(ScanScheduler.ON_WINDOW_MILLIS, 2);
+        assertEquals(ScanScheduler.Mode.OFF, scheduler.getMode());
+    }
+
+    @Test
+    public void modeChanges_stayUnderScanStartLimit() throws Exception {
+        scheduler.setEnabled(true);
+        for (int i = 0; i < 200; i++) {
+            scheduler.setForeground(i % 2 == 0);
+            scheduler.setScreenOn(i % 3 != 0);
+            run(ScanScheduler.TICK_MILLIS, i % 5);
+        }
+
+        // Android 7.0+ refuses more than 5 scan starts in 30 s.
+        for (int i = 5; i < starts.size(); i++) {
+            assertTrue(starts.get(i) - starts.get(i - 5) >= TimeUnit.SECONDS.toNanos(30));
+        }
+    }
+
+    @Test
+    public void disable_stopsRightAway() throws Exception {
+        scheduler.setForeground(true);
+        scheduler.setEnabled(true);
+        scheduler.setEnabled(false);
+
+        assertEquals(ScanScheduler.Mode.OFF, scheduler.getMode());
+        assertEquals(1, starts.size());
+    }
+}
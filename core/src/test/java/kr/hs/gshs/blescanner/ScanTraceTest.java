@@ -0,0 +1,88 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ScanTraceTest {
+
+    @Test
+    public void reader_returnsWrittenResults() throws Exception {
+        byte[] record = Payloads.record(Payloads.COUPON, StructCodecs.TEXT_UNCOMPRESSED, "half price");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ScanTraceWriter writer = new ScanTraceWriter(bytes);
+        writer.write(1000, -67, ScanTraceWriter.parseAddress("C0:11:22:AA:BB:CC"), record);
+        writer.write(2000, -101, 0, null);
+        writer.close();
+        assertEquals(bytes.size(), writer.size());
+
+        ScanTraceReader reader = new ScanTraceReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertTrue(reader.next());
+        assertEquals(1000, reader.getTimestampNanos());
+        assertEquals(-67, reader.getRssi());
+        assertEquals("C0:11:22:AA:BB:CC", ScanTraceWriter.formatAddress(reader.getAddress()));
+        assertArrayEquals(record, reader.getScanRecord());
+
+        assertTrue(reader.next());
+        assertEquals(2000, reader.getTimestampNanos());
+        assertEquals(-101, reader.getRssi());
+        assertNull(reader.getScanRecord());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void reader_endsAtLastCompleteResult() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ScanTraceWriter writer = new ScanTraceWriter(bytes);
+        writer.write(1, -50, 1, new byte[62]);
+        writer.write(2, -50, 1, new byte[62]);
+        writer.close();
+
+        byte[] torn = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 10);
+        ScanTraceReader reader = new ScanTraceReader(new ByteArrayInputStream(torn));
+        assertTrue(reader.next());
+        assertEquals(1, reader.getTimestampNanos());
+        assertFalse(reader.next());
+    }
+
+    @Test(expected = IOException.class)
+    public void reader_rejectsOtherFiles() throws Exception {
+        new ScanTraceReader(new ByteArrayInputStream(new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0}));
+    }
+
+    @Test
+    public void generator_writesDecodablePacketsAtRate() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ScanTraceWriter writer = new ScanTraceWriter(bytes);
+        assertEquals(5000, new ScanTraceGenerator(100, 0.9, 618).generate(writer, 10000, 500, 7000));
+        writer.close();
+
+        ScanTraceReader reader = new ScanTraceReader(new ByteArrayInputStream(bytes.toByteArray()));
+        PayloadView view = new PayloadView();
+        Set<Long> addresses = new HashSet<>();
+        Set<Long> keys = new HashSet<>();
+        long last = 0;
+        int count = 0;
+        while (reader.next()) {
+            assertTrue(view.wrap(reader.getScanRecord()));
+            assertTrue(view.getStructData(0).startsWith("beacon "));
+            addresses.add(reader.getAddress());
+            keys.add(PayloadKeys.of(view));
+            last = reader.getTimestampNanos();
+            count++;
+        }
+
+        assertEquals(5000, count);
+        assertEquals(7000 + 4999 * 100000L, last);
+        assertEquals(100, addresses.size());
+        // About one in ten results is a changed packet.
+        assertTrue(keys.size() > 400 && keys.size() < 700);
+    }
+}
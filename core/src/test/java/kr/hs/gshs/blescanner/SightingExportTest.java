@@ -0,0 +1,205 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SightingExportTest {
+
+    private static final byte[] PIZZA = Payloads.record(Payloads.COUPON, Payloads.DEVICE_NAME, "Pizza");
+    private static final byte[] BURGER = Payloads.record(Payloads.COUPON, Payloads.DEVICE_NAME, "Burger");
+    private static final byte[] TACOS = Payloads.record(Payloads.COUPON, Payloads.DEVICE_NAME, "Tacos");
+
+    @Test
+    public void collector_mergesScannersOverLoopback() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        SightingCollector collector = new SightingCollector();
+        collector.start(serverSocket);
+
+        SightingExporter.Connector connector = SightingExporter.socketConnector("127.0.0.1", serverSocket.getLocalPort());
+        SightingExporter first = new SightingExporter(connector, 1L, 16, 2, 10);
+        SightingExporter second = new SightingExporter(connector, 2L, 16, 2, 10);
+        offer(first, PIZZA, 1000L);
+        offer(first, BURGER, 1500L);
+        offer(first, PIZZA, 3000L);
+        offer(second, PIZZA, 2000L);
+        offer(second, TACOS, 2500L);
+        first.close();
+        second.close();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (collector.getSightingCount() < first.getSentCount() + second.getSentCount()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        collector.close();
+
+        assertEquals(0, first.getDroppedCount() + second.getDroppedCount());
+        assertEquals(2, collector.getScannerCount());
+        PacketSnapshot<byte[]> snapshot = collector.snapshot();
+        assertEquals(3, snapshot.size());
+        assertEquals(3000L, timestampOf(snapshot, PIZZA));
+        assertEquals(1500L, timestampOf(snapshot, BURGER));
+        assertEquals(2500L, timestampOf(snapshot, TACOS));
+    }
+
+    @Test
+    public void offer_neverBlocksOnSlowLink() throws Exception {
+        final CountDownLatch linkUp = new CountDownLatch(1);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SightingExporter exporter = new SightingExporter(new SightingExporter.Connector() {
+            @Override
+            public OutputStream connect() throws IOException {
+                try {
+                    linkUp.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return bytes;
+            }
+        }, 1L, 2, 2, 0);
+
+        assertTrue(offer(exporter, PIZZA, 1000L));
+        assertTrue(offer(exporter, PIZZA, 3000L));
+        assertTrue(offer(exporter, BURGER, 2000L));
+        assertFalse(offer(exporter, TACOS, 2500L));
+        assertEquals(1, exporter.getMergedCount());
+        assertEquals(1, exporter.getDroppedCount());
+
+        linkUp.countDown();
+        exporter.close();
+        assertEquals(2, exporter.getSentCount());
+        assertEquals(bytes.size(), exporter.getByteCount());
+
+        SightingCollector collector = new SightingCollector();
+        collector.read(new ByteArrayInputStream(bytes.toByteArray()));
+        PacketSnapshot<byte[]> snapshot = collector.snapshot();
+        assertEquals(2, snapshot.size());
+        assertEquals(3000L, timestampOf(snapshot, PIZZA));
+        assertEquals(2000L, timestampOf(snapshot, BURGER));
+    }
+
+    @Test
+    public void exporter_sendsEachPayloadOncePerConnection() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SightingExporter exporter = new SightingExporter(connectorTo(bytes), 1L, 16, 1, 0);
+        offer(exporter, PIZZA, 1000L);
+        waitForSent(exporter, 1);
+        long firstBatchBytes = exporter.getByteCount();
+        offer(exporter, PIZZA, 1001L);
+        exporter.close();
+
+        // Frame length, flags, no payloads, one sighting of payload 0, 1001 as a zigzag varint.
+        assertEquals(4 + 1 + 1 + 1 + 1 + 2, exporter.getByteCount() - firstBatchBytes);
+
+        SightingCollector collector = new SightingCollector();
+        collector.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(2, collector.getSightingCount());
+        assertEquals(1001L, collector.snapshot().getTimestamp(0));
+    }
+
+    @Test
+    public void exporter_survivesPortOutOfRange() throws Exception {
+        SightingExporter exporter = new SightingExporter(SightingExporter.socketConnector("127.0.0.1", 70000),
+                1L, 16, 1, 0);
+        offer(exporter, PIZZA, 1000L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (exporter.getFailureCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        exporter.close();
+
+        // Retried like an unreachable collector rather than killing the sender.
+        assertTrue(exporter.getFailureCount() >= 2);
+        assertEquals(1, exporter.getDroppedCount());
+    }
+
+    @Test
+    public void collector_reportsDroppedConnections() throws Exception {
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        SightingCollector collector = new SightingCollector();
+        final LinkedBlockingQueue<IOException> dropped = new LinkedBlockingQueue<>();
+        collector.setListener(new SightingCollector.Listener() {
+            @Override
+            public void onDropped(SocketAddress remote, IOException e) {
+                dropped.add(e);
+            }
+        });
+        collector.start(serverSocket);
+
+        Socket socket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+        socket.getOutputStream().write(new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0});
+        socket.getOutputStream().flush();
+        IOException e = dropped.poll(5, TimeUnit.SECONDS);
+        socket.close();
+        collector.close();
+
+        assertNotNull(e);
+        assertEquals(0, collector.getConnectionCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsOtherStreams() throws Exception {
+        new SightingCollector().read(new ByteArrayInputStream(new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0}));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsUnknownPayloads() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SightingExporter.MAGIC);
+        out.writeInt(SightingExporter.VERSION);
+        out.writeLong(1L);
+
+        // A sighting of payload 0, which was never sent.
+        out.writeInt(5);
+        out.write(new byte[]{0, 0, 1, 0, 2});
+        new SightingCollector().read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static boolean offer(SightingExporter exporter, byte[] record, long timestamp) {
+        return exporter.offer(record, PayloadFingerprints.of(record), timestamp);
+    }
+
+    private static SightingExporter.Connector connectorTo(final OutputStream out) {
+        return new SightingExporter.Connector() {
+            @Override
+            public OutputStream connect() {
+                return out;
+            }
+        };
+    }
+
+    private static void waitForSent(SightingExporter exporter, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (exporter.getSentCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, exporter.getSentCount());
+    }
+
+    private static long timestampOf(PacketSnapshot<byte[]> snapshot, byte[] record) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (Arrays.equals(Arrays.copyOfRange(snapshot.get(i), PayloadView.PAYLOAD_OFFSET, PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH),
+                    Arrays.copyOfRange(record, PayloadView.PAYLOAD_OFFSET, PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH))) {
+                return snapshot.getTimestamp(i);
+            }
+        }
+        fail("Missing packet");
+        return 0;
+    }
+}
@@ -0,0 +1,220 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SightingLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] coupon = Payloads.record(Payloads.COUPON, StructCodecs.TEXT_UNCOMPRESSED, "half price");
+    private final byte[] caution = Payloads.record(Payloads.CAUTION, Payloads.REGULAR_URL, "wet floor");
+
+    private static void append(SightingLog log, byte[] record, long timestamp) throws Exception {
+        log.append(record, PayloadFingerprints.of(record), timestamp);
+    }
+
+    private static List<long[]> read(SightingLog log, final List<byte[]> payloads) throws Exception {
+        final List<long[]> sightings = new ArrayList<>();
+        log.forEach(new SightingLog.Visitor() {
+            @Override
+            public void visit(long timestamp, long fingerprint, byte[] payload) {
+                sightings.add(new long[]{timestamp, fingerprint});
+                if (payloads != null) {
+                    payloads.add(payload.clone());
+                }
+            }
+        });
+        return sightings;
+    }
+
+    private static byte[] payloadOf(byte[] record) {
+        return Arrays.copyOfRange(record, PayloadView.PAYLOAD_OFFSET, PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH);
+    }
+
+    @Test
+    public void append_storesEachPayloadOnce() throws Exception {
+        SightingLog log = new SightingLog(folder.getRoot());
+        for (int i = 0; i < 100; i++) {
+            append(log, i % 2 == 0 ? coupon : caution, i);
+        }
+
+        List<byte[]> payloads = new ArrayList<>();
+        List<long[]> sightings = read(log, payloads);
+        log.close();
+
+        assertEquals(2, log.getPayloadCount());
+        assertEquals(100, sightings.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, sightings.get(i)[0]);
+            assertArrayEquals(payloadOf(i % 2 == 0 ? coupon : caution), payloads.get(i));
+        }
+    }
+
+    @Test
+    public void open_recoversAndCarriesOn() throws Exception {
+        SightingLog log = new SightingLog(folder.getRoot());
+        append(log, coupon, 1);
+        append(log, caution, 2);
+        log.close();
+
+        log = new SightingLog(folder.getRoot());
+        assertEquals(2, log.getPayloadCount());
+        append(log, coupon, 3);
+        List<long[]> sightings = read(log, null);
+        log.close();
+
+        assertEquals(3, sightings.size());
+        assertEquals(3, sightings.get(2)[0]);
+        assertEquals(PayloadFingerprints.of(coupon), sightings.get(2)[1]);
+    }
+
+    @Test
+    public void open_dropsTornRecord() throws Exception {
+        SightingLog log = new SightingLog(folder.getRoot());
+        append(log, coupon, 1);
+        append(log, caution, 2);
+        log.close();
+
+        // The process died halfway through the second sighting.
+        File segment = folder.getRoot().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".log");
+            }
+        })[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.seek(SightingLog.SIGHTING_SIZE + 16);
+        file.writeInt(0);
+        file.close();
+
+        log = new SightingLog(folder.getRoot());
+        append(log, caution, 3);
+        List<long[]> sightings = read(log, null);
+        log.close();
+
+        assertEquals(2, sightings.size());
+        assertEquals(1, sightings.get(0)[0]);
+        assertEquals(3, sightings.get(1)[0]);
+    }
+
+    @Test
+    public void append_rollsOverAndDeletesOldSegments() throws Exception {
+        SightingLog log = new SightingLog(folder.getRoot(), 10 * SightingLog.SIGHTING_SIZE, 3);
+        for (int i = 0; i < 95; i++) {
+            append(log, coupon, i);
+        }
+
+        List<long[]> sightings = read(log, null);
+        log.close();
+
+        assertEquals(3, log.getSegmentCount());
+        assertEquals(4, folder.getRoot().list().length);
+        assertEquals(25, sightings.size());
+        for (int i = 0; i < sightings.size(); i++) {
+            assertEquals(70 + i, sightings.get(i)[0]);
+        }
+    }
+
+    @Test
+    public void append_compactsDictionaryWithDeletedSegments() throws Exception {
+        SightingLog log = new SightingLog(folder.getRoot(), 10 * SightingLog.SIGHTING_SIZE, 3);
+        byte[][] records = new byte[500][];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = Payloads.record(Payloads.COUPON, StructCodecs.TEXT_UNCOMPRESSED, "#" + i);
+            append(log, records[i], i);
+        }
+
+        // At most twice the payloads of the 30 sightings kept, and the ones appended since compacting.
+        assertTrue(log.getPayloadCount() <= 2 * 30 + 10);
+        log.close();
+
+        log = new SightingLog(folder.getRoot(), 10 * SightingLog.SIGHTING_SIZE, 3);
+        List<byte[]> payloads = new ArrayList<>();
+        List<long[]> sightings = read(log, payloads);
+        log.close();
+
+        assertEquals(4, folder.getRoot().list().length);
+        assertEquals(30, sightings.size());
+        for (int i = 0; i < sightings.size(); i++) {
+            assertEquals(470 + i, sightings.get(i)[0]);
+            assertArrayEquals(payloadOf(records[470 + i]), payloads.get(i));
+        }
+    }
+
+    @Test
+    public void read_findsSightingsByNumber() throws Exception {
+        SightingLog log = new SightingLog(folder.getRoot(), 10 * SightingLog.SIGHTING_SIZE, 3);
+        for (int i = 0; i < 45; i++) {
+            append(log, i % 3 == 0 ? caution : coupon, i);
+        }
+        assertEquals(20, log.getFirstSequence());
+        assertEquals(45, log.getEndSequence());
+
+        long[] timestamps = new long[10];
+        byte[] payloads = new byte[10 * PayloadView.PAYLOAD_LENGTH];
+        assertEquals(10, log.read(18, 10, timestamps, payloads));
+        assertEquals(SightingLog.MISSING, timestamps[1]);
+        for (int i = 2; i < 10; i++) {
+            assertEquals(18 + i, timestamps[i]);
+        }
+        assertArrayEquals(payloadOf(caution), Arrays.copyOfRange(payloads, 3 * PayloadView.PAYLOAD_LENGTH,
+                4 * PayloadView.PAYLOAD_LENGTH));
+
+        assertEquals(3, log.read(42, 10, timestamps, payloads));
+        assertEquals(44, timestamps[2]);
+        log.close();
+    }
+
+    @Test
+    public void read_keepsUpWithAppendsOnAnotherThread() throws Exception {
+        final SightingLog log = new SightingLog(folder.getRoot(), 10 * SightingLog.SIGHTING_SIZE, 3);
+        final Exception[] failure = new Exception[1];
+        Thread appender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 3000; i++) {
+                        append(log, i % 3 == 0 ? caution : coupon, i);
+                    }
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        appender.start();
+
+        // Sightings are appended with their number as timestamp, any read must agree or find them missing.
+        long[] timestamps = new long[25];
+        byte[] payloads = new byte[25 * PayloadView.PAYLOAD_LENGTH];
+        while (appender.isAlive()) {
+            long from = Math.max(0, log.getEndSequence() - 25);
+            int read = log.read(from, 25, timestamps, payloads);
+            for (int i = 0; i < read; i++) {
+                assertTrue(timestamps[i] == SightingLog.MISSING || timestamps[i] == from + i);
+            }
+        }
+        appender.join();
+        assertNull(failure[0]);
+        log.close();
+
+        try {
+            log.read(0, 1, timestamps, payloads);
+            fail("Read a closed log");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
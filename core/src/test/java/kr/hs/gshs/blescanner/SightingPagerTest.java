@@ -0,0 +1,124 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class SightingPagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] coupon = Payloads.record(Payloads.COUPON, StructCodecs.TEXT_UNCOMPRESSED, "half price");
+    private final byte[] caution = Payloads.record(Payloads.CAUTION, Payloads.REGULAR_URL, "wet floor");
+
+    // Runs loads when told to, so tests see rows before and after.
+    private final List<Runnable> queued = new ArrayList<>();
+    private final Executor loader = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+    };
+
+    private final List<int[]> loaded = new ArrayList<>();
+    private final SightingPager.Listener listener = new SightingPager.Listener() {
+        @Override
+        public void onRowsLoaded(int position, int count) {
+            loaded.add(new int[]{position, count});
+        }
+
+        @Override
+        public void onRefreshed(int size) {
+        }
+    };
+
+    private void runLoads() {
+        while (!queued.isEmpty()) {
+            queued.remove(0).run();
+        }
+    }
+
+    private SightingLog logOf(int count) throws Exception {
+        SightingLog log = new SightingLog(folder.getRoot(), 64 * SightingLog.SIGHTING_SIZE, 1000);
+        for (int i = 0; i < count; i++) {
+            byte[] record = i % 2 == 0 ? coupon : caution;
+            log.append(record, PayloadFingerprints.of(record), i);
+        }
+        return log;
+    }
+
+    @Test
+    public void get_loadsPagesOnDemandNewestFirst() throws Exception {
+        SightingLog log = logOf(1000);
+        SightingPager pager = new SightingPager(log, loader, 100, 3, listener);
+        pager.refresh();
+        runLoads();
+        assertEquals(1000, pager.size());
+
+        byte[] record = new byte[PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH];
+        assertEquals(SightingPager.NOT_LOADED, pager.get(0, record));
+        runLoads();
+        assertArrayEquals(new int[]{0, 100}, loaded.get(0));
+
+        assertEquals(999, pager.get(0, record));
+        assertEquals(PayloadFingerprints.of(caution), PayloadFingerprints.of(record));
+        assertEquals(900, pager.get(99, record));
+        assertEquals(PayloadFingerprints.of(coupon), PayloadFingerprints.of(record));
+        log.close();
+    }
+
+    @Test
+    public void get_readsAheadAndKeepsFewPages() throws Exception {
+        SightingLog log = logOf(1000);
+        SightingPager pager = new SightingPager(log, loader, 100, 3, listener);
+        pager.refresh();
+        runLoads();
+
+        byte[] record = new byte[PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH];
+        pager.get(0, record);
+        runLoads();
+        for (int position = 0; position < 1000; position++) {
+            assertEquals(999 - position, pager.get(position, record));
+            runLoads();
+            assertTrue(pager.getResidentPageCount() <= 3);
+        }
+
+        // Scrolling back up reads ahead the other way.
+        assertEquals(SightingPager.NOT_LOADED, pager.get(550, record));
+        runLoads();
+        pager.get(500, record);
+        runLoads();
+        assertEquals(599, pager.get(400, record));
+        log.close();
+    }
+
+    @Test
+    public void refresh_showsNewSightingsOnly() throws Exception {
+        SightingLog log = logOf(150);
+        SightingPager pager = new SightingPager(log, loader, 100, 2, listener);
+        pager.refresh();
+        runLoads();
+
+        byte[] record = new byte[PayloadView.PAYLOAD_OFFSET + PayloadView.PAYLOAD_LENGTH];
+        log.append(coupon, PayloadFingerprints.of(coupon), 150);
+        pager.get(0, record);
+        runLoads();
+        assertEquals(150, pager.size());
+        assertEquals(149, pager.get(0, record));
+
+        pager.refresh();
+        runLoads();
+        assertEquals(151, pager.size());
+        assertEquals(SightingPager.NOT_LOADED, pager.get(0, record));
+        runLoads();
+        assertEquals(150, pager.get(0, record));
+        log.close();
+    }
+}
@@ -0,0 +1,31 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StripedCounterTest {
+
+    @Test
+    public void sum_countsAddsFromEveryThread() throws Exception {
+        final StripedCounter counter = new StripedCounter(4);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        counter.increment();
+                    }
+                    counter.add(5);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8 * 100005, counter.sum());
+    }
+}
@@ -0,0 +1,61 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StructCodecsTest {
+
+    @Test
+    public void decode_fallsBackToRawText() throws Exception {
+        byte[] bytes = {'a', 'b', 'c'};
+
+        assertEquals("abc", StructCodecs.decode(StructCodecs.TEXT_RLE, bytes, 0, 3));
+        assertEquals("abc", StructCodecs.decode(Payloads.DEVICE_NAME, bytes, 0, 3));
+    }
+
+    @Test
+    public void decodeCache_returnsCachedTextForSameBytes() throws Exception {
+        DecodeCache cache = new DecodeCache(4);
+        byte[] bytes = {0, 5, 'x', 5, 'y'};
+
+        assertNull(cache.get(StructCodecs.TEXT_RLE, bytes, 1, 4));
+        cache.put(StructCodecs.TEXT_RLE, bytes, 1, 4, "xxxxxyyyyy");
+        assertEquals("xxxxxyyyyy", cache.get(StructCodecs.TEXT_RLE, bytes.clone(), 1, 4));
+        assertNull(cache.get(StructCodecs.TEXT_HUFFMAN_CODING, bytes, 1, 4));
+        assertNull(cache.get(StructCodecs.TEXT_RLE, bytes, 1, 2));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+
+        cache.clear();
+        assertNull(cache.get(StructCodecs.TEXT_RLE, bytes, 1, 4));
+    }
+
+    @Test
+    public void decodeCache_decodesOnceOnMiss() throws Exception {
+        DecodeCache cache = new DecodeCache(4);
+        byte[] bytes = {0, 5, 'x', 5, 'y'};
+
+        assertEquals("xxxxxyyyyy", cache.getOrDecode(StructCodecs.TEXT_RLE, new RleCodec(), bytes, 1, 4));
+        assertEquals("xxxxxyyyyy", cache.get(StructCodecs.TEXT_RLE, bytes.clone(), 1, 4));
+        String cached = cache.getOrDecode(StructCodecs.TEXT_RLE, new RleCodec(), bytes.clone(), 1, 4);
+        assertSame(cached, cache.get(StructCodecs.TEXT_RLE, bytes, 1, 4));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // Not valid RLE, cached as it was received.
+        assertEquals("abc", cache.getOrDecode(StructCodecs.TEXT_RLE, new RleCodec(), new byte[]{'a', 'b', 'c'}, 0, 3));
+    }
+
+    @Test
+    public void register_replacesCodec() throws Exception {
+        StructCodec codec = StructCodecs.get(Payloads.SERVICE_NAME);
+        StructCodecs.register(Payloads.SERVICE_NAME, new RleCodec());
+        try {
+            assertEquals("aaa", StructCodecs.decode(Payloads.SERVICE_NAME, new byte[]{3, 'a'}, 0, 2));
+        } finally {
+            StructCodecs.register(Payloads.SERVICE_NAME, codec);
+        }
+        assertEquals("\3a", StructCodecs.decode(Payloads.SERVICE_NAME, new byte[]{3, 'a'}, 0, 2));
+    }
+}
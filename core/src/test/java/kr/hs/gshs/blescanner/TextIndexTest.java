@@ -0,0 +1,64 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TextIndexTest {
+    private static final int REGULAR_URL = 3;
+    private static final int DEVICE_NAME = 5;
+
+    @Test
+    public void search_matchesWordPrefixesIgnoringCase() throws Exception {
+        TextIndex index = new TextIndex();
+        index.add(1L, DEVICE_NAME, "Pizza Hut");
+        index.add(2L, DEVICE_NAME, "Pizzeria");
+        index.add(3L, DEVICE_NAME, "Burger");
+
+        assertArrayEquals(new long[]{1L, 2L}, index.search("PIZ", TextIndex.ALL_STRUCT_TYPES));
+        assertArrayEquals(new long[]{1L}, index.search("hut", TextIndex.ALL_STRUCT_TYPES));
+        assertArrayEquals(new long[0], index.search("zza", TextIndex.ALL_STRUCT_TYPES));
+    }
+
+    @Test
+    public void search_intersectsWords() throws Exception {
+        TextIndex index = new TextIndex();
+        index.add(1L, DEVICE_NAME, "Pizza Hut");
+        index.add(2L, DEVICE_NAME, "Pizza");
+        index.add(2L, REGULAR_URL, "gshs.hs.kr/hut");
+
+        assertArrayEquals(new long[]{1L, 2L}, index.search("pizza, hut", TextIndex.ALL_STRUCT_TYPES));
+        assertArrayEquals(new long[]{1L}, index.search("pizza hut", 1 << DEVICE_NAME));
+    }
+
+    @Test
+    public void search_withoutWordsFiltersByStructType() throws Exception {
+        TextIndex index = new TextIndex();
+        index.add(2L, REGULAR_URL, "gshs.hs.kr");
+        index.add(1L, DEVICE_NAME, "Pizza");
+        index.add(3L, DEVICE_NAME, "Burger");
+
+        assertNull(index.search(" ", TextIndex.ALL_STRUCT_TYPES));
+        assertArrayEquals(new long[]{1L, 3L}, index.search("", 1 << DEVICE_NAME));
+        assertArrayEquals(new long[]{1L, 2L, 3L}, index.search("", 1 << DEVICE_NAME | 1 << REGULAR_URL));
+    }
+
+    @Test
+    public void remove_dropsWordsNoPacketHolds() throws Exception {
+        TextIndex index = new TextIndex();
+        index.add(1L, DEVICE_NAME, "Pizza Hut");
+        index.add(2L, DEVICE_NAME, "Pizza");
+        assertEquals(2, index.getWordCount());
+
+        index.remove(1L, DEVICE_NAME, "Pizza Hut");
+
+        assertEquals(1, index.getWordCount());
+        assertArrayEquals(new long[]{2L}, index.search("pizza", TextIndex.ALL_STRUCT_TYPES));
+        assertArrayEquals(new long[]{2L}, index.search("", 1 << DEVICE_NAME));
+    }
+
+    @Test
+    public void words_splitsOnNonAlphanumerics() throws Exception {
+        assertEquals(java.util.Arrays.asList("50", "off", "at", "gshs", "kr"), TextIndex.words("50% OFF at gshs.kr!"));
+    }
+}
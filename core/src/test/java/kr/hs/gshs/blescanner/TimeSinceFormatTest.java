@@ -0,0 +1,21 @@
+package kr.hs.gshs.blescanner;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimeSinceFormatTest {
+
+    @Test
+    public void format_picksLargestWholeUnit() throws Exception {
+        assertEquals("0 seconds ago", TimeSinceFormat.format(TimeUnit.MILLISECONDS.toNanos(999)));
+        assertEquals("1 second ago", TimeSinceFormat.format(TimeUnit.SECONDS.toNanos(1)));
+        assertEquals("59 seconds ago", TimeSinceFormat.format(TimeUnit.SECONDS.toNanos(59)));
+        assertEquals("1 minute ago", TimeSinceFormat.format(TimeUnit.SECONDS.toNanos(119)));
+        assertEquals("59 minutes ago", TimeSinceFormat.format(TimeUnit.MINUTES.toNanos(59)));
+        assertEquals("1 hour ago", TimeSinceFormat.format(TimeUnit.MINUTES.toNanos(60)));
+        assertEquals("30 hours ago", TimeSinceFormat.format(TimeUnit.HOURS.toNanos(30)));
+    }
+}